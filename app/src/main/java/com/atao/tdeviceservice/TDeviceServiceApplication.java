@@ -5,6 +5,7 @@ import android.content.Intent;
 import android.os.Build;
 import android.util.Log;
 
+import com.atao.tdeviceservice.server.ServerMetrics;
 import com.atao.tdeviceservice.service.DeviceService;
 import com.karumi.dexter.BuildConfig;
 
@@ -20,6 +21,7 @@ public class TDeviceServiceApplication extends Application {
     public void onCreate() {
         super.onCreate();
         instance = this;
+        ServerMetrics.getInstance().markApplicationCreated();
 
         Log.d(TAG, "TDeviceServiceApplication created - Starting background service");
         
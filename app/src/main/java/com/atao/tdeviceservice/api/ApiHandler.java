@@ -2,8 +2,17 @@ package com.atao.tdeviceservice.api;
 
 import android.content.Context;
 
+import com.atao.tdeviceservice.util.SystemCallExecutor;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
 import fi.iki.elonen.NanoHTTPD;
 
 /**
@@ -21,27 +30,83 @@ public abstract class ApiHandler {
      * 处理API请求
      * @param uri 请求URI
      * @param session HTTP会话
-     * @return JSON响应字符串
+     * @return 响应对象，由服务器按Accept头编码为JSON或CBOR
+     */
+    public abstract JsonObject handleRequest(String uri, NanoHTTPD.IHTTPSession session);
+
+    /**
+     * 处理需要直接输出二进制或流式内容的请求
+     * @return 原始响应；返回null时交给handleRequest按JSON处理
      */
-    public abstract String handleRequest(String uri, NanoHTTPD.IHTTPSession session);
+    public NanoHTTPD.Response handleRawRequest(String uri, NanoHTTPD.IHTTPSession session) throws IOException {
+        return null;
+    }
 
     /**
      * 创建成功响应
      */
-    protected String createSuccessResponse(Object data) {
+    protected JsonObject createSuccessResponse(Object data) {
         JsonObject response = new JsonObject();
         response.addProperty("success", true);
         response.addProperty("data", data.toString());
-        return response.toString();
+        return response;
+    }
+
+    /**
+     * 创建成功响应（结构化数据，保留数值类型）
+     */
+    protected JsonObject createSuccessResponse(JsonElement data) {
+        JsonObject response = new JsonObject();
+        response.addProperty("success", true);
+        response.add("data", data);
+        return response;
     }
 
     /**
      * 创建错误响应
      */
-    protected String createErrorResponse(String error) {
+    protected JsonObject createErrorResponse(String error) {
         JsonObject response = new JsonObject();
         response.addProperty("success", false);
         response.addProperty("error", error);
-        return response.toString();
+        return response;
+    }
+
+    /**
+     * 通过系统调用线程池执行Binder调用（带截止时间，超时返回旧值）
+     */
+    protected <T> SystemCallExecutor.Result<T> systemCall(String key, Callable<T> call) throws Exception {
+        return SystemCallExecutor.getInstance().call(key, SystemCallExecutor.DEFAULT_DEADLINE_MS, call);
+    }
+
+    /**
+     * 数据来自超时后的旧值时，在响应中标记stale
+     */
+    protected JsonObject markStale(JsonObject response, boolean stale) {
+        if (stale) {
+            response.addProperty("stale", true);
+        }
+        return response;
+    }
+
+    /**
+     * 解析逗号分隔的列表，去掉空项和重复项，最多取max个
+     */
+    protected static List<String> parseList(String value, int max) {
+        if (value == null) {
+            return new ArrayList<>();
+        }
+        // 去重并保持原顺序
+        Set<String> items = new LinkedHashSet<>();
+        for (String item : value.split(",")) {
+            if (items.size() >= max) {
+                break;
+            }
+            item = item.trim();
+            if (!item.isEmpty()) {
+                items.add(item);
+            }
+        }
+        return new ArrayList<>(items);
     }
 }
\ No newline at end of file
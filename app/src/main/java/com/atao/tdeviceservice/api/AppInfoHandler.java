@@ -5,21 +5,30 @@ import android.content.Intent;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.Paint;
-import android.graphics.drawable.AdaptiveIconDrawable;
-import android.graphics.drawable.BitmapDrawable;
-import android.graphics.drawable.Drawable;
 import android.util.Base64;
 import android.util.Log;
 
+import com.atao.tdeviceservice.apps.IconCache;
+import com.atao.tdeviceservice.apps.PackageChangeJournal;
+import com.atao.tdeviceservice.apps.PackageIndex;
+import com.atao.tdeviceservice.util.SystemCallExecutor;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import fi.iki.elonen.NanoHTTPD;
 
@@ -29,13 +38,29 @@ import fi.iki.elonen.NanoHTTPD;
 public class AppInfoHandler extends ApiHandler {
 
     private static final String TAG = "AppInfoHandler";
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int CURSOR_FLAGS = Base64.URL_SAFE | Base64.NO_WRAP | Base64.NO_PADDING;
+    private static final int ICON_PACK_PIPE_SIZE = 64 * 1024;
+    private static final int MAX_QUERY_PACKAGES = 200;
+    private static final long QUERY_DEADLINE_MS = 5000;
+    private static final List<String> QUERY_ATTRS = Arrays.asList(
+            "name", "isSystem", "enabled", "isLauncher", "launcherActivity", "version");
+    private static final String ICON_PACK_MIME_TYPE = "application/zip";
 
     public AppInfoHandler(Context context) {
         super(context);
     }
 
     @Override
-    public String handleRequest(String uri, NanoHTTPD.IHTTPSession session) {
+    public NanoHTTPD.Response handleRawRequest(String uri, NanoHTTPD.IHTTPSession session) throws IOException {
+        if ("/api/apps/icons".equals(uri)) {
+            return getIconPack(session.getParms());
+        }
+        return null;
+    }
+
+    @Override
+    public JsonObject handleRequest(String uri, NanoHTTPD.IHTTPSession session) {
         Log.d(TAG, "AppInfoHandler handling request: " + uri);
 
         try {
@@ -45,7 +70,11 @@ public class AppInfoHandler extends ApiHandler {
 
             switch (uri) {
                 case "/api/apps/list":
-                    return getAppsList();
+                    return getAppsList(params);
+                case "/api/apps/changes":
+                    return getAppChanges(params);
+                case "/api/apps/query":
+                    return queryApps(params);
                 case "/api/apps/name":
                     if (packageName == null || packageName.isEmpty()) {
                         return createErrorResponse("Missing package parameter");
@@ -71,6 +100,11 @@ public class AppInfoHandler extends ApiHandler {
                         return createErrorResponse("Missing package parameter");
                     }
                     return getAppVersion(packageName);
+                case "/api/apps/info":
+                    if (packageName == null || packageName.isEmpty()) {
+                        return createErrorResponse("Missing package parameter");
+                    }
+                    return getAppDetails(packageName);
                 case "/api/apps/icon":
                     if (packageName == null || packageName.isEmpty()) {
                         return createErrorResponse("Missing package parameter");
@@ -86,41 +120,142 @@ public class AppInfoHandler extends ApiHandler {
     }
 
     /**
-     * 获取所有应用包名列表
+     * 获取应用包名列表
+     * 支持过滤（type=system|user, launcher, enabled, prefix, contains）和游标分页（limit, cursor）；
+     * 不带limit时返回全部匹配项
      */
-    private String getAppsList() {
+    private JsonObject getAppsList(Map<String, String> params) {
         try {
-            PackageManager pm = context.getPackageManager();
-            // 使用 PackageManager.GET_META_DATA 标志来获取所有应用（包括禁用的）
-            int flags = PackageManager.GET_META_DATA;
-            List<ApplicationInfo> apps = pm.getInstalledApplications(0);
+            PackageIndex.Filter filter = parseFilter(params);
+
+            int limit = Integer.MAX_VALUE;
+            String limitParam = params.get("limit");
+            if (limitParam != null) {
+                try {
+                    limit = Math.max(1, Math.min(MAX_PAGE_SIZE, Integer.parseInt(limitParam)));
+                } catch (NumberFormatException e) {
+                    return createErrorResponse("Invalid limit parameter: " + limitParam);
+                }
+            }
+
+            String afterPackage = null;
+            String cursor = emptyToNull(params.get("cursor"));
+            if (cursor != null) {
+                try {
+                    afterPackage = new String(Base64.decode(cursor, CURSOR_FLAGS), StandardCharsets.UTF_8);
+                } catch (IllegalArgumentException e) {
+                    return createErrorResponse("Invalid cursor parameter");
+                }
+            }
 
+            // 在排序快照上从游标位置向后扫描，取满一页即停止
+            PackageIndex packageIndex = PackageIndex.getInstance(context);
+            PackageIndex.Snapshot snapshot = packageIndex.getSnapshot();
             JsonArray appsArray = new JsonArray();
-            for (ApplicationInfo app : apps) {
-                appsArray.add(app.packageName);
+            String lastPackage = null;
+            int index = snapshot.indexAfter(afterPackage);
+            for (; index < snapshot.size() && appsArray.size() < limit; index++) {
+                PackageIndex.Entry entry = snapshot.get(index);
+                if (filter.matches(entry)) {
+                    appsArray.add(entry.packageName);
+                    lastPackage = entry.packageName;
+                }
             }
 
             Log.d(TAG, "获取到 " + appsArray.size() + " 个应用包名");
-            
-            JsonObject response = new JsonObject();
-            response.addProperty("success", true);
-            response.add("data", appsArray);
-            return response.toString();
+
+            JsonObject response = createSuccessResponse(appsArray);
+            if (index < snapshot.size() && lastPackage != null) {
+                response.addProperty("nextCursor", Base64.encodeToString(
+                        lastPackage.getBytes(StandardCharsets.UTF_8), CURSOR_FLAGS));
+            }
+            return markStale(response, packageIndex.isStale(snapshot));
         } catch (Exception e) {
             Log.e(TAG, "Error getting apps list", e);
             return createErrorResponse("Failed to get apps list: " + e.getMessage());
         }
     }
 
+    /**
+     * 解析应用过滤参数（type=system|user, launcher, enabled, prefix, contains）
+     */
+    private PackageIndex.Filter parseFilter(Map<String, String> params) {
+        PackageIndex.Filter filter = new PackageIndex.Filter();
+        String type = params.get("type");
+        if ("system".equals(type)) {
+            filter.system = true;
+        } else if ("user".equals(type)) {
+            filter.system = false;
+        }
+        filter.launcher = parseBoolean(params.get("launcher"));
+        filter.enabled = parseBoolean(params.get("enabled"));
+        filter.prefix = emptyToNull(params.get("prefix"));
+        filter.contains = emptyToNull(params.get("contains"));
+        return filter;
+    }
+
+    /**
+     * 获取应用包增量变化
+     * since为上次返回的token；缺失、来自旧进程或已超出日志范围时返回resync=true，客户端需全量同步
+     */
+    private JsonObject getAppChanges(Map<String, String> params) {
+        int limit = MAX_PAGE_SIZE;
+        String limitParam = params.get("limit");
+        if (limitParam != null) {
+            try {
+                limit = Math.max(1, Math.min(MAX_PAGE_SIZE, Integer.parseInt(limitParam)));
+            } catch (NumberFormatException e) {
+                return createErrorResponse("Invalid limit parameter: " + limitParam);
+            }
+        }
+
+        PackageChangeJournal journal = PackageChangeJournal.getInstance();
+        JsonObject data = new JsonObject();
+        JsonArray changes = new JsonArray();
+        PackageChangeJournal.Changes result = journal.changesSince(params.get("since"), limit);
+        if (result == null) {
+            data.addProperty("resync", true);
+            data.addProperty("token", journal.currentToken());
+            data.addProperty("hasMore", false);
+        } else {
+            for (PackageChangeJournal.Event event : result.events) {
+                JsonObject change = new JsonObject();
+                change.addProperty("seq", event.seq);
+                change.addProperty("type", event.type);
+                change.addProperty("package", event.packageName);
+                change.addProperty("timestamp", event.timestamp);
+                changes.add(change);
+            }
+            data.addProperty("resync", false);
+            data.addProperty("token", result.token);
+            data.addProperty("hasMore", result.hasMore);
+        }
+        data.add("changes", changes);
+        return createSuccessResponse(data);
+    }
+
+    private static Boolean parseBoolean(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        return Boolean.parseBoolean(value);
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
     /**
      * 获取应用名称
      */
-    private String getAppName(String packageName) {
+    private JsonObject getAppName(String packageName) {
         try {
             PackageManager pm = context.getPackageManager();
-            ApplicationInfo app = pm.getApplicationInfo(packageName, 0);
-            String appName = (String) app.loadLabel(pm);
-            return createSuccessResponse(appName);
+            SystemCallExecutor.Result<String> result = systemCall("name:" + packageName, () -> {
+                ApplicationInfo app = pm.getApplicationInfo(packageName, 0);
+                return (String) app.loadLabel(pm);
+            });
+            return markStale(createSuccessResponse(result.value), result.stale);
         } catch (PackageManager.NameNotFoundException e) {
             Log.e(TAG, "Package not found: " + packageName, e);
             return createErrorResponse("Package not found: " + packageName);
@@ -133,12 +268,14 @@ public class AppInfoHandler extends ApiHandler {
     /**
      * 判断是否为系统应用
      */
-    private String isSystemApp(String packageName) {
+    private JsonObject isSystemApp(String packageName) {
         try {
             PackageManager pm = context.getPackageManager();
-            ApplicationInfo app = pm.getApplicationInfo(packageName, 0);
-            boolean isSystem = (app.flags & ApplicationInfo.FLAG_SYSTEM) != 0;
-            return createSuccessResponse(String.valueOf(isSystem));
+            SystemCallExecutor.Result<Boolean> result = systemCall("isSystem:" + packageName, () -> {
+                ApplicationInfo app = pm.getApplicationInfo(packageName, 0);
+                return (app.flags & ApplicationInfo.FLAG_SYSTEM) != 0;
+            });
+            return markStale(createSuccessResponse(String.valueOf(result.value)), result.stale);
         } catch (PackageManager.NameNotFoundException e) {
             Log.e(TAG, "Package not found: " + packageName, e);
             return createErrorResponse("Package not found: " + packageName);
@@ -152,28 +289,19 @@ public class AppInfoHandler extends ApiHandler {
      * 判断是否为桌面应用（会在桌面上显示图标的应用）
      * 即判断应用是否有启动器图标
      */
-    private String isLauncherApp(String packageName) {
+    private JsonObject isLauncherApp(String packageName) {
         try {
             PackageManager pm = context.getPackageManager();
             
-            // 创建一个Intent，用于查询可以在桌面上显示的Activity
+            // 创建一个Intent，只查询目标包中可以在桌面上显示的Activity
             Intent intent = new Intent(Intent.ACTION_MAIN);
             intent.addCategory(Intent.CATEGORY_LAUNCHER);
+            intent.setPackage(packageName);
             
-            // 获取所有可以在桌面显示的应用
-            List<android.content.pm.ResolveInfo> resolveInfoList = 
-                pm.queryIntentActivities(intent, 0);
+            SystemCallExecutor.Result<Boolean> result = systemCall("isLauncher:" + packageName,
+                    () -> !pm.queryIntentActivities(intent, 0).isEmpty());
             
-            // 检查目标包名是否在列表中
-            boolean hasLauncherIcon = false;
-            for (android.content.pm.ResolveInfo resolveInfo : resolveInfoList) {
-                if (resolveInfo.activityInfo.packageName.equals(packageName)) {
-                    hasLauncherIcon = true;
-                    break;
-                }
-            }
-            
-            return createSuccessResponse(String.valueOf(hasLauncherIcon));
+            return markStale(createSuccessResponse(String.valueOf(result.value)), result.stale);
         } catch (Exception e) {
             Log.e(TAG, "Error checking launcher app", e);
             return createErrorResponse("Failed to check launcher app: " + e.getMessage());
@@ -183,17 +311,17 @@ public class AppInfoHandler extends ApiHandler {
     /**
      * 获取启动Activity
      */
-    private String getLauncherActivity(String packageName) {
+    private JsonObject getLauncherActivity(String packageName) {
         try {
             PackageManager pm = context.getPackageManager();
-            Intent intent = pm.getLaunchIntentForPackage(packageName);
-            
-            if (intent != null && intent.getComponent() != null) {
-                String launcherActivity = intent.getComponent().getClassName();
-                return createSuccessResponse(launcherActivity);
-            } else {
-                return createSuccessResponse("未知");
-            }
+            SystemCallExecutor.Result<String> result = systemCall("launcherActivity:" + packageName, () -> {
+                Intent intent = pm.getLaunchIntentForPackage(packageName);
+                if (intent != null && intent.getComponent() != null) {
+                    return intent.getComponent().getClassName();
+                }
+                return "未知";
+            });
+            return markStale(createSuccessResponse(result.value), result.stale);
         } catch (Exception e) {
             Log.e(TAG, "Error getting launcher activity", e);
             return createErrorResponse("Failed to get launcher activity: " + e.getMessage());
@@ -203,22 +331,15 @@ public class AppInfoHandler extends ApiHandler {
     /**
      * 获取应用版本号
      */
-    private String getAppVersion(String packageName) {
+    private JsonObject getAppVersion(String packageName) {
         try {
             PackageManager pm = context.getPackageManager();
-            PackageInfo packageInfo = pm.getPackageInfo(packageName, 0);
-            
-            // 组合版本名称和版本码
-            String versionName = packageInfo.versionName;
-            long versionCode;
-            if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.P) {
-                versionCode = packageInfo.getLongVersionCode();
-            } else {
-                versionCode = packageInfo.versionCode;
-            }
-            
-            String version = versionName + " (" + versionCode + ")";
-            return createSuccessResponse(version);
+            SystemCallExecutor.Result<String> result = systemCall("version:" + packageName, () -> {
+                PackageInfo packageInfo = pm.getPackageInfo(packageName, 0);
+                // 组合版本名称和版本码
+                return packageInfo.versionName + " (" + packageInfo.getLongVersionCode() + ")";
+            });
+            return markStale(createSuccessResponse(result.value), result.stale);
         } catch (PackageManager.NameNotFoundException e) {
             Log.e(TAG, "Package not found: " + packageName, e);
             return createErrorResponse("Package not found: " + packageName);
@@ -228,28 +349,154 @@ public class AppInfoHandler extends ApiHandler {
         }
     }
 
+    /**
+     * 批量查询多个应用的属性
+     * packages为逗号分隔的包名（最多MAX_QUERY_PACKAGES个），attrs为逗号分隔的属性名（缺省为全部）；
+     * 所有包共用一次桌面Activity查询，未安装的包在各自条目中返回error
+     */
+    private JsonObject queryApps(Map<String, String> params) {
+        List<String> packages = parseList(params.get("packages"), MAX_QUERY_PACKAGES);
+        if (packages.isEmpty()) {
+            return createErrorResponse("Missing packages parameter");
+        }
+        List<String> attrs = parseList(params.get("attrs"), QUERY_ATTRS.size());
+        if (attrs.isEmpty()) {
+            attrs = QUERY_ATTRS;
+        }
+        for (String attr : attrs) {
+            if (!QUERY_ATTRS.contains(attr)) {
+                return createErrorResponse("Unknown attribute: " + attr);
+            }
+        }
+
+        List<String> requested = attrs;
+        try {
+            SystemCallExecutor.Result<JsonObject> result = SystemCallExecutor.getInstance().call(
+                    "query:" + String.join(",", packages) + "|" + String.join(",", requested),
+                    QUERY_DEADLINE_MS, () -> loadAppAttributes(packages, requested), false);
+            return createSuccessResponse(result.value);
+        } catch (TimeoutException e) {
+            Log.w(TAG, "Timed out querying " + packages.size() + " packages");
+            return createErrorResponse("Timed out querying apps");
+        } catch (Exception e) {
+            Log.e(TAG, "Error querying apps", e);
+            return createErrorResponse("Failed to query apps: " + e.getMessage());
+        }
+    }
+
+    private JsonObject loadAppAttributes(List<String> packages, List<String> attrs) {
+        PackageManager pm = context.getPackageManager();
+
+        // 一次查询所有桌面Activity，供全部包共用
+        Map<String, String> launcherActivities = new HashMap<>();
+        if (attrs.contains("isLauncher") || attrs.contains("launcherActivity")) {
+            Intent intent = new Intent(Intent.ACTION_MAIN);
+            intent.addCategory(Intent.CATEGORY_LAUNCHER);
+            for (android.content.pm.ResolveInfo resolveInfo : pm.queryIntentActivities(intent, 0)) {
+                launcherActivities.putIfAbsent(resolveInfo.activityInfo.packageName, resolveInfo.activityInfo.name);
+            }
+        }
+        boolean needsPackageInfo = attrs.contains("version");
+
+        JsonObject apps = new JsonObject();
+        for (String packageName : packages) {
+            JsonObject app = new JsonObject();
+            try {
+                PackageInfo packageInfo = needsPackageInfo ? pm.getPackageInfo(packageName, 0) : null;
+                ApplicationInfo info = packageInfo != null
+                        ? packageInfo.applicationInfo : pm.getApplicationInfo(packageName, 0);
+                for (String attr : attrs) {
+                    switch (attr) {
+                        case "name":
+                            app.addProperty("name", String.valueOf(info.loadLabel(pm)));
+                            break;
+                        case "isSystem":
+                            app.addProperty("isSystem", (info.flags & ApplicationInfo.FLAG_SYSTEM) != 0);
+                            break;
+                        case "enabled":
+                            app.addProperty("enabled", info.enabled);
+                            break;
+                        case "isLauncher":
+                            app.addProperty("isLauncher", launcherActivities.containsKey(packageName));
+                            break;
+                        case "launcherActivity":
+                            app.addProperty("launcherActivity", launcherActivities.get(packageName));
+                            break;
+                        case "version":
+                            app.addProperty("version", packageInfo.versionName
+                                    + " (" + packageInfo.getLongVersionCode() + ")");
+                            break;
+                        default:
+                            break;
+                    }
+                }
+            } catch (PackageManager.NameNotFoundException e) {
+                app = new JsonObject();
+                app.addProperty("error", "Package not found");
+            }
+            apps.add(packageName, app);
+        }
+        return apps;
+    }
+
+    /**
+     * 获取应用详情（一次返回名称、版本、类型等字段，数值保留原始类型）
+     */
+    private JsonObject getAppDetails(String packageName) {
+        try {
+            SystemCallExecutor.Result<JsonObject> result = systemCall("info:" + packageName,
+                    () -> loadAppDetails(packageName));
+            return markStale(createSuccessResponse(result.value.deepCopy()), result.stale);
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.e(TAG, "Package not found: " + packageName, e);
+            return createErrorResponse("Package not found: " + packageName);
+        } catch (Exception e) {
+            Log.e(TAG, "Error getting app details", e);
+            return createErrorResponse("Failed to get app details: " + e.getMessage());
+        }
+    }
+
+    private JsonObject loadAppDetails(String packageName) throws PackageManager.NameNotFoundException {
+        PackageManager pm = context.getPackageManager();
+        PackageInfo packageInfo = pm.getPackageInfo(packageName, 0);
+        ApplicationInfo app = packageInfo.applicationInfo;
+
+        Intent launcherIntent = new Intent(Intent.ACTION_MAIN);
+        launcherIntent.addCategory(Intent.CATEGORY_LAUNCHER);
+        launcherIntent.setPackage(packageName);
+        List<android.content.pm.ResolveInfo> launchers = pm.queryIntentActivities(launcherIntent, 0);
+
+        JsonObject details = new JsonObject();
+        details.addProperty("package", packageName);
+        details.addProperty("name", String.valueOf(app.loadLabel(pm)));
+        details.addProperty("isSystem", (app.flags & ApplicationInfo.FLAG_SYSTEM) != 0);
+        details.addProperty("enabled", app.enabled);
+        details.addProperty("isLauncher", !launchers.isEmpty());
+        if (!launchers.isEmpty()) {
+            details.addProperty("launcherActivity", launchers.get(0).activityInfo.name);
+        }
+        details.addProperty("versionName", packageInfo.versionName);
+        details.addProperty("versionCode", packageInfo.getLongVersionCode());
+        details.addProperty("targetSdk", app.targetSdkVersion);
+        details.addProperty("uid", app.uid);
+        details.addProperty("firstInstallTime", packageInfo.firstInstallTime);
+        details.addProperty("lastUpdateTime", packageInfo.lastUpdateTime);
+        return details;
+    }
+
     /**
      * 获取应用图标（Base64编码）
      */
-    private String getAppIcon(String packageName) {
+    private JsonObject getAppIcon(String packageName) {
         try {
-            PackageManager pm = context.getPackageManager();
-            ApplicationInfo app = pm.getApplicationInfo(packageName, 0);
-            Drawable icon = app.loadIcon(pm);
-            
-            // 将Drawable转换为Bitmap
-            Bitmap bitmap = getBitmapFromDrawable(icon);
-            
-            // 将Bitmap转换为Base64
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            bitmap.compress(Bitmap.CompressFormat.PNG, 100, baos);
-            byte[] iconBytes = baos.toByteArray();
-            String base64Icon = Base64.encodeToString(iconBytes, Base64.NO_WRAP);
-            
-            return createSuccessResponse(base64Icon);
+            byte[] png = loadIconPng(packageName);
+            return createSuccessResponse(Base64.encodeToString(png, Base64.NO_WRAP));
         } catch (PackageManager.NameNotFoundException e) {
             Log.e(TAG, "Package not found: " + packageName, e);
             return createErrorResponse("Package not found: " + packageName);
+        } catch (TimeoutException e) {
+            Log.w(TAG, "Timed out rendering icon for " + packageName);
+            return createErrorResponse("Timed out rendering app icon: " + packageName);
         } catch (Exception e) {
             Log.e(TAG, "Error getting app icon", e);
             return createErrorResponse("Failed to get app icon: " + e.getMessage());
@@ -257,88 +504,82 @@ public class AppInfoHandler extends ApiHandler {
     }
 
     /**
-     * 将Drawable转换为Bitmap
-     * 修复版本 - 确保总是返回有效的图标
+     * 批量获取应用图标，以ZIP流返回：每个图标一个"包名.png"，最后是列出成功与缺失包名的manifest.json
+     * packages为逗号分隔的包名；不指定时按与/api/apps/list相同的过滤参数选取，最多MAX_PAGE_SIZE个
      */
-    private Bitmap getBitmapFromDrawable(Drawable drawable) {
-        if (drawable == null) {
-            // 如果drawable为null，返回默认图标
-            return createDefaultIcon();
-        }
-        
-        if (drawable instanceof BitmapDrawable) {
-            Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
-            return bitmap != null ? bitmap : createDefaultIcon();
-        } else if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O 
-                   && drawable instanceof AdaptiveIconDrawable) {
-            AdaptiveIconDrawable adaptiveIcon = (AdaptiveIconDrawable) drawable;
-            Drawable backgroundDr = adaptiveIcon.getBackground();
-            Drawable foregroundDr = adaptiveIcon.getForeground();
-            
-            // 确保有有效的尺寸
-            int size = Math.max(drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight());
-            if (size <= 0) {
-                size = 64; // 默认尺寸
-            }
-            
-            Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
-            Canvas canvas = new Canvas(bitmap);
-            
-            // 绘制背景
-            if (backgroundDr != null) {
-                backgroundDr.setBounds(0, 0, size, size);
-                backgroundDr.draw(canvas);
-            }
-            
-            // 绘制前景
-            if (foregroundDr != null) {
-                foregroundDr.setBounds(0, 0, size, size);
-                foregroundDr.draw(canvas);
+    private NanoHTTPD.Response getIconPack(Map<String, String> params) throws IOException {
+        List<String> packages = parseList(params.get("packages"), MAX_PAGE_SIZE);
+        if (packages.isEmpty()) {
+            PackageIndex.Filter filter = parseFilter(params);
+            PackageIndex.Snapshot snapshot = PackageIndex.getInstance(context).getSnapshot();
+            for (int i = 0; i < snapshot.size() && packages.size() < MAX_PAGE_SIZE; i++) {
+                PackageIndex.Entry entry = snapshot.get(i);
+                if (filter.matches(entry)) {
+                    packages.add(entry.packageName);
+                }
             }
-            
-            return bitmap;
-        } else {
-            // Fallback for other types of drawables
-            int width = drawable.getIntrinsicWidth();
-            int height = drawable.getIntrinsicHeight();
-            
-            if (width <= 0 || height <= 0) {
-                width = height = 64; // 默认尺寸
+        }
+        Log.d(TAG, "Streaming icon pack with " + packages.size() + " packages");
+
+        // 写线程边渲染边写入管道，响应按块发送，不在内存中拼出整个ZIP
+        PipedInputStream in = new PipedInputStream(ICON_PACK_PIPE_SIZE);
+        PipedOutputStream out = new PipedOutputStream(in);
+        Thread writer = new Thread(() -> writeIconPack(packages, out), "IconPack-Writer");
+        writer.setDaemon(true);
+        writer.start();
+
+        NanoHTTPD.Response response = NanoHTTPD.newChunkedResponse(NanoHTTPD.Response.Status.OK,
+                ICON_PACK_MIME_TYPE, in);
+        response.addHeader("Content-Disposition", "attachment; filename=\"icons.zip\"");
+        return response;
+    }
+
+    private void writeIconPack(List<String> packages, OutputStream out) {
+        JsonArray icons = new JsonArray();
+        JsonArray missing = new JsonArray();
+        CRC32 crc = new CRC32();
+        try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(out, ICON_PACK_PIPE_SIZE))) {
+            // PNG本身已压缩，直接存储
+            zip.setMethod(ZipOutputStream.STORED);
+            for (String packageName : packages) {
+                byte[] png;
+                try {
+                    png = loadIconPng(packageName);
+                } catch (Exception e) {
+                    missing.add(packageName);
+                    continue;
+                }
+                writeStoredEntry(zip, crc, packageName + ".png", png);
+                icons.add(packageName);
             }
-            
-            Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-            Canvas canvas = new Canvas(bitmap);
-            drawable.setBounds(0, 0, width, height);
-            drawable.draw(canvas);
-            return bitmap;
+            JsonObject manifest = new JsonObject();
+            manifest.add("icons", icons);
+            manifest.add("missing", missing);
+            writeStoredEntry(zip, crc, "manifest.json", manifest.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // 客户端提前断开时管道关闭
+            Log.w(TAG, "Icon pack stream aborted after " + icons.size() + " icons: " + e.getMessage());
         }
     }
-    
+
+    private static void writeStoredEntry(ZipOutputStream zip, CRC32 crc, String name, byte[] data)
+            throws IOException {
+        crc.reset();
+        crc.update(data, 0, data.length);
+        ZipEntry entry = new ZipEntry(name);
+        entry.setSize(data.length);
+        entry.setCompressedSize(data.length);
+        entry.setCrc(crc.getValue());
+        zip.putNextEntry(entry);
+        zip.write(data);
+        zip.closeEntry();
+    }
+
     /**
-     * 创建默认图标（当无法获取应用图标时）
+     * 获取应用图标PNG
+     * 优先使用缓存（含后台预热的结果），未命中时同一应用的并发请求与预热只渲染一次
      */
-    private Bitmap createDefaultIcon() {
-        Bitmap bitmap = Bitmap.createBitmap(64, 64, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bitmap);
-        
-        // 绘制一个简单的默认图标
-        Paint paint = new Paint();
-        paint.setColor(0xFF666666); // 灰色
-        paint.setStyle(Paint.Style.FILL);
-        paint.setAntiAlias(true);
-        
-        // 绘制圆形背景
-        canvas.drawCircle(32, 32, 30, paint);
-        
-        // 绘制字母"A"
-        paint.setColor(0xFFFFFFFF); // 白色
-        paint.setTextSize(32);
-        paint.setTextAlign(Paint.Align.CENTER);
-        Paint.FontMetrics fontMetrics = paint.getFontMetrics();
-        float textY = 32 + (fontMetrics.descent - fontMetrics.ascent) / 2 - fontMetrics.descent;
-        canvas.drawText("A", 32, textY, paint);
-        
-        return bitmap;
+    private byte[] loadIconPng(String packageName) throws Exception {
+        return IconCache.getInstance().load(context, packageName);
     }
 }
-
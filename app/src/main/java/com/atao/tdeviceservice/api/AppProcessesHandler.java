@@ -0,0 +1,50 @@
+package com.atao.tdeviceservice.api;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.atao.tdeviceservice.system.ProcessSampler;
+import com.google.gson.JsonObject;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/**
+ * 应用进程内存API处理器
+ * 默认使用不超过5秒的采样结果，maxAge参数可调整（毫秒，0表示立即采样）；package参数只返回指定应用
+ */
+public class AppProcessesHandler extends ApiHandler {
+
+    private static final String TAG = "AppProcessesHandler";
+    private static final long DEFAULT_MAX_AGE_MS = 5000;
+
+    public AppProcessesHandler(Context context) {
+        super(context);
+    }
+
+    @Override
+    public JsonObject handleRequest(String uri, NanoHTTPD.IHTTPSession session) {
+        Log.d(TAG, "AppProcessesHandler handling request: " + uri);
+
+        try {
+            long maxAge = DEFAULT_MAX_AGE_MS;
+            String maxAgeParam = session.getParms().get("maxAge");
+            if (maxAgeParam != null) {
+                try {
+                    maxAge = Math.max(0, Long.parseLong(maxAgeParam));
+                } catch (NumberFormatException e) {
+                    return createErrorResponse("Invalid maxAge parameter: " + maxAgeParam);
+                }
+            }
+            String packageName = session.getParms().get("package");
+            if (packageName != null && packageName.isEmpty()) {
+                packageName = null;
+            }
+
+            ProcessSampler.Result result = ProcessSampler.getInstance(context).latest(maxAge);
+            return createSuccessResponse(result.toJson(packageName));
+        } catch (Exception e) {
+            Log.e(TAG, "Error sampling app processes", e);
+            return createErrorResponse("Failed to get app processes: " + e.getMessage());
+        }
+    }
+}
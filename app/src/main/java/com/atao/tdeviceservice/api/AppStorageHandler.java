@@ -0,0 +1,118 @@
+package com.atao.tdeviceservice.api;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.util.Log;
+
+import com.atao.tdeviceservice.apps.PackageIndex;
+import com.atao.tdeviceservice.apps.StorageStatsCache;
+import com.atao.tdeviceservice.util.SystemCallExecutor;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/**
+ * 应用存储占用API处理器
+ * 数据来自后台刷新的缓存，每条数据带有ageMs（距上次查询的毫秒数）
+ */
+public class AppStorageHandler extends ApiHandler {
+
+    private static final String TAG = "AppStorageHandler";
+    private static final int MAX_PACKAGES = 1000;
+
+    public AppStorageHandler(Context context) {
+        super(context);
+    }
+
+    @Override
+    public JsonObject handleRequest(String uri, NanoHTTPD.IHTTPSession session) {
+        Log.d(TAG, "AppStorageHandler handling request: " + uri);
+
+        try {
+            if (!"/api/apps/storage".equals(uri)) {
+                return createErrorResponse("Unknown app storage endpoint");
+            }
+            Map<String, String> params = session.getParms();
+            String packageName = params.get("package");
+            if (packageName != null && !packageName.isEmpty()) {
+                return getPackageStorage(packageName);
+            }
+            return getBulkStorage(params.get("packages"));
+        } catch (Exception e) {
+            Log.e(TAG, "Error getting app storage for " + uri, e);
+            return createErrorResponse("Failed to get app storage: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 单个应用：缓存未命中时在系统调用线程池上立即查询
+     */
+    private JsonObject getPackageStorage(String packageName) {
+        StorageStatsCache cache = StorageStatsCache.getInstance(context);
+        try {
+            StorageStatsCache.Entry entry = cache.get(packageName);
+            if (entry == null) {
+                entry = SystemCallExecutor.getInstance().call("storage:" + packageName,
+                        SystemCallExecutor.DEFAULT_DEADLINE_MS, () -> cache.load(packageName), false).value;
+            }
+            return createSuccessResponse(toJson(entry, System.currentTimeMillis()));
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.e(TAG, "Package not found: " + packageName, e);
+            return createErrorResponse("Package not found: " + packageName);
+        } catch (TimeoutException e) {
+            return createErrorResponse("Timed out querying storage stats: " + packageName);
+        } catch (Exception e) {
+            Log.e(TAG, "Error getting storage stats", e);
+            return createErrorResponse("Failed to get storage stats: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 批量：只读缓存，尚未查询到的包列在pending中，由后台任务补上
+     * packages为逗号分隔的包名，缺省为全部已安装应用
+     */
+    private JsonObject getBulkStorage(String packagesParam) {
+        List<String> packages = parseList(packagesParam, MAX_PACKAGES);
+        if (packages.isEmpty()) {
+            PackageIndex.Snapshot snapshot = PackageIndex.getInstance(context).getSnapshot();
+            for (int i = 0; i < snapshot.size(); i++) {
+                packages.add(snapshot.get(i).packageName);
+            }
+        }
+
+        StorageStatsCache cache = StorageStatsCache.getInstance(context);
+        long now = System.currentTimeMillis();
+        JsonObject apps = new JsonObject();
+        JsonArray pending = new JsonArray();
+        for (String packageName : packages) {
+            StorageStatsCache.Entry entry = cache.get(packageName);
+            if (entry != null) {
+                apps.add(packageName, toJson(entry, now));
+            } else {
+                pending.add(packageName);
+            }
+        }
+
+        JsonObject response = createSuccessResponse(apps);
+        response.add("pending", pending);
+        if (cache.isPermissionDenied()) {
+            response.addProperty("permissionDenied", true);
+        }
+        return response;
+    }
+
+    private static JsonObject toJson(StorageStatsCache.Entry entry, long now) {
+        JsonObject json = new JsonObject();
+        json.addProperty("appBytes", entry.appBytes);
+        json.addProperty("dataBytes", entry.dataBytes);
+        json.addProperty("cacheBytes", entry.cacheBytes);
+        json.addProperty("updatedAt", entry.updatedAt);
+        json.addProperty("ageMs", Math.max(0, now - entry.updatedAt));
+        return json;
+    }
+}
@@ -0,0 +1,93 @@
+package com.atao.tdeviceservice.api;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.atao.tdeviceservice.apps.UsageAggregator;
+import com.atao.tdeviceservice.util.SystemCallExecutor;
+import com.google.gson.JsonObject;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/**
+ * 应用使用统计API处理器
+ */
+public class AppUsageHandler extends ApiHandler {
+
+    private static final String TAG = "AppUsageHandler";
+    private static final int DEFAULT_DAYS = 7;
+    private static final long FIRST_INGEST_TIMEOUT_MS = 10000;
+
+    public AppUsageHandler(Context context) {
+        super(context);
+    }
+
+    @Override
+    public JsonObject handleRequest(String uri, NanoHTTPD.IHTTPSession session) {
+        Log.d(TAG, "AppUsageHandler handling request: " + uri);
+
+        try {
+            if ("/api/apps/usage".equals(uri)) {
+                return getUsage(session.getParms());
+            } else {
+                return createErrorResponse("Unknown app usage endpoint");
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error getting app usage for " + uri, e);
+            return createErrorResponse("Failed to get app usage: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 获取日期范围内（from、to为yyyy-MM-dd，含两端，默认最近7天）各应用的前台时长、启动次数和最近使用时间
+     * 请求时先增量导入新事件，超过截止时间则先返回已有聚合并标记stale
+     */
+    private JsonObject getUsage(Map<String, String> params) throws Exception {
+        long now = System.currentTimeMillis();
+        long today = UsageAggregator.epochDay(now, ZoneId.systemDefault());
+        long toDay;
+        long fromDay;
+        try {
+            String to = params.get("to");
+            String from = params.get("from");
+            toDay = to != null ? LocalDate.parse(to).toEpochDay() : today;
+            fromDay = from != null ? LocalDate.parse(from).toEpochDay() : toDay - DEFAULT_DAYS + 1;
+        } catch (DateTimeParseException e) {
+            return createErrorResponse("Invalid date, expected yyyy-MM-dd: " + e.getParsedString());
+        }
+        if (fromDay > toDay) {
+            return createErrorResponse("from must not be after to");
+        }
+        if (fromDay <= today - UsageAggregator.RETENTION_DAYS) {
+            return createErrorResponse("Only the last " + UsageAggregator.RETENTION_DAYS + " days are available");
+        }
+
+        UsageAggregator aggregator = UsageAggregator.getInstance(context);
+        if (!aggregator.hasUsageAccess()) {
+            return createErrorResponse("Usage access permission not granted");
+        }
+        boolean stale = false;
+        CompletableFuture<Boolean> ingest = aggregator.ingestAsync();
+        long waitMs = aggregator.isReady() ? SystemCallExecutor.DEFAULT_DEADLINE_MS : FIRST_INGEST_TIMEOUT_MS;
+        try {
+            ingest.get(waitMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            Log.w(TAG, "Usage ingest missed deadline, serving existing aggregates");
+            stale = true;
+        }
+
+        JsonObject data = new JsonObject();
+        data.addProperty("from", LocalDate.ofEpochDay(fromDay).toString());
+        data.addProperty("to", LocalDate.ofEpochDay(toDay).toString());
+        data.add("apps", aggregator.query(fromDay, toDay, params.get("package"), now));
+        return markStale(createSuccessResponse(data), stale);
+    }
+}
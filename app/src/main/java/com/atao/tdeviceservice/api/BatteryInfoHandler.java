@@ -6,6 +6,10 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.os.BatteryManager;
 
+import com.atao.tdeviceservice.battery.BatterySnapshot;
+import com.atao.tdeviceservice.util.SystemCallExecutor;
+import com.google.gson.JsonObject;
+
 import fi.iki.elonen.NanoHTTPD;
 import android.util.Log;
 
@@ -21,37 +25,52 @@ public class BatteryInfoHandler extends ApiHandler {
     }
 
     @Override
-    public String handleRequest(String uri, NanoHTTPD.IHTTPSession session) {
+    public JsonObject handleRequest(String uri, NanoHTTPD.IHTTPSession session) {
         Log.d(TAG, "BatteryInfoHandler handling request: " + uri);
 
         try {
+            if ("/api/battery/snapshot".equals(uri)) {
+                return getBatterySnapshot();
+            }
+
             IntentFilter ifilter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
-            Intent batteryStatus = context.registerReceiver(null, ifilter);
+            SystemCallExecutor.Result<Intent> status = systemCall("battery:status",
+                    () -> context.registerReceiver(null, ifilter));
+            Intent batteryStatus = status.value;
 
             if (batteryStatus == null) {
                 return createErrorResponse("Unable to get battery status");
             }
 
+            JsonObject response;
             switch (uri) {
                 case "/api/battery/level":
-                    return getBatteryLevel(batteryStatus);
+                    response = getBatteryLevel(batteryStatus);
+                    break;
                 case "/api/battery/temperature":
-                    return getBatteryTemperature(batteryStatus);
+                    response = getBatteryTemperature(batteryStatus);
+                    break;
                 case "/api/battery/health":
-                    return getBatteryHealth(batteryStatus);
+                    response = getBatteryHealth(batteryStatus);
+                    break;
                 case "/api/battery/charging":
-                    return getChargingStatus(batteryStatus);
+                    response = getChargingStatus(batteryStatus);
+                    break;
                 case "/api/battery/isCharging":
-                    return getIsCharging(batteryStatus);
+                    response = getIsCharging(batteryStatus);
+                    break;
                 case "/api/battery/chargeType":
-                    return getChargeType(batteryStatus);
+                    response = getChargeType(batteryStatus);
+                    break;
                 case "/api/battery/current":
                     return getBatteryCurrent(batteryStatus);
                 case "/api/battery/voltage":
-                    return getBatteryVoltage(batteryStatus);
+                    response = getBatteryVoltage(batteryStatus);
+                    break;
                 default:
                     return createErrorResponse("Unknown battery info endpoint");
             }
+            return markStale(response, status.stale);
         } catch (Exception e) {
             Log.e(TAG, "Error getting battery info for " + uri, e);
             return createErrorResponse("Failed to get battery info: " + e.getMessage());
@@ -62,7 +81,7 @@ public class BatteryInfoHandler extends ApiHandler {
      * 获取电池电量百分比
      */
     @SuppressLint("DefaultLocale")
-    private String getBatteryLevel(Intent batteryStatus) {
+    private JsonObject getBatteryLevel(Intent batteryStatus) {
         int level = batteryStatus.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
         int scale = batteryStatus.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
 
@@ -78,7 +97,7 @@ public class BatteryInfoHandler extends ApiHandler {
      * 获取电池温度
      */
     @SuppressLint("DefaultLocale")
-    private String getBatteryTemperature(Intent batteryStatus) {
+    private JsonObject getBatteryTemperature(Intent batteryStatus) {
         int temperature = batteryStatus.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, -1);
 
         if (temperature == -1) {
@@ -93,37 +112,14 @@ public class BatteryInfoHandler extends ApiHandler {
     /**
      * 获取电池健康状态
      */
-    private String getBatteryHealth(Intent batteryStatus) {
+    private JsonObject getBatteryHealth(Intent batteryStatus) {
         int health = batteryStatus.getIntExtra(BatteryManager.EXTRA_HEALTH, -1);
 
         if (health == -1) {
             return createErrorResponse("Unable to get battery health");
         }
 
-        String healthStatus;
-        switch (health) {
-            case BatteryManager.BATTERY_HEALTH_COLD:
-                healthStatus = "Cold";
-                break;
-            case BatteryManager.BATTERY_HEALTH_DEAD:
-                healthStatus = "Dead";
-                break;
-            case BatteryManager.BATTERY_HEALTH_GOOD:
-                healthStatus = "Good";
-                break;
-            case BatteryManager.BATTERY_HEALTH_OVERHEAT:
-                healthStatus = "Overheat";
-                break;
-            case BatteryManager.BATTERY_HEALTH_OVER_VOLTAGE:
-                healthStatus = "Over Voltage";
-                break;
-            case BatteryManager.BATTERY_HEALTH_UNSPECIFIED_FAILURE:
-                healthStatus = "Unspecified Failure";
-                break;
-            default:
-                healthStatus = "Unknown";
-                break;
-        }
+        String healthStatus = describeHealth(health);
 
         return createSuccessResponse(healthStatus);
     }
@@ -131,31 +127,14 @@ public class BatteryInfoHandler extends ApiHandler {
     /**
      * 获取充电状态
      */
-    private String getChargingStatus(Intent batteryStatus) {
+    private JsonObject getChargingStatus(Intent batteryStatus) {
         int status = batteryStatus.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
 
         if (status == -1) {
             return createErrorResponse("Unable to get charging status");
         }
 
-        String chargingStatus;
-        switch (status) {
-            case BatteryManager.BATTERY_STATUS_CHARGING:
-                chargingStatus = "Charging";
-                break;
-            case BatteryManager.BATTERY_STATUS_DISCHARGING:
-                chargingStatus = "Discharging";
-                break;
-            case BatteryManager.BATTERY_STATUS_FULL:
-                chargingStatus = "Full";
-                break;
-            case BatteryManager.BATTERY_STATUS_NOT_CHARGING:
-                chargingStatus = "Not Charging";
-                break;
-            default:
-                chargingStatus = "Unknown";
-                break;
-        }
+        String chargingStatus = describeStatus(status);
 
         return createSuccessResponse(chargingStatus);
     }
@@ -163,7 +142,7 @@ public class BatteryInfoHandler extends ApiHandler {
     /**
      * 判断是否在充电
      */
-    private String getIsCharging(Intent batteryStatus) {
+    private JsonObject getIsCharging(Intent batteryStatus) {
         int status = batteryStatus.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
         
         if (status == -1) {
@@ -179,28 +158,14 @@ public class BatteryInfoHandler extends ApiHandler {
     /**
      * 获取充电方式
      */
-    private String getChargeType(Intent batteryStatus) {
+    private JsonObject getChargeType(Intent batteryStatus) {
         int chargePlug = batteryStatus.getIntExtra(BatteryManager.EXTRA_PLUGGED, -1);
         
         if (chargePlug == -1) {
             return createErrorResponse("Unable to get charge type");
         }
         
-        String chargeType;
-        switch (chargePlug) {
-            case BatteryManager.BATTERY_PLUGGED_AC:
-                chargeType = "交流电源";
-                break;
-            case BatteryManager.BATTERY_PLUGGED_USB:
-                chargeType = "USB";
-                break;
-            case BatteryManager.BATTERY_PLUGGED_WIRELESS:
-                chargeType = "无线充电";
-                break;
-            default:
-                chargeType = "未充电";
-                break;
-        }
+        String chargeType = describePlugged(chargePlug);
         
         return createSuccessResponse(chargeType);
     }
@@ -209,7 +174,7 @@ public class BatteryInfoHandler extends ApiHandler {
      * 获取电池电流（mA）
      */
     @SuppressLint("DefaultLocale")
-    private String getBatteryCurrent(Intent batteryStatus) {
+    private JsonObject getBatteryCurrent(Intent batteryStatus) {
         try {
             BatteryManager batteryManager = (BatteryManager) context.getSystemService(Context.BATTERY_SERVICE);
             if (batteryManager == null) {
@@ -217,10 +182,10 @@ public class BatteryInfoHandler extends ApiHandler {
             }
             
             // 获取电流（单位：µA，转换为 mA 需除以 1000）
-            long currentMicroAmp = batteryManager.getLongProperty(BatteryManager.BATTERY_PROPERTY_CURRENT_NOW);
-            int currentMilliAmp = (int) (currentMicroAmp / 1000);
+            SystemCallExecutor.Result<Long> current = BatterySnapshot.readCurrentMicroAmp(batteryManager);
+            int currentMilliAmp = (int) (current.value / 1000);
             
-            return createSuccessResponse(String.format("%d", currentMilliAmp));
+            return markStale(createSuccessResponse(String.format("%d", currentMilliAmp)), current.stale);
         } catch (Exception e) {
             Log.e(TAG, "Error getting battery current", e);
             return createErrorResponse("Unable to get battery current: " + e.getMessage());
@@ -231,7 +196,7 @@ public class BatteryInfoHandler extends ApiHandler {
      * 获取电池电压（V）
      */
     @SuppressLint("DefaultLocale")
-    private String getBatteryVoltage(Intent batteryStatus) {
+    private JsonObject getBatteryVoltage(Intent batteryStatus) {
         int voltage = batteryStatus.getIntExtra(BatteryManager.EXTRA_VOLTAGE, -1);
         
         if (voltage == -1) {
@@ -242,4 +207,68 @@ public class BatteryInfoHandler extends ApiHandler {
         float voltageVolts = voltage / 1000.0f;
         return createSuccessResponse(String.format("%.3f", voltageVolts));
     }
+
+    /**
+     * 获取电池完整快照（数值字段保留原始类型，广播或电流来自旧值时标记stale）
+     */
+    private JsonObject getBatterySnapshot() throws Exception {
+        BatterySnapshot snapshot = BatterySnapshot.read(context);
+        return markStale(createSuccessResponse(snapshot.toJson()), snapshot.stale);
+    }
+
+    /**
+     * 健康状态码转文字
+     */
+    public static String describeHealth(int health) {
+        switch (health) {
+            case BatteryManager.BATTERY_HEALTH_COLD:
+                return "Cold";
+            case BatteryManager.BATTERY_HEALTH_DEAD:
+                return "Dead";
+            case BatteryManager.BATTERY_HEALTH_GOOD:
+                return "Good";
+            case BatteryManager.BATTERY_HEALTH_OVERHEAT:
+                return "Overheat";
+            case BatteryManager.BATTERY_HEALTH_OVER_VOLTAGE:
+                return "Over Voltage";
+            case BatteryManager.BATTERY_HEALTH_UNSPECIFIED_FAILURE:
+                return "Unspecified Failure";
+            default:
+                return "Unknown";
+        }
+    }
+
+    /**
+     * 充电状态码转文字
+     */
+    public static String describeStatus(int status) {
+        switch (status) {
+            case BatteryManager.BATTERY_STATUS_CHARGING:
+                return "Charging";
+            case BatteryManager.BATTERY_STATUS_DISCHARGING:
+                return "Discharging";
+            case BatteryManager.BATTERY_STATUS_FULL:
+                return "Full";
+            case BatteryManager.BATTERY_STATUS_NOT_CHARGING:
+                return "Not Charging";
+            default:
+                return "Unknown";
+        }
+    }
+
+    /**
+     * 充电方式转文字
+     */
+    public static String describePlugged(int plugged) {
+        switch (plugged) {
+            case BatteryManager.BATTERY_PLUGGED_AC:
+                return "交流电源";
+            case BatteryManager.BATTERY_PLUGGED_USB:
+                return "USB";
+            case BatteryManager.BATTERY_PLUGGED_WIRELESS:
+                return "无线充电";
+            default:
+                return "未充电";
+        }
+    }
 }
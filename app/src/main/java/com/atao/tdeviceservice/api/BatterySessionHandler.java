@@ -0,0 +1,70 @@
+package com.atao.tdeviceservice.api;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.atao.tdeviceservice.battery.ChargeSessionTracker;
+import com.atao.tdeviceservice.battery.CurrentSampler;
+import com.google.gson.JsonObject;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/**
+ * 电池电流采样会话与充放电会话统计API处理器
+ * 采样和统计都在设备端完成，客户端只在开始和结束时各请求一次
+ */
+public class BatterySessionHandler extends ApiHandler {
+
+    private static final String TAG = "BatterySessionHandler";
+
+    public BatterySessionHandler(Context context) {
+        super(context);
+    }
+
+    @Override
+    public JsonObject handleRequest(String uri, NanoHTTPD.IHTTPSession session) {
+        Log.d(TAG, "BatterySessionHandler handling request: " + uri);
+
+        try {
+            if ("/api/battery/sessions".equals(uri)) {
+                // 广播的注册和注销由服务生命周期负责，未在统计时返回tracking=false和已有数据
+                return createSuccessResponse(ChargeSessionTracker.getInstance(context).toJson());
+            }
+            CurrentSampler sampler = CurrentSampler.getInstance(context);
+            switch (uri) {
+                case "/api/battery/session/start":
+                    return startSession(sampler, session.getParms().get("hz"));
+                case "/api/battery/session/stop":
+                    if (!sampler.stop()) {
+                        return createErrorResponse("No battery session running");
+                    }
+                    return createSuccessResponse(sampler.report());
+                case "/api/battery/session/report":
+                    return createSuccessResponse(sampler.report());
+                default:
+                    return createErrorResponse("Unknown battery session endpoint");
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error handling battery session request " + uri, e);
+            return createErrorResponse("Failed to handle battery session: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 开始采样，hz为采样频率（1-50，默认10）
+     */
+    private JsonObject startSession(CurrentSampler sampler, String hzParam) {
+        int hz = CurrentSampler.DEFAULT_HZ;
+        if (hzParam != null) {
+            try {
+                hz = Integer.parseInt(hzParam);
+            } catch (NumberFormatException e) {
+                return createErrorResponse("Invalid hz parameter: " + hzParam);
+            }
+        }
+        if (!sampler.start(hz)) {
+            return createErrorResponse("Battery session already running");
+        }
+        return createSuccessResponse(sampler.report());
+    }
+}
@@ -2,6 +2,11 @@ package com.atao.tdeviceservice.api;
 
 import android.content.Context;
 
+import com.atao.tdeviceservice.apps.IconPrewarmer;
+import com.atao.tdeviceservice.server.AdmissionController;
+import com.atao.tdeviceservice.server.ServerMetrics;
+import com.atao.tdeviceservice.telemetry.TelemetryExporter;
+import com.atao.tdeviceservice.util.SystemCallExecutor;
 import com.google.gson.JsonObject;
 
 import fi.iki.elonen.NanoHTTPD;
@@ -19,7 +24,7 @@ public class HealthHandler extends ApiHandler {
     }
 
     @Override
-    public String handleRequest(String uri, NanoHTTPD.IHTTPSession session) {
+    public JsonObject handleRequest(String uri, NanoHTTPD.IHTTPSession session) {
         Log.d(TAG, "HealthHandler handling request: " + uri);
 
         try {
@@ -37,7 +42,7 @@ public class HealthHandler extends ApiHandler {
     /**
      * 获取服务健康状态
      */
-    private String getHealthStatus() {
+    private JsonObject getHealthStatus() {
         try {
             JsonObject health = new JsonObject();
             health.addProperty("status", "healthy");
@@ -45,11 +50,13 @@ public class HealthHandler extends ApiHandler {
             health.addProperty("version", "1.0.0");
             health.addProperty("uptime", System.currentTimeMillis());
             health.addProperty("timestamp", System.currentTimeMillis());
+            health.add("server", ServerMetrics.getInstance().toJson());
+            health.add("admission", AdmissionController.getInstance().toJson());
+            health.add("systemCalls", SystemCallExecutor.getInstance().toJson());
+            health.add("iconPrewarm", IconPrewarmer.getInstance(context).toJson());
+            health.add("telemetry", TelemetryExporter.getInstance(context).toJson());
 
-            JsonObject response = new JsonObject();
-            response.addProperty("success", true);
-            response.add("data", health);
-            return response.toString();
+            return createSuccessResponse(health);
 
         } catch (Exception e) {
             Log.e(TAG, "Error getting health status", e);
@@ -0,0 +1,46 @@
+package com.atao.tdeviceservice.api;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.atao.tdeviceservice.network.NetworkMonitor;
+import com.google.gson.JsonObject;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/**
+ * 网络状态API处理器
+ * 数据来自NetworkMonitor回调维护的快照，请求时不访问ConnectivityManager
+ */
+public class NetworkHandler extends ApiHandler {
+
+    private static final String TAG = "NetworkHandler";
+
+    public NetworkHandler(Context context) {
+        super(context);
+    }
+
+    @Override
+    public JsonObject handleRequest(String uri, NanoHTTPD.IHTTPSession session) {
+        Log.d(TAG, "NetworkHandler handling request: " + uri);
+
+        // 回调的注册和注销由服务生命周期负责，这里只读快照
+        NetworkMonitor monitor = NetworkMonitor.getInstance(context);
+        NetworkMonitor.Snapshot snapshot = monitor.getSnapshot();
+        switch (uri) {
+            case "/api/network":
+                JsonObject data = snapshot.toJson();
+                data.addProperty("monitoring", monitor.isStarted());
+                return createSuccessResponse(data);
+            case "/api/network/wifi":
+                if (snapshot.wifi == null) {
+                    return createErrorResponse("Not connected to Wi-Fi");
+                }
+                return createSuccessResponse(snapshot.wifi.toJson());
+            case "/api/network/addresses":
+                return createSuccessResponse(snapshot.addressesJson());
+            default:
+                return createErrorResponse("Unknown network endpoint");
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.atao.tdeviceservice.api;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.atao.tdeviceservice.system.SystemStatsSampler;
+import com.google.gson.JsonObject;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/**
+ * 系统状态API处理器（CPU、内存、温度）
+ * 默认使用不超过1秒的采样结果，maxAge参数可调整（毫秒，0表示立即采样）
+ */
+public class SystemStatsHandler extends ApiHandler {
+
+    private static final String TAG = "SystemStatsHandler";
+    private static final long DEFAULT_MAX_AGE_MS = 1000;
+
+    public SystemStatsHandler(Context context) {
+        super(context);
+    }
+
+    @Override
+    public JsonObject handleRequest(String uri, NanoHTTPD.IHTTPSession session) {
+        Log.d(TAG, "SystemStatsHandler handling request: " + uri);
+
+        try {
+            long maxAge = DEFAULT_MAX_AGE_MS;
+            String maxAgeParam = session.getParms().get("maxAge");
+            if (maxAgeParam != null) {
+                try {
+                    maxAge = Math.max(0, Long.parseLong(maxAgeParam));
+                } catch (NumberFormatException e) {
+                    return createErrorResponse("Invalid maxAge parameter: " + maxAgeParam);
+                }
+            }
+
+            JsonObject stats = SystemStatsSampler.getInstance().latest(maxAge);
+            switch (uri) {
+                case "/api/system/snapshot":
+                    return createSuccessResponse(stats);
+                case "/api/system/cpu":
+                    return withSampledAt(stats, "cpu");
+                case "/api/system/memory":
+                    return withSampledAt(stats, "memory");
+                case "/api/system/thermal":
+                    return withSampledAt(stats, "thermal");
+                default:
+                    return createErrorResponse("Unknown system stats endpoint");
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error getting system stats for " + uri, e);
+            return createErrorResponse("Failed to get system stats: " + e.getMessage());
+        }
+    }
+
+    private JsonObject withSampledAt(JsonObject stats, String member) {
+        JsonObject response = createSuccessResponse(stats.get(member));
+        response.add("sampledAt", stats.get("sampledAt"));
+        return response;
+    }
+}
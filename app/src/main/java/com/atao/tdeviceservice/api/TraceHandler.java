@@ -0,0 +1,57 @@
+package com.atao.tdeviceservice.api;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.atao.tdeviceservice.util.Tracer;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/**
+ * 请求追踪API处理器
+ * dump直接返回Chrome trace-event JSON（不包裹success/data），可直接拖入 chrome://tracing 或 ui.perfetto.dev
+ */
+public class TraceHandler extends ApiHandler {
+
+    private static final String TAG = "TraceHandler";
+
+    public TraceHandler(Context context) {
+        super(context);
+    }
+
+    @Override
+    public NanoHTTPD.Response handleRawRequest(String uri, NanoHTTPD.IHTTPSession session) throws IOException {
+        if (!"/api/trace/dump".equals(uri)) {
+            return null;
+        }
+        JsonObject trace = Tracer.toChromeTrace();
+        if ("true".equals(session.getParms().get("clear"))) {
+            Tracer.clear();
+        }
+        NanoHTTPD.Response response = NanoHTTPD.newFixedLengthResponse(NanoHTTPD.Response.Status.OK,
+                "application/json", trace.toString());
+        response.addHeader("Content-Disposition", "attachment; filename=\"tdevice-trace.json\"");
+        return response;
+    }
+
+    @Override
+    public JsonObject handleRequest(String uri, NanoHTTPD.IHTTPSession session) {
+        Log.d(TAG, "TraceHandler handling request: " + uri);
+
+        switch (uri) {
+            case "/api/trace/start":
+                Tracer.setEnabled(true);
+                return createSuccessResponse(Tracer.toJson());
+            case "/api/trace/stop":
+                Tracer.setEnabled(false);
+                return createSuccessResponse(Tracer.toJson());
+            case "/api/trace/status":
+                return createSuccessResponse(Tracer.toJson());
+            default:
+                return createErrorResponse("Unknown trace endpoint");
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.atao.tdeviceservice.apps;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.graphics.drawable.Drawable;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.atao.tdeviceservice.util.SingleFlight;
+import com.atao.tdeviceservice.util.SystemCallExecutor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 应用图标缓存 - 进程级单例
+ *
+ * 按包名缓存渲染好的PNG，按字节数LRU淘汰，容量按应用可用堆大小确定（堆的1/8，4MB-32MB）。
+ * 包变化时移除对应条目；渲染开始前取得的该包版本号在期间有失效发生时，渲染结果不会写入。
+ * 未命中时同一应用的并发渲染（请求与后台预热）只执行一次。
+ */
+public class IconCache {
+
+    private static final String TAG = "IconCache";
+    private static final int MIN_BYTES = 4 * 1024 * 1024;
+    private static final int MAX_BYTES = 32 * 1024 * 1024;
+    private static final long ICON_TIMEOUT_MS = 5000;
+    private static final long ICON_LOAD_DEADLINE_MS = 2000;
+
+    private static final IconCache instance = new IconCache();
+
+    private final LruCache<String, byte[]> cache = new LruCache<String, byte[]>(MIN_BYTES) {
+        @Override
+        protected int sizeOf(String key, byte[] value) {
+            return value.length;
+        }
+    };
+    private final SingleFlight<String, byte[]> flights = new SingleFlight<>();
+    // 以下字段由this保护：失效序号，按包记录最近一次失效，clear()时记录全局失效
+    private long invalidations;
+    private long clearedAt;
+    private final Map<String, Long> removedAt = new HashMap<>();
+
+    private IconCache() {
+    }
+
+    public static IconCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * 按应用可用堆大小设置缓存容量（服务创建时调用）
+     */
+    public void configure(Context context) {
+        ActivityManager manager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (manager == null) {
+            return;
+        }
+        long heapBytes = (long) manager.getMemoryClass() * 1024 * 1024;
+        int maxBytes = (int) Math.max(MIN_BYTES, Math.min(MAX_BYTES, heapBytes / 8));
+        cache.resize(maxBytes);
+        Log.d(TAG, "Icon cache capacity " + maxBytes / 1024 + "KB");
+    }
+
+    /**
+     * 获取缓存的PNG，未缓存返回null（返回的数组不能修改）
+     */
+    public byte[] get(String packageName) {
+        return cache.get(packageName);
+    }
+
+    /**
+     * 获取图标PNG，未缓存时渲染并写入缓存
+     * 图标加载走系统调用线程池（不保留Drawable），栅格化和压缩在当前线程完成
+     */
+    public byte[] load(Context context, String packageName) throws Exception {
+        byte[] png = cache.get(packageName);
+        if (png != null) {
+            return png;
+        }
+        long version = version(packageName);
+        png = flights.execute(packageName, ICON_TIMEOUT_MS, () -> {
+            PackageManager pm = context.getPackageManager();
+            Drawable icon = SystemCallExecutor.getInstance().call("iconDrawable:" + packageName,
+                    ICON_LOAD_DEADLINE_MS, () -> pm.getApplicationInfo(packageName, 0).loadIcon(pm), false).value;
+            return IconRenderer.getInstance().renderPng(icon);
+        });
+        put(packageName, png, version);
+        return png;
+    }
+
+    /**
+     * 包当前的版本号，渲染前取得，写入时传回
+     */
+    public synchronized long version(String packageName) {
+        Long removed = removedAt.get(packageName);
+        return removed != null ? Math.max(removed, clearedAt) : clearedAt;
+    }
+
+    /**
+     * 写入渲染结果，期间该包发生过失效时丢弃
+     */
+    public synchronized void put(String packageName, byte[] png, long renderVersion) {
+        if (version(packageName) == renderVersion) {
+            cache.put(packageName, png);
+        }
+    }
+
+    /**
+     * 包变化时移除对应图标（只影响该包进行中的渲染）
+     */
+    public synchronized void remove(String packageName) {
+        removedAt.put(packageName, ++invalidations);
+        cache.remove(packageName);
+    }
+
+    /**
+     * 清空缓存（内存严重不足时调用）
+     */
+    public synchronized void clear() {
+        clearedAt = ++invalidations;
+        removedAt.clear();
+        cache.evictAll();
+    }
+
+    public int count() {
+        return cache.snapshot().size();
+    }
+
+    public int sizeBytes() {
+        return cache.size();
+    }
+
+    public int maxBytes() {
+        return cache.maxSize();
+    }
+}
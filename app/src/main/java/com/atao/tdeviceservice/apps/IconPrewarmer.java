@@ -0,0 +1,287 @@
+package com.atao.tdeviceservice.apps;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.os.BatteryManager;
+import android.os.PowerManager;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.gson.JsonObject;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 图标预热 - 进程级单例
+ *
+ * 服务启动后和包变化后，在低优先级线程上为桌面应用渲染图标并写入IconCache。
+ * 使用电池且电量低于阈值、或设备处于温控降频时自动暂停，条件恢复后继续。
+ */
+public class IconPrewarmer {
+
+    private static final String TAG = "IconPrewarmer";
+    private static final int PARALLELISM = 2;
+    private static final long STARTUP_DELAY_MS = 5000;
+    // 包变化通常成批到达，合并为一轮预热
+    private static final long CHANGE_DELAY_MS = 2000;
+    private static final long PAUSE_RECHECK_MS = 30000;
+    private static final long THROTTLE_CHECK_INTERVAL_MS = 5000;
+
+    public static final String STATE_DISABLED = "disabled";
+    public static final String STATE_IDLE = "idle";
+    public static final String STATE_RUNNING = "running";
+    public static final String STATE_PAUSED = "paused";
+
+    private static volatile IconPrewarmer instance;
+
+    private final Context context;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            backgroundThreads("IconPrewarm-Scheduler"));
+    private final ExecutorService workers = Executors.newFixedThreadPool(PARALLELISM,
+            backgroundThreads("IconPrewarm"));
+
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger rendered = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    // 以下字段由this保护
+    private final ArrayDeque<String> pending = new ArrayDeque<>();
+    private int inFlight;
+    private boolean enabled;
+    private int minBatteryLevel;
+    private String state = STATE_DISABLED;
+    private String pauseReason;
+    private ScheduledFuture<?> scheduledPass;
+    private ScheduledFuture<?> scheduledResume;
+    private String cachedThrottle;
+    private long throttleCheckedAt;
+
+    private IconPrewarmer(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public static IconPrewarmer getInstance(Context context) {
+        if (instance == null) {
+            synchronized (IconPrewarmer.class) {
+                if (instance == null) {
+                    instance = new IconPrewarmer(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 应用配置；从关闭变为开启时安排一轮启动预热
+     */
+    public synchronized void configure(boolean enabled, int minBatteryLevel) {
+        this.minBatteryLevel = minBatteryLevel;
+        this.throttleCheckedAt = 0;
+        if (enabled == this.enabled) {
+            return;
+        }
+        this.enabled = enabled;
+        if (enabled) {
+            state = STATE_IDLE;
+            schedulePass(STARTUP_DELAY_MS);
+        } else {
+            stop();
+        }
+    }
+
+    /**
+     * 包安装/更新后调用，稍后预热缺失的图标
+     */
+    public synchronized void onPackagesChanged() {
+        if (enabled) {
+            schedulePass(CHANGE_DELAY_MS);
+        }
+    }
+
+    /**
+     * 停止预热，清空待处理队列（正在渲染的图标会完成）
+     */
+    public synchronized void stop() {
+        enabled = false;
+        state = STATE_DISABLED;
+        pauseReason = null;
+        pending.clear();
+        if (scheduledPass != null) {
+            scheduledPass.cancel(false);
+            scheduledPass = null;
+        }
+        if (scheduledResume != null) {
+            scheduledResume.cancel(false);
+            scheduledResume = null;
+        }
+    }
+
+    private void schedulePass(long delayMs) {
+        if (scheduledPass != null) {
+            scheduledPass.cancel(false);
+        }
+        scheduledPass = scheduler.schedule(this::startPass, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 扫描桌面应用，把未缓存的图标加入队列
+     */
+    private void startPass() {
+        PackageIndex.Snapshot snapshot;
+        try {
+            snapshot = PackageIndex.getInstance(context).getSnapshot();
+        } catch (IllegalStateException e) {
+            Log.w(TAG, "Package index unavailable, skipping prewarm pass", e);
+            return;
+        }
+        IconCache cache = IconCache.getInstance();
+        int added = 0;
+        synchronized (this) {
+            if (!enabled) {
+                return;
+            }
+            for (int i = 0; i < snapshot.size(); i++) {
+                PackageIndex.Entry entry = snapshot.get(i);
+                if (entry.isLauncher && cache.get(entry.packageName) == null
+                        && !pending.contains(entry.packageName)) {
+                    pending.add(entry.packageName);
+                    added++;
+                }
+            }
+            total.addAndGet(added);
+            Log.d(TAG, "Prewarm pass queued " + added + " icons");
+            pump();
+        }
+    }
+
+    /**
+     * 在并发上限内派发任务；受限时暂停并定时重查
+     */
+    private synchronized void pump() {
+        if (!enabled) {
+            return;
+        }
+        if (pending.isEmpty()) {
+            if (inFlight == 0 && !STATE_IDLE.equals(state)) {
+                state = STATE_IDLE;
+                pauseReason = null;
+                Log.d(TAG, "Prewarm finished: " + rendered.get() + " rendered, " + failed.get() + " failed");
+            }
+            return;
+        }
+        String reason = throttleReason();
+        if (reason != null) {
+            if (!STATE_PAUSED.equals(state)) {
+                Log.d(TAG, "Prewarm paused: " + reason);
+            }
+            state = STATE_PAUSED;
+            pauseReason = reason;
+            if (scheduledResume == null) {
+                scheduledResume = scheduler.schedule(this::resume, PAUSE_RECHECK_MS, TimeUnit.MILLISECONDS);
+            }
+            return;
+        }
+        state = STATE_RUNNING;
+        pauseReason = null;
+        while (inFlight < PARALLELISM && !pending.isEmpty()) {
+            String packageName = pending.poll();
+            inFlight++;
+            workers.execute(() -> warm(packageName));
+        }
+    }
+
+    private synchronized void resume() {
+        scheduledResume = null;
+        pump();
+    }
+
+    private void warm(String packageName) {
+        IconCache cache = IconCache.getInstance();
+        try {
+            cache.load(context, packageName);
+            rendered.incrementAndGet();
+        } catch (PackageManager.NameNotFoundException e) {
+            // 预热期间被卸载
+            failed.incrementAndGet();
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            Log.w(TAG, "Failed to prewarm icon for " + packageName, e);
+        } finally {
+            synchronized (this) {
+                inFlight--;
+                pump();
+            }
+        }
+    }
+
+    /**
+     * 需要暂停时返回原因，否则返回null；结果缓存几秒，避免每个图标都查询系统服务
+     */
+    private String throttleReason() {
+        long now = SystemClock.elapsedRealtime();
+        if (throttleCheckedAt != 0 && now - throttleCheckedAt < THROTTLE_CHECK_INTERVAL_MS) {
+            return cachedThrottle;
+        }
+        throttleCheckedAt = now;
+        cachedThrottle = null;
+
+        PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        if (powerManager != null && powerManager.getCurrentThermalStatus() >= PowerManager.THERMAL_STATUS_MODERATE) {
+            cachedThrottle = "thermal";
+            return cachedThrottle;
+        }
+
+        Intent battery = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery != null) {
+            int plugged = battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0);
+            int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+            if (plugged == 0 && level >= 0 && scale > 0 && level * 100 / scale < minBatteryLevel) {
+                cachedThrottle = "battery";
+            }
+        }
+        return cachedThrottle;
+    }
+
+    /**
+     * 预热进度，供健康检查使用
+     */
+    public synchronized JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("state", state);
+        if (pauseReason != null) {
+            json.addProperty("pauseReason", pauseReason);
+        }
+        json.addProperty("total", total.get());
+        json.addProperty("rendered", rendered.get());
+        json.addProperty("failed", failed.get());
+        json.addProperty("pending", pending.size() + inFlight);
+        IconCache cache = IconCache.getInstance();
+        json.addProperty("cachedIcons", cache.count());
+        json.addProperty("cacheBytes", cache.sizeBytes());
+        json.addProperty("cacheMaxBytes", cache.maxBytes());
+        return json;
+    }
+
+    private static ThreadFactory backgroundThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,266 @@
+package com.atao.tdeviceservice.apps;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.drawable.AdaptiveIconDrawable;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+
+import com.atao.tdeviceservice.util.Tracer;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 应用图标渲染器 - 进程级单例
+ *
+ * 按尺寸缓存少量可复用的Bitmap/Canvas，PNG编码缓冲区按线程复用，
+ * 默认图标只绘制一次，批量渲染时几乎不产生临时对象。
+ */
+public class IconRenderer {
+
+    private static final int DEFAULT_SIZE = 64;
+    // 最多保留几种尺寸，每种尺寸最多保留几块画布
+    private static final int MAX_POOLED_SIZES = 4;
+    private static final int MAX_SURFACES_PER_SIZE = 2;
+    // 超过该边长的画布用完即回收，不进入池
+    private static final int MAX_POOLED_EDGE = 512;
+    // 编码缓冲区超过该大小时用完即丢弃，避免长期占用内存
+    private static final int MAX_RETAINED_BUFFER = 256 * 1024;
+    private static final int INITIAL_BUFFER = 16 * 1024;
+
+    private static final IconRenderer instance = new IconRenderer();
+
+    private final Map<Long, ArrayDeque<Surface>> pool =
+            new LinkedHashMap<Long, ArrayDeque<Surface>>(MAX_POOLED_SIZES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, ArrayDeque<Surface>> eldest) {
+                    if (size() <= MAX_POOLED_SIZES) {
+                        return false;
+                    }
+                    for (Surface surface : eldest.getValue()) {
+                        surface.bitmap.recycle();
+                    }
+                    return true;
+                }
+            };
+    private final ThreadLocal<EncodeBuffer> buffers = new ThreadLocal<>();
+    private volatile Bitmap defaultIcon;
+    private volatile byte[] defaultIconPng;
+
+    private IconRenderer() {
+    }
+
+    public static IconRenderer getInstance() {
+        return instance;
+    }
+
+    /**
+     * 渲染图标为PNG，drawable为null时返回默认图标（共享数组，调用方不能修改）
+     */
+    public byte[] renderPng(Drawable drawable) {
+        if (drawable == null) {
+            return getDefaultIconPng();
+        }
+        if (drawable instanceof BitmapDrawable) {
+            Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
+            return bitmap != null ? encodePng(bitmap) : getDefaultIconPng();
+        }
+
+        int width;
+        int height;
+        if (drawable instanceof AdaptiveIconDrawable) {
+            // 自适应图标按正方形绘制
+            width = height = Math.max(drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight());
+        } else {
+            width = drawable.getIntrinsicWidth();
+            height = drawable.getIntrinsicHeight();
+        }
+        if (width <= 0 || height <= 0) {
+            width = height = DEFAULT_SIZE;
+        }
+
+        Surface surface = acquire(width, height);
+        try {
+            try (Tracer.Span span = Tracer.begin("icon.draw")) {
+                draw(drawable, surface.canvas, width, height);
+            }
+            return encodePng(surface.bitmap);
+        } finally {
+            release(surface);
+        }
+    }
+
+    private void draw(Drawable drawable, Canvas canvas, int width, int height) {
+        if (drawable instanceof AdaptiveIconDrawable) {
+            AdaptiveIconDrawable adaptiveIcon = (AdaptiveIconDrawable) drawable;
+            Drawable background = adaptiveIcon.getBackground();
+            Drawable foreground = adaptiveIcon.getForeground();
+            if (background != null) {
+                background.setBounds(0, 0, width, height);
+                background.draw(canvas);
+            }
+            if (foreground != null) {
+                foreground.setBounds(0, 0, width, height);
+                foreground.draw(canvas);
+            }
+        } else {
+            drawable.setBounds(0, 0, width, height);
+            drawable.draw(canvas);
+        }
+    }
+
+    /**
+     * PNG压缩到线程复用的缓冲区，只做一次精确长度的拷贝
+     */
+    private byte[] encodePng(Bitmap bitmap) {
+        EncodeBuffer buffer = buffers.get();
+        if (buffer == null) {
+            buffer = new EncodeBuffer();
+            buffers.set(buffer);
+        }
+        buffer.reset();
+        try (Tracer.Span span = Tracer.begin("icon.encodePng")) {
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, buffer);
+        }
+        byte[] png = buffer.toByteArray();
+        if (buffer.capacity() > MAX_RETAINED_BUFFER) {
+            buffers.remove();
+        }
+        return png;
+    }
+
+    private Surface acquire(int width, int height) {
+        long key = sizeKey(width, height);
+        synchronized (pool) {
+            ArrayDeque<Surface> surfaces = pool.get(key);
+            Surface surface = surfaces != null ? surfaces.poll() : null;
+            if (surface != null) {
+                surface.bitmap.eraseColor(Color.TRANSPARENT);
+                return surface;
+            }
+        }
+        return new Surface(Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888));
+    }
+
+    private void release(Surface surface) {
+        Bitmap bitmap = surface.bitmap;
+        if (bitmap.getWidth() > MAX_POOLED_EDGE || bitmap.getHeight() > MAX_POOLED_EDGE) {
+            bitmap.recycle();
+            return;
+        }
+        long key = sizeKey(bitmap.getWidth(), bitmap.getHeight());
+        synchronized (pool) {
+            ArrayDeque<Surface> surfaces = pool.get(key);
+            if (surfaces == null) {
+                surfaces = new ArrayDeque<>(MAX_SURFACES_PER_SIZE);
+                pool.put(key, surfaces);
+            }
+            if (surfaces.size() < MAX_SURFACES_PER_SIZE) {
+                surfaces.push(surface);
+                return;
+            }
+        }
+        bitmap.recycle();
+    }
+
+    /**
+     * 释放池中的所有画布（内存紧张时调用）
+     */
+    public void trim() {
+        synchronized (pool) {
+            Iterator<ArrayDeque<Surface>> iterator = pool.values().iterator();
+            while (iterator.hasNext()) {
+                for (Surface surface : iterator.next()) {
+                    surface.bitmap.recycle();
+                }
+                iterator.remove();
+            }
+        }
+    }
+
+    private static long sizeKey(int width, int height) {
+        return ((long) width << 32) | (height & 0xFFFFFFFFL);
+    }
+
+    private byte[] getDefaultIconPng() {
+        byte[] png = defaultIconPng;
+        if (png == null) {
+            png = encodePng(getDefaultIcon());
+            defaultIconPng = png;
+        }
+        return png;
+    }
+
+    /**
+     * 默认图标（无法获取应用图标时使用），只绘制一次
+     */
+    private Bitmap getDefaultIcon() {
+        Bitmap bitmap = defaultIcon;
+        if (bitmap == null) {
+            synchronized (this) {
+                bitmap = defaultIcon;
+                if (bitmap == null) {
+                    bitmap = createDefaultIcon();
+                    defaultIcon = bitmap;
+                }
+            }
+        }
+        return bitmap;
+    }
+
+    private static Bitmap createDefaultIcon() {
+        Bitmap bitmap = Bitmap.createBitmap(DEFAULT_SIZE, DEFAULT_SIZE, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+
+        // 绘制一个简单的默认图标
+        Paint paint = new Paint();
+        paint.setColor(0xFF666666); // 灰色
+        paint.setStyle(Paint.Style.FILL);
+        paint.setAntiAlias(true);
+
+        // 绘制圆形背景
+        canvas.drawCircle(32, 32, 30, paint);
+
+        // 绘制字母"A"
+        paint.setColor(0xFFFFFFFF); // 白色
+        paint.setTextSize(32);
+        paint.setTextAlign(Paint.Align.CENTER);
+        Paint.FontMetrics fontMetrics = paint.getFontMetrics();
+        float textY = 32 + (fontMetrics.descent - fontMetrics.ascent) / 2 - fontMetrics.descent;
+        canvas.drawText("A", 32, textY, paint);
+
+        return bitmap;
+    }
+
+    /**
+     * 可复用的画布
+     */
+    private static final class Surface {
+        final Bitmap bitmap;
+        final Canvas canvas;
+
+        Surface(Bitmap bitmap) {
+            this.bitmap = bitmap;
+            this.canvas = new Canvas(bitmap);
+        }
+    }
+
+    /**
+     * 可查询容量的输出流，用于限制线程缓冲区的长期占用
+     */
+    private static final class EncodeBuffer extends ByteArrayOutputStream {
+        EncodeBuffer() {
+            super(INITIAL_BUFFER);
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.atao.tdeviceservice.apps;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 应用包变化日志 - 进程级单例
+ *
+ * 有界环形缓冲区，按序号记录安装/卸载/更新/启用状态变化。
+ * 同步令牌格式为 "纪元.序号"，纪元在每次进程启动时变化；
+ * 令牌来自旧进程或已被覆盖时，客户端需要全量同步。
+ * 启用状态按包记录最近一次看到的值，组件变化广播只在应用整体启用状态改变时记录事件。
+ */
+public class PackageChangeJournal {
+
+    private static final String TAG = "PackageChangeJournal";
+    private static final int CAPACITY = 1024;
+
+    public static final String TYPE_ADDED = "added";
+    public static final String TYPE_REMOVED = "removed";
+    public static final String TYPE_UPDATED = "updated";
+    public static final String TYPE_ENABLED = "enabled";
+    public static final String TYPE_DISABLED = "disabled";
+
+    private static final PackageChangeJournal instance = new PackageChangeJournal();
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final Event[] ring = new Event[CAPACITY];
+    // 下一个事件的序号，序号从1开始
+    private long nextSeq = 1;
+    // 包名 -> 最近一次看到的启用状态
+    private final Map<String, Boolean> enabledStates = new HashMap<>();
+
+    private PackageChangeJournal() {
+    }
+
+    public static PackageChangeJournal getInstance() {
+        return instance;
+    }
+
+    /**
+     * 处理包变化广播：记录事件并使应用索引失效
+     *
+     * @return 记录的事件；覆盖安装的中间广播、启用状态未变的组件变化等不产生事件时返回null
+     */
+    public Event onPackageBroadcast(Context context, Intent intent) {
+        Uri data = intent.getData();
+        String action = intent.getAction();
+        if (data == null || action == null) {
+            return null;
+        }
+        String packageName = data.getSchemeSpecificPart();
+        boolean replacing = intent.getBooleanExtra(Intent.EXTRA_REPLACING, false);
+        PackageIndex index = PackageIndex.getInstance(context);
+
+        String type = null;
+        switch (action) {
+            case Intent.ACTION_PACKAGE_ADDED:
+                // 覆盖安装会先后收到REMOVED/ADDED(replacing)和REPLACED，只记录REPLACED
+                type = replacing ? null : TYPE_ADDED;
+                rememberEnabled(packageName, queryEnabled(context, packageName));
+                break;
+            case Intent.ACTION_PACKAGE_REMOVED:
+                type = replacing ? null : TYPE_REMOVED;
+                if (!replacing) {
+                    rememberEnabled(packageName, null);
+                }
+                break;
+            case Intent.ACTION_PACKAGE_REPLACED:
+                type = TYPE_UPDATED;
+                break;
+            case Intent.ACTION_PACKAGE_CHANGED:
+                type = resolveEnableChange(context, index, packageName);
+                break;
+            default:
+                break;
+        }
+
+        index.invalidate();
+        return type != null ? record(type, packageName) : null;
+    }
+
+    /**
+     * 组件变化广播中只关心应用整体启用状态的变化
+     * 与本日志记录的上一次状态比较；还没有记录时以应用索引中的状态为基准，都没有时只记录不产生事件
+     */
+    private String resolveEnableChange(Context context, PackageIndex index, String packageName) {
+        Boolean enabled = queryEnabled(context, packageName);
+        if (enabled == null) {
+            return null;
+        }
+        Boolean previous;
+        synchronized (this) {
+            previous = enabledStates.put(packageName, enabled);
+        }
+        if (previous == null) {
+            PackageIndex.Snapshot snapshot = index.peekSnapshot();
+            PackageIndex.Entry entry = snapshot != null ? snapshot.find(packageName) : null;
+            previous = entry != null ? entry.enabled : null;
+        }
+        if (previous == null || previous.equals(enabled)) {
+            return null;
+        }
+        return enabled ? TYPE_ENABLED : TYPE_DISABLED;
+    }
+
+    private static Boolean queryEnabled(Context context, String packageName) {
+        try {
+            ApplicationInfo app = context.getPackageManager().getApplicationInfo(packageName, 0);
+            return app.enabled;
+        } catch (PackageManager.NameNotFoundException e) {
+            return null;
+        }
+    }
+
+    private synchronized void rememberEnabled(String packageName, Boolean enabled) {
+        if (enabled == null) {
+            enabledStates.remove(packageName);
+        } else {
+            enabledStates.put(packageName, enabled);
+        }
+    }
+
+    /**
+     * 记录一条事件
+     */
+    public synchronized Event record(String type, String packageName) {
+        long seq = nextSeq++;
+        Event event = new Event(seq, type, packageName, System.currentTimeMillis());
+        ring[(int) (seq % CAPACITY)] = event;
+        Log.d(TAG, "Package event #" + seq + ": " + type + " " + packageName);
+        return event;
+    }
+
+    /**
+     * 当前令牌（代表截至目前的所有变化）
+     */
+    public synchronized String currentToken() {
+        return epoch + "." + (nextSeq - 1);
+    }
+
+    /**
+     * 查询令牌之后的变化
+     *
+     * @return 令牌无效或已过期时返回null，客户端需要全量同步
+     */
+    public synchronized Changes changesSince(String token, int limit) {
+        long since = parseToken(token);
+        long oldest = Math.max(1, nextSeq - CAPACITY);
+        if (since < 0 || since >= nextSeq || since + 1 < oldest) {
+            return null;
+        }
+        List<Event> events = new ArrayList<>();
+        long seq = since + 1;
+        for (; seq < nextSeq && events.size() < limit; seq++) {
+            events.add(ring[(int) (seq % CAPACITY)]);
+        }
+        return new Changes(events, epoch + "." + (seq - 1), seq < nextSeq);
+    }
+
+    private long parseToken(String token) {
+        if (token == null) {
+            return -1;
+        }
+        int dot = token.indexOf('.');
+        if (dot <= 0 || !epoch.equals(token.substring(0, dot))) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(token.substring(dot + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 单条变化事件
+     */
+    public static final class Event {
+        public final long seq;
+        public final String type;
+        public final String packageName;
+        public final long timestamp;
+
+        Event(long seq, String type, String packageName, long timestamp) {
+            this.seq = seq;
+            this.type = type;
+            this.packageName = packageName;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /**
+     * 增量查询结果
+     */
+    public static final class Changes {
+        public final List<Event> events;
+        public final String token;
+        public final boolean hasMore;
+
+        Changes(List<Event> events, String token, boolean hasMore) {
+            this.events = events;
+            this.token = token;
+            this.hasMore = hasMore;
+        }
+    }
+}
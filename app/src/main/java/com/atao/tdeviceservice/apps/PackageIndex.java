@@ -0,0 +1,248 @@
+package com.atao.tdeviceservice.apps;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.util.Log;
+
+import com.atao.tdeviceservice.util.SystemCallExecutor;
+import com.atao.tdeviceservice.util.Tracer;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 应用包索引 - 进程级单例
+ *
+ * 保存按包名排序的已安装应用快照，快照不可变，包变化时失效并在下次读取时重建。
+ * 分页游标基于包名而非下标，快照重建后游标依然有效。
+ */
+public class PackageIndex {
+
+    private static final String TAG = "PackageIndex";
+    private static final long FIRST_BUILD_TIMEOUT_MS = 10000;
+    private static volatile PackageIndex instance;
+
+    private final Context context;
+    private final AtomicLong generation = new AtomicLong();
+    private volatile Snapshot snapshot;
+
+    private PackageIndex(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public static PackageIndex getInstance(Context context) {
+        if (instance == null) {
+            synchronized (PackageIndex.class) {
+                if (instance == null) {
+                    instance = new PackageIndex(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 包安装/卸载/更新后调用，下次读取时重建快照
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * 获取当前快照（必要时重建）
+     * 重建在系统调用线程池上执行，并发请求合并为一次；
+     * 已有旧快照时最多等待一个调用截止时间，超时先返回旧快照，重建完成后自动替换
+     */
+    public Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        long expected = generation.get();
+        if (current != null && current.generation == expected) {
+            return current;
+        }
+        CompletableFuture<Snapshot> future = SystemCallExecutor.getInstance().submit("packageIndex:" + expected, () -> {
+            Snapshot built = build(expected);
+            publish(built);
+            return built;
+        });
+        long waitMs = current == null ? FIRST_BUILD_TIMEOUT_MS : SystemCallExecutor.DEFAULT_DEADLINE_MS;
+        try {
+            return future.get(waitMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            if (current != null) {
+                Log.w(TAG, "Package index rebuild missed deadline, serving previous snapshot");
+                return current;
+            }
+            throw new IllegalStateException("Package index build timed out", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while building package index", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Package index build failed", e.getCause());
+        }
+    }
+
+    /**
+     * 快照是否已落后于最新的包变化
+     */
+    public boolean isStale(Snapshot snapshot) {
+        return snapshot.generation != generation.get();
+    }
+
+    private synchronized void publish(Snapshot built) {
+        if (snapshot == null || snapshot.generation < built.generation) {
+            snapshot = built;
+        }
+    }
+
+    /**
+     * 获取最近一次构建的快照（可能已过期，不触发重建），尚未构建时返回null
+     */
+    public Snapshot peekSnapshot() {
+        return snapshot;
+    }
+
+    private Snapshot build(long buildGeneration) {
+        try (Tracer.Span span = Tracer.begin("packageIndex.build")) {
+            return buildSnapshot(buildGeneration);
+        }
+    }
+
+    private Snapshot buildSnapshot(long buildGeneration) {
+        long start = System.currentTimeMillis();
+        PackageManager pm = context.getPackageManager();
+        List<ApplicationInfo> apps = pm.getInstalledApplications(0);
+
+        // 一次查询所有桌面Activity
+        Intent intent = new Intent(Intent.ACTION_MAIN);
+        intent.addCategory(Intent.CATEGORY_LAUNCHER);
+        Set<String> launcherPackages = new HashSet<>();
+        for (ResolveInfo resolveInfo : pm.queryIntentActivities(intent, 0)) {
+            launcherPackages.add(resolveInfo.activityInfo.packageName);
+        }
+
+        Entry[] entries = new Entry[apps.size()];
+        for (int i = 0; i < entries.length; i++) {
+            ApplicationInfo app = apps.get(i);
+            entries[i] = new Entry(app.packageName,
+                    (app.flags & ApplicationInfo.FLAG_SYSTEM) != 0,
+                    app.enabled,
+                    launcherPackages.contains(app.packageName));
+        }
+        Arrays.sort(entries, (a, b) -> a.packageName.compareTo(b.packageName));
+
+        Log.d(TAG, "Package index built: " + entries.length + " packages in "
+                + (System.currentTimeMillis() - start) + "ms");
+        return new Snapshot(entries, buildGeneration);
+    }
+
+    /**
+     * 单个应用的索引项
+     */
+    public static final class Entry {
+        public final String packageName;
+        public final boolean isSystem;
+        public final boolean enabled;
+        public final boolean isLauncher;
+
+        Entry(String packageName, boolean isSystem, boolean enabled, boolean isLauncher) {
+            this.packageName = packageName;
+            this.isSystem = isSystem;
+            this.enabled = enabled;
+            this.isLauncher = isLauncher;
+        }
+    }
+
+    /**
+     * 应用过滤条件，null表示不限制
+     */
+    public static final class Filter {
+        public Boolean system;
+        public Boolean launcher;
+        public Boolean enabled;
+        public String prefix;
+        public String contains;
+
+        public boolean matches(Entry entry) {
+            if (system != null && entry.isSystem != system) {
+                return false;
+            }
+            if (launcher != null && entry.isLauncher != launcher) {
+                return false;
+            }
+            if (enabled != null && entry.enabled != enabled) {
+                return false;
+            }
+            if (prefix != null && !entry.packageName.startsWith(prefix)) {
+                return false;
+            }
+            return contains == null || entry.packageName.contains(contains);
+        }
+    }
+
+    /**
+     * 不可变快照
+     */
+    public static final class Snapshot {
+        private final Entry[] entries;
+        private final long generation;
+
+        Snapshot(Entry[] entries, long generation) {
+            this.entries = entries;
+            this.generation = generation;
+        }
+
+        public int size() {
+            return entries.length;
+        }
+
+        public Entry get(int index) {
+            return entries[index];
+        }
+
+        /**
+         * 按包名查找，未安装返回null
+         */
+        public Entry find(String packageName) {
+            int index = search(packageName);
+            return index >= 0 ? entries[index] : null;
+        }
+
+        /**
+         * 返回第一个包名大于afterPackage的下标（afterPackage为null时从头开始）
+         */
+        public int indexAfter(String afterPackage) {
+            if (afterPackage == null) {
+                return 0;
+            }
+            int index = search(afterPackage);
+            return index >= 0 ? index + 1 : -index - 1;
+        }
+
+        private int search(String packageName) {
+            int low = 0;
+            int high = entries.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = entries[mid].packageName.compareTo(packageName);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+    }
+}
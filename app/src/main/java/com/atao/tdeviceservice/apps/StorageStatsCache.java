@@ -0,0 +1,217 @@
+package com.atao.tdeviceservice.apps;
+
+import android.app.usage.StorageStats;
+import android.app.usage.StorageStatsManager;
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 应用存储占用缓存 - 进程级单例
+ *
+ * StorageStatsManager每个包的查询需要几十毫秒，不在请求线程上做。
+ * 后台低优先级任务每轮刷新少量缺失或过期的条目，全部最新后降低检查频率；
+ * 包变化时移除对应条目并尽快补上。
+ */
+public class StorageStatsCache {
+
+    private static final String TAG = "StorageStatsCache";
+    // 条目超过该时间视为过期，由后台任务重新查询
+    private static final long MAX_AGE_MS = 15 * 60 * 1000;
+    private static final int BATCH_SIZE = 10;
+    private static final long BATCH_INTERVAL_MS = 2000;
+    private static final long IDLE_INTERVAL_MS = 60000;
+
+    private static volatile StorageStatsCache instance;
+
+    private final Context context;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    // 查询失败的包 -> 失败时间，MAX_AGE_MS内不再重试，避免个别包反复占用批次
+    private final ConcurrentHashMap<String, Long> failures = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, "StorageStats-Refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ScheduledFuture<?> scheduledRefresh;
+    private boolean running;
+    private volatile boolean permissionDenied;
+
+    private StorageStatsCache(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public static StorageStatsCache getInstance(Context context) {
+        if (instance == null) {
+            synchronized (StorageStatsCache.class) {
+                if (instance == null) {
+                    instance = new StorageStatsCache(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 启动后台刷新
+     */
+    public synchronized void start() {
+        if (!running) {
+            running = true;
+            scheduleRefresh(BATCH_INTERVAL_MS);
+        }
+    }
+
+    /**
+     * 停止后台刷新，已缓存的数据保留
+     */
+    public synchronized void stop() {
+        running = false;
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+            scheduledRefresh = null;
+        }
+    }
+
+    /**
+     * 包变化时移除对应条目，并尽快开始下一轮刷新
+     */
+    public synchronized void invalidate(String packageName) {
+        entries.remove(packageName);
+        failures.remove(packageName);
+        if (running) {
+            scheduleRefresh(BATCH_INTERVAL_MS);
+        }
+    }
+
+    /**
+     * 获取缓存条目，未缓存返回null
+     */
+    public Entry get(String packageName) {
+        return entries.get(packageName);
+    }
+
+    /**
+     * 立即查询单个包并写入缓存（请求方未命中缓存时使用，调用方负责截止时间）
+     */
+    public Entry load(String packageName) throws PackageManager.NameNotFoundException, IOException {
+        ApplicationInfo app = context.getPackageManager().getApplicationInfo(packageName, 0);
+        StorageStatsManager manager = (StorageStatsManager) context.getSystemService(Context.STORAGE_STATS_SERVICE);
+        if (manager == null) {
+            throw new IOException("StorageStatsManager unavailable");
+        }
+        try {
+            StorageStats stats = manager.queryStatsForPackage(app.storageUuid, packageName, Process.myUserHandle());
+            Entry entry = new Entry(stats.getAppBytes(), stats.getDataBytes(), stats.getCacheBytes(),
+                    System.currentTimeMillis());
+            entries.put(packageName, entry);
+            permissionDenied = false;
+            return entry;
+        } catch (SecurityException e) {
+            // 需要在设置中授予"使用情况访问权限"
+            permissionDenied = true;
+            throw new IOException("Usage access permission not granted", e);
+        }
+    }
+
+    /**
+     * 查询其他应用是否因缺少使用情况访问权限而失败
+     */
+    public boolean isPermissionDenied() {
+        return permissionDenied;
+    }
+
+    private void scheduleRefresh(long delayMs) {
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+        }
+        scheduledRefresh = scheduler.schedule(this::refreshBatch, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 刷新一批缺失或过期的条目；还有剩余时很快继续，否则进入空闲间隔
+     */
+    private void refreshBatch() {
+        int refreshed = 0;
+        boolean remaining = false;
+        try {
+            PackageIndex.Snapshot snapshot = PackageIndex.getInstance(context).getSnapshot();
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < snapshot.size(); i++) {
+                String packageName = snapshot.get(i).packageName;
+                Entry entry = entries.get(packageName);
+                if (entry != null && now - entry.updatedAt < MAX_AGE_MS) {
+                    continue;
+                }
+                Long failedAt = failures.get(packageName);
+                if (failedAt != null && now - failedAt < MAX_AGE_MS) {
+                    continue;
+                }
+                if (refreshed >= BATCH_SIZE) {
+                    remaining = true;
+                    break;
+                }
+                refreshed++;
+                try {
+                    load(packageName);
+                    failures.remove(packageName);
+                } catch (PackageManager.NameNotFoundException e) {
+                    entries.remove(packageName);
+                } catch (IOException | RuntimeException e) {
+                    if (permissionDenied) {
+                        // 没有权限时所有包都会失败，等下一个空闲间隔
+                        Log.w(TAG, "Storage stats refresh paused: " + e.getMessage());
+                        remaining = false;
+                        break;
+                    }
+                    Log.w(TAG, "Storage stats failed for " + packageName + ": " + e.getMessage());
+                    failures.put(packageName, now);
+                }
+            }
+            // 清理已卸载的包
+            for (String packageName : entries.keySet()) {
+                if (snapshot.find(packageName) == null) {
+                    entries.remove(packageName);
+                }
+            }
+            failures.keySet().removeIf(packageName -> snapshot.find(packageName) == null);
+        } catch (Exception e) {
+            Log.w(TAG, "Storage stats refresh failed", e);
+        }
+
+        synchronized (this) {
+            if (running) {
+                scheduleRefresh(remaining ? BATCH_INTERVAL_MS : IDLE_INTERVAL_MS);
+            }
+        }
+    }
+
+    /**
+     * 单个应用的存储占用（字节）
+     */
+    public static final class Entry {
+        public final long appBytes;
+        public final long dataBytes;
+        public final long cacheBytes;
+        public final long updatedAt;
+
+        Entry(long appBytes, long dataBytes, long cacheBytes, long updatedAt) {
+            this.appBytes = appBytes;
+            this.dataBytes = dataBytes;
+            this.cacheBytes = cacheBytes;
+            this.updatedAt = updatedAt;
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package com.atao.tdeviceservice.apps;
+
+import android.app.AppOpsManager;
+import android.app.usage.UsageEvents;
+import android.app.usage.UsageStatsManager;
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+
+import com.atao.tdeviceservice.util.SystemCallExecutor;
+import com.google.gson.JsonObject;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 应用使用统计聚合 - 进程级单例
+ *
+ * 从上次检查点开始增量读取UsageEvents，按天折叠为每个包的前台时长、启动次数和最近使用时间。
+ * 包名映射为编号，每天的数据保存在以编号为下标的基本类型数组中，只保留最近RETENTION_DAYS天；
+ * 长时间范围的查询只需累加每日聚合，不需要重放事件。
+ */
+public class UsageAggregator {
+
+    private static final String TAG = "UsageAggregator";
+    public static final int RETENTION_DAYS = 60;
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+    // 同一应用离开前台后在该时间内回到前台（如应用内切换Activity）不计为新的启动
+    private static final long LAUNCH_GAP_MS = 2000;
+    // 每次持锁处理的事件数，避免首次导入长时间阻塞查询
+    private static final int CHUNK_SIZE = 512;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private static volatile UsageAggregator instance;
+
+    private final Context context;
+    // 导入串行执行：合并调用的计算超时后可能被重新发起，两次导入不能从同一检查点重放事件
+    private final Object ingestLock = new Object();
+
+    // 以下字段由this保护
+    private final HashMap<String, Integer> packageIds = new HashMap<>();
+    private final ArrayList<String> packageNames = new ArrayList<>();
+    private final Day[] days = new Day[RETENTION_DAYS];
+    // 当前处于前台的开始时间（0表示不在前台）和最近一次离开前台的时间，按包编号索引
+    private long[] foregroundSince = new long[INITIAL_CAPACITY];
+    private long[] lastBackgroundAt = new long[INITIAL_CAPACITY];
+    private long checkpoint;
+
+    private UsageAggregator(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public static UsageAggregator getInstance(Context context) {
+        if (instance == null) {
+            synchronized (UsageAggregator.class) {
+                if (instance == null) {
+                    instance = new UsageAggregator(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 在系统调用线程池上导入新事件（并发调用合并为一次）
+     */
+    public CompletableFuture<Boolean> ingestAsync() {
+        return SystemCallExecutor.getInstance().submit("usage:ingest", () -> {
+            ingest();
+            return Boolean.TRUE;
+        });
+    }
+
+    /**
+     * 是否已授予使用情况访问权限（未授予时系统返回空事件）
+     */
+    public boolean hasUsageAccess() {
+        AppOpsManager appOps = (AppOpsManager) context.getSystemService(Context.APP_OPS_SERVICE);
+        return appOps != null && appOps.unsafeCheckOpNoThrow(AppOpsManager.OPSTR_GET_USAGE_STATS,
+                Process.myUid(), context.getPackageName()) == AppOpsManager.MODE_ALLOWED;
+    }
+
+    /**
+     * 是否已完成过至少一次导入
+     */
+    public synchronized boolean isReady() {
+        return checkpoint > 0;
+    }
+
+    private void ingest() {
+        UsageStatsManager usageStats = (UsageStatsManager) context.getSystemService(Context.USAGE_STATS_SERVICE);
+        if (usageStats == null) {
+            return;
+        }
+        synchronized (ingestLock) {
+            ingestSince(usageStats);
+        }
+    }
+
+    /**
+     * 从检查点导入到当前时间（调用方持有ingestLock，检查点在锁内读取，等待后的导入从上一次结束处继续）
+     */
+    private void ingestSince(UsageStatsManager usageStats) {
+        long now = System.currentTimeMillis();
+        long begin;
+        synchronized (this) {
+            begin = checkpoint > 0 ? checkpoint : now - RETENTION_DAYS * DAY_MS;
+        }
+        long start = System.currentTimeMillis();
+        // 查询区间为[begin, now)，下次从now开始，不会重复
+        UsageEvents events = usageStats.queryEvents(begin, now);
+        UsageEvents.Event event = new UsageEvents.Event();
+        ZoneId zone = ZoneId.systemDefault();
+        int count = 0;
+        while (events != null && events.hasNextEvent()) {
+            synchronized (this) {
+                for (int i = 0; i < CHUNK_SIZE && events.hasNextEvent(); i++) {
+                    events.getNextEvent(event);
+                    apply(event, zone);
+                    count++;
+                }
+            }
+        }
+        synchronized (this) {
+            checkpoint = now;
+        }
+        Log.d(TAG, "Ingested " + count + " usage events in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    private void apply(UsageEvents.Event event, ZoneId zone) {
+        int type = event.getEventType();
+        if (type != UsageEvents.Event.ACTIVITY_RESUMED && type != UsageEvents.Event.ACTIVITY_PAUSED) {
+            return;
+        }
+        int id = idOf(event.getPackageName());
+        long timestamp = event.getTimeStamp();
+        Day day = dayFor(timestamp, zone, id);
+        if (day == null) {
+            return;
+        }
+        if (timestamp > day.lastUsed[id]) {
+            day.lastUsed[id] = timestamp;
+        }
+
+        if (type == UsageEvents.Event.ACTIVITY_RESUMED) {
+            if (foregroundSince[id] == 0) {
+                if (timestamp - lastBackgroundAt[id] > LAUNCH_GAP_MS) {
+                    day.launches[id]++;
+                }
+                foregroundSince[id] = timestamp;
+            }
+        } else {
+            if (foregroundSince[id] != 0) {
+                addForeground(id, foregroundSince[id], timestamp, zone);
+                foregroundSince[id] = 0;
+            }
+            lastBackgroundAt[id] = timestamp;
+        }
+    }
+
+    /**
+     * 把前台区间按自然日切分后累加
+     */
+    private void addForeground(int id, long from, long to, ZoneId zone) {
+        while (from < to) {
+            long epochDay = epochDay(from, zone);
+            long segmentEnd = Math.min(to, startOfDay(epochDay + 1, zone));
+            Day day = dayFor(from, zone, id);
+            if (day != null) {
+                day.foregroundMs[id] += segmentEnd - from;
+            }
+            from = segmentEnd;
+        }
+    }
+
+    private int idOf(String packageName) {
+        Integer id = packageIds.get(packageName);
+        if (id != null) {
+            return id;
+        }
+        int newId = packageNames.size();
+        packageIds.put(packageName, newId);
+        packageNames.add(packageName);
+        if (newId >= foregroundSince.length) {
+            foregroundSince = Arrays.copyOf(foregroundSince, foregroundSince.length * 2);
+            lastBackgroundAt = Arrays.copyOf(lastBackgroundAt, lastBackgroundAt.length * 2);
+        }
+        return newId;
+    }
+
+    /**
+     * 获取时间戳所在日的聚合（按需创建或复用过期的槽位），超出保留期返回null
+     */
+    private Day dayFor(long timestamp, ZoneId zone, int id) {
+        long epochDay = epochDay(timestamp, zone);
+        int slot = (int) Math.floorMod(epochDay, (long) RETENTION_DAYS);
+        Day day = days[slot];
+        if (day == null || day.epochDay < epochDay) {
+            day = new Day(epochDay, Math.max(INITIAL_CAPACITY, packageNames.size()));
+            days[slot] = day;
+        } else if (day.epochDay > epochDay) {
+            return null;
+        }
+        day.ensureCapacity(id + 1);
+        return day;
+    }
+
+    /**
+     * 汇总[fromDay, toDay]（含两端，epochDay）内的使用数据，包含当前仍在前台的时长
+     *
+     * @param packageName 只返回该包，null表示全部
+     */
+    public synchronized JsonObject query(long fromDay, long toDay, String packageName, long now) {
+        ZoneId zone = ZoneId.systemDefault();
+        int size = packageNames.size();
+        long[] foregroundMs = new long[size];
+        int[] launches = new int[size];
+        long[] lastUsed = new long[size];
+
+        for (Day day : days) {
+            if (day == null || day.epochDay < fromDay || day.epochDay > toDay) {
+                continue;
+            }
+            int limit = Math.min(size, day.launches.length);
+            for (int id = 0; id < limit; id++) {
+                foregroundMs[id] += day.foregroundMs[id];
+                launches[id] += day.launches[id];
+                if (day.lastUsed[id] > lastUsed[id]) {
+                    lastUsed[id] = day.lastUsed[id];
+                }
+            }
+        }
+
+        long rangeStart = startOfDay(fromDay, zone);
+        long rangeEnd = Math.min(now, startOfDay(toDay + 1, zone));
+        for (int id = 0; id < size; id++) {
+            long since = foregroundSince[id];
+            if (since != 0) {
+                foregroundMs[id] += Math.max(0, rangeEnd - Math.max(since, rangeStart));
+            }
+        }
+
+        JsonObject apps = new JsonObject();
+        for (int id = 0; id < size; id++) {
+            String name = packageNames.get(id);
+            if (packageName != null && !packageName.equals(name)) {
+                continue;
+            }
+            if (foregroundMs[id] == 0 && launches[id] == 0 && lastUsed[id] == 0) {
+                continue;
+            }
+            JsonObject app = new JsonObject();
+            app.addProperty("foregroundMs", foregroundMs[id]);
+            app.addProperty("launches", launches[id]);
+            app.addProperty("lastUsed", lastUsed[id]);
+            apps.add(name, app);
+        }
+        return apps;
+    }
+
+    public static long epochDay(long timestamp, ZoneId zone) {
+        return Instant.ofEpochMilli(timestamp).atZone(zone).toLocalDate().toEpochDay();
+    }
+
+    private static long startOfDay(long epochDay, ZoneId zone) {
+        return LocalDate.ofEpochDay(epochDay).atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    /**
+     * 一天的聚合数据，按包编号索引
+     */
+    private static final class Day {
+        final long epochDay;
+        long[] foregroundMs;
+        int[] launches;
+        long[] lastUsed;
+
+        Day(long epochDay, int capacity) {
+            this.epochDay = epochDay;
+            this.foregroundMs = new long[capacity];
+            this.launches = new int[capacity];
+            this.lastUsed = new long[capacity];
+        }
+
+        void ensureCapacity(int size) {
+            if (size > launches.length) {
+                int capacity = Math.max(size, launches.length * 2);
+                foregroundMs = Arrays.copyOf(foregroundMs, capacity);
+                launches = Arrays.copyOf(launches, capacity);
+                lastUsed = Arrays.copyOf(lastUsed, capacity);
+            }
+        }
+    }
+}
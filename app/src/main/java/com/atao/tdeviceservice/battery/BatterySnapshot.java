@@ -0,0 +1,137 @@
+package com.atao.tdeviceservice.battery;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.util.Log;
+
+import com.atao.tdeviceservice.api.BatteryInfoHandler;
+import com.atao.tdeviceservice.util.SystemCallExecutor;
+import com.google.gson.JsonObject;
+
+/**
+ * 电池快照 - HTTP快照接口、ContentProvider和遥测共用
+ *
+ * 粘性广播和瞬时电流都走系统调用线程池（与各电池接口共用调用键），
+ * 任一项来自超时后的旧值时stale为true；广播中缺失的字段为null，不输出。
+ * 服务在后台统计充放电会话时，cached()直接使用ChargeSessionTracker收到的最近一次广播。
+ */
+public final class BatterySnapshot {
+
+    private static final String TAG = "BatterySnapshot";
+
+    /** 电量百分比 */
+    public final Float level;
+    public final int status;
+    public final int health;
+    public final int plugged;
+    /** 温度（°C） */
+    public final Float temperature;
+    /** 电压（V） */
+    public final Float voltage;
+    /** 瞬时电流（mA），符号沿用系统约定 */
+    public final Long currentMilliAmp;
+    public final String technology;
+    public final boolean stale;
+    public final long timestamp;
+
+    private BatterySnapshot(Intent batteryStatus, Long currentMilliAmp, boolean stale) {
+        int level = batteryStatus.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = batteryStatus.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        int temperature = batteryStatus.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, -1);
+        int voltage = batteryStatus.getIntExtra(BatteryManager.EXTRA_VOLTAGE, -1);
+        this.level = level != -1 && scale > 0 ? level * 100 / (float) scale : null;
+        this.status = batteryStatus.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+        this.health = batteryStatus.getIntExtra(BatteryManager.EXTRA_HEALTH, -1);
+        this.plugged = batteryStatus.getIntExtra(BatteryManager.EXTRA_PLUGGED, -1);
+        // 温度以0.1°C为单位，电压以mV为单位
+        this.temperature = temperature != -1 ? temperature / 10.0f : null;
+        this.voltage = voltage != -1 ? voltage / 1000.0f : null;
+        this.currentMilliAmp = currentMilliAmp;
+        this.technology = batteryStatus.getStringExtra(BatteryManager.EXTRA_TECHNOLOGY);
+        this.stale = stale;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    /**
+     * 读取电池快照，无法获取电池广播时抛出异常；电流读取失败只影响current字段
+     */
+    public static BatterySnapshot read(Context context) throws Exception {
+        IntentFilter filter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+        SystemCallExecutor.Result<Intent> status = SystemCallExecutor.getInstance().call("battery:status",
+                SystemCallExecutor.DEFAULT_DEADLINE_MS, () -> context.registerReceiver(null, filter));
+        if (status.value == null) {
+            throw new IllegalStateException("Unable to get battery status");
+        }
+        return withCurrent(context, status.value, status.stale);
+    }
+
+    /**
+     * 优先使用服务已缓存的电池广播（省去粘性广播的注册往返），服务未在统计时退回read()
+     */
+    public static BatterySnapshot cached(Context context) throws Exception {
+        Intent batteryStatus = ChargeSessionTracker.getInstance(context).getLatestBatteryIntent();
+        if (batteryStatus == null) {
+            return read(context);
+        }
+        return withCurrent(context, batteryStatus, false);
+    }
+
+    private static BatterySnapshot withCurrent(Context context, Intent batteryStatus, boolean stale) {
+        Long currentMilliAmp = null;
+        BatteryManager batteryManager = (BatteryManager) context.getSystemService(Context.BATTERY_SERVICE);
+        if (batteryManager != null) {
+            try {
+                SystemCallExecutor.Result<Long> current = readCurrentMicroAmp(batteryManager);
+                if (current.value != Long.MIN_VALUE) {
+                    currentMilliAmp = current.value / 1000;
+                    stale |= current.stale;
+                }
+            } catch (Exception e) {
+                // 电流读取超时不影响快照的其他字段
+                Log.w(TAG, "Battery current unavailable for snapshot: " + e.getMessage());
+            }
+        }
+        return new BatterySnapshot(batteryStatus, currentMilliAmp, stale);
+    }
+
+    /**
+     * 读取瞬时电流（µA），走系统调用线程池
+     */
+    public static SystemCallExecutor.Result<Long> readCurrentMicroAmp(BatteryManager batteryManager)
+            throws Exception {
+        return SystemCallExecutor.getInstance().call("battery:current", SystemCallExecutor.DEFAULT_DEADLINE_MS,
+                () -> batteryManager.getLongProperty(BatteryManager.BATTERY_PROPERTY_CURRENT_NOW));
+    }
+
+    public boolean isCharging() {
+        return status == BatteryManager.BATTERY_STATUS_CHARGING || status == BatteryManager.BATTERY_STATUS_FULL;
+    }
+
+    /**
+     * 导出为JSON（数值字段保留原始类型，不含stale）
+     */
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        if (level != null) {
+            json.addProperty("level", level);
+        }
+        json.addProperty("status", BatteryInfoHandler.describeStatus(status));
+        json.addProperty("isCharging", isCharging());
+        json.addProperty("health", BatteryInfoHandler.describeHealth(health));
+        json.addProperty("chargeType", BatteryInfoHandler.describePlugged(plugged));
+        if (temperature != null) {
+            json.addProperty("temperature", temperature);
+        }
+        if (voltage != null) {
+            json.addProperty("voltage", voltage);
+        }
+        if (currentMilliAmp != null) {
+            json.addProperty("current", currentMilliAmp);
+        }
+        json.addProperty("technology", technology);
+        json.addProperty("timestamp", timestamp);
+        return json;
+    }
+}
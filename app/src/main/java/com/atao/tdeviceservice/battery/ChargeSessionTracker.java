@@ -0,0 +1,576 @@
+package com.atao.tdeviceservice.battery;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.os.BatteryManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.PowerManager;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.atao.tdeviceservice.api.BatteryInfoHandler;
+import com.atao.tdeviceservice.telemetry.TelemetryExporter;
+import com.atao.tdeviceservice.util.SystemCallExecutor;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * 充放电会话统计 - 进程级单例
+ *
+ * 监听电池粘性广播和亮灭屏广播，按是否接入电源把时间切分为充电/放电会话。
+ * 每个会话只保存累计量（起止电量、库仑计读数、亮/灭屏时长及电量变化、温度极值等），内存占用固定；
+ * 会话结束时生成摘要放入最近会话环形队列，并推送"chargeSession"遥测事件。
+ * 电量跨度足够大的会话按库仑计变化量推算满电容量，历史记录持久化，用于观察容量衰减。
+ */
+public class ChargeSessionTracker {
+
+    private static final String TAG = "ChargeSessionTracker";
+    private static final String PREFS_NAME = "battery_capacity";
+    private static final String KEY_HISTORY = "history";
+    // 保留的最近会话数
+    private static final int MAX_RECENT_SESSIONS = 20;
+    // 保留的容量估算记录数
+    private static final int MAX_CAPACITY_HISTORY = 50;
+    // 估算容量所需的最小电量跨度（百分点），跨度太小时库仑计和电量取整误差过大
+    private static final float MIN_CAPACITY_SPAN = 10f;
+    // 会话（或亮/灭屏时段）短于该时长时不计算速率
+    private static final long MIN_RATE_DURATION_MS = 60_000;
+    // 每百分点耗时的指数平均系数
+    private static final double PACE_ALPHA = 0.3;
+
+    private static volatile ChargeSessionTracker instance;
+
+    private final Context context;
+    private final SharedPreferences prefs;
+    private final BroadcastReceiver receiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            String action = intent.getAction();
+            if (Intent.ACTION_BATTERY_CHANGED.equals(action)) {
+                onBatteryChanged(intent);
+            } else if (Intent.ACTION_SCREEN_ON.equals(action)) {
+                onScreenChanged(true);
+            } else if (Intent.ACTION_SCREEN_OFF.equals(action)) {
+                onScreenChanged(false);
+            }
+        }
+    };
+
+    // 最近一次电池广播，统计期间供ContentProvider直接使用，未在统计时为null
+    private volatile Intent latestBatteryIntent;
+    // 以下字段由this保护
+    private HandlerThread thread;
+    private BatteryManager batteryManager;
+    private boolean screenOn;
+    private Session current;
+    private long completedSessions;
+    private final Deque<JsonObject> recent = new ArrayDeque<>();
+    private JsonArray capacityHistory;
+
+    private ChargeSessionTracker(Context context) {
+        this.context = context.getApplicationContext();
+        this.prefs = this.context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    public static ChargeSessionTracker getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ChargeSessionTracker.class) {
+                if (instance == null) {
+                    instance = new ChargeSessionTracker(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 注册广播（重复调用无效果），电池广播是粘性的，注册后立即收到当前状态并开始第一个会话
+     */
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        batteryManager = (BatteryManager) context.getSystemService(Context.BATTERY_SERVICE);
+        PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        screenOn = powerManager == null || powerManager.isInteractive();
+        if (capacityHistory == null) {
+            capacityHistory = loadCapacityHistory();
+        }
+
+        thread = new HandlerThread("ChargeSessions", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_BATTERY_CHANGED);
+        filter.addAction(Intent.ACTION_SCREEN_ON);
+        filter.addAction(Intent.ACTION_SCREEN_OFF);
+        context.registerReceiver(receiver, filter, null, new Handler(thread.getLooper()));
+        Log.d(TAG, "Charge session tracking started");
+    }
+
+    /**
+     * 注销广播并结束当前会话，会话摘要与会话切换时一样记入最近会话、容量估算和遥测
+     */
+    public void stop() {
+        JsonObject finished = null;
+        synchronized (this) {
+            if (thread == null) {
+                return;
+            }
+            try {
+                context.unregisterReceiver(receiver);
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Receiver was not registered", e);
+            }
+            thread.quitSafely();
+            thread = null;
+            latestBatteryIntent = null;
+            if (current != null) {
+                finished = finish(current, SystemClock.elapsedRealtime());
+                current = null;
+            }
+        }
+        if (finished != null) {
+            TelemetryExporter.getInstance(context).record("chargeSession", finished);
+        }
+    }
+
+    public synchronized boolean isStarted() {
+        return thread != null;
+    }
+
+    /**
+     * 统计期间收到的最近一次电池广播，未在统计时返回null
+     */
+    public Intent getLatestBatteryIntent() {
+        return latestBatteryIntent;
+    }
+
+    private void onBatteryChanged(Intent intent) {
+        latestBatteryIntent = intent;
+        int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        if (level < 0 || scale <= 0) {
+            return;
+        }
+        int status = intent.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+        int plugged = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0);
+        // Binder调用不持锁
+        BatteryManager manager = batteryManager;
+        long counter = manager != null
+                ? manager.getLongProperty(BatteryManager.BATTERY_PROPERTY_CHARGE_COUNTER) : Long.MIN_VALUE;
+        Sample sample = new Sample(level * 100f / scale, status, plugged,
+                intent.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, Integer.MIN_VALUE),
+                intent.getIntExtra(BatteryManager.EXTRA_VOLTAGE, -1),
+                counter > 0 ? counter : Long.MIN_VALUE,
+                intent.getIntExtra(BatteryManager.EXTRA_CYCLE_COUNT, -1));
+
+        JsonObject finished = null;
+        synchronized (this) {
+            if (thread == null) {
+                return;
+            }
+            long now = SystemClock.elapsedRealtime();
+            boolean charging = plugged != 0;
+            if (current != null && current.charging != charging) {
+                finished = finish(current, now);
+                current = null;
+            }
+            if (current == null) {
+                current = new Session(charging, plugged, sample, now, screenOn);
+            } else {
+                current.update(sample, now, screenOn);
+            }
+        }
+        if (finished != null) {
+            TelemetryExporter.getInstance(context).record("chargeSession", finished);
+        }
+    }
+
+    private synchronized void onScreenChanged(boolean on) {
+        if (current != null) {
+            current.advance(SystemClock.elapsedRealtime(), screenOn);
+        }
+        screenOn = on;
+    }
+
+    /**
+     * 结束会话，生成摘要放入最近会话队列，必要时记录容量估算
+     */
+    private JsonObject finish(Session session, long now) {
+        session.advance(now, screenOn);
+        JsonObject summary = session.toJson(now, false, null);
+        recent.addFirst(summary);
+        while (recent.size() > MAX_RECENT_SESSIONS) {
+            recent.removeLast();
+        }
+        completedSessions++;
+
+        double capacity = session.estimateCapacityMah();
+        if (capacity > 0) {
+            JsonObject record = new JsonObject();
+            record.addProperty("at", System.currentTimeMillis());
+            record.addProperty("mah", Math.round(capacity));
+            record.addProperty("levelSpan", Math.abs(session.level - session.startLevel));
+            if (session.cycleCount > 0) {
+                record.addProperty("cycleCount", session.cycleCount);
+            }
+            capacityHistory.add(record);
+            while (capacityHistory.size() > MAX_CAPACITY_HISTORY) {
+                capacityHistory.remove(0);
+            }
+            prefs.edit().putString(KEY_HISTORY, capacityHistory.toString()).apply();
+        }
+        Log.d(TAG, "Session finished: " + (session.charging ? "charge" : "discharge")
+                + " " + session.startLevel + "% -> " + session.level + "%");
+        return summary;
+    }
+
+    private JsonArray loadCapacityHistory() {
+        String stored = prefs.getString(KEY_HISTORY, null);
+        if (stored != null) {
+            try {
+                JsonElement parsed = JsonParser.parseString(stored);
+                if (parsed.isJsonArray()) {
+                    return parsed.getAsJsonArray();
+                }
+            } catch (JsonParseException e) {
+                Log.w(TAG, "Discarding unreadable capacity history", e);
+            }
+        }
+        return new JsonArray();
+    }
+
+    /**
+     * 当前会话、最近结束的会话和容量估算
+     * 系统充满时间估算是Binder调用，在锁外经系统调用线程池读取，不阻塞电池广播的处理
+     */
+    public JsonObject toJson() {
+        BatteryManager manager;
+        synchronized (this) {
+            manager = current != null && current.charging ? batteryManager : null;
+        }
+        long remaining = -1;
+        if (manager != null) {
+            try {
+                // 系统估算（基于充电器和电池模型），不可用时返回-1
+                remaining = SystemCallExecutor.getInstance().call("battery:chargeTimeRemaining",
+                        SystemCallExecutor.DEFAULT_DEADLINE_MS, manager::computeChargeTimeRemaining).value;
+            } catch (Exception e) {
+                Log.w(TAG, "Charge time estimate unavailable: " + e.getMessage());
+            }
+        }
+        return toJson(remaining);
+    }
+
+    private synchronized JsonObject toJson(long remaining) {
+        JsonObject json = new JsonObject();
+        json.addProperty("tracking", thread != null);
+        json.addProperty("screenOn", screenOn);
+        if (current != null) {
+            // 读取估算期间会话可能已切换为放电，此时不使用系统估算
+            json.add("current", current.toJson(SystemClock.elapsedRealtime(), screenOn,
+                    current.charging ? remaining : -1));
+        }
+        JsonArray sessions = new JsonArray();
+        for (JsonObject summary : recent) {
+            sessions.add(summary);
+        }
+        json.add("recent", sessions);
+        json.addProperty("completedSessions", completedSessions);
+        json.add("capacity", capacityJson());
+        return json;
+    }
+
+    /**
+     * 容量估算：以历史最大估算值为基准，最近3次估算的平均值相对基准的下降比例作为衰减估计
+     */
+    private JsonObject capacityJson() {
+        JsonObject json = new JsonObject();
+        JsonArray history = capacityHistory != null ? capacityHistory : new JsonArray();
+        json.addProperty("estimates", history.size());
+        if (history.size() == 0) {
+            return json;
+        }
+        long reference = 0;
+        for (JsonElement element : history) {
+            reference = Math.max(reference, element.getAsJsonObject().get("mah").getAsLong());
+        }
+        int recentCount = Math.min(3, history.size());
+        double recentSum = 0;
+        for (int i = history.size() - recentCount; i < history.size(); i++) {
+            recentSum += history.get(i).getAsJsonObject().get("mah").getAsLong();
+        }
+        double recentMah = recentSum / recentCount;
+        json.addProperty("latestMah", history.get(history.size() - 1).getAsJsonObject().get("mah").getAsLong());
+        json.addProperty("recentMah", Math.round(recentMah));
+        json.addProperty("referenceMah", reference);
+        if (reference > 0) {
+            json.addProperty("degradationPct", round1((1 - recentMah / reference) * 100));
+        }
+        json.add("history", history.deepCopy());
+        return json;
+    }
+
+    private static double round1(double value) {
+        return Math.round(value * 10) / 10.0;
+    }
+
+    private static double hours(long ms) {
+        return ms / 3_600_000.0;
+    }
+
+    /**
+     * 单次电池广播中的数据
+     */
+    private static final class Sample {
+        final float level;
+        final int status;
+        final int plugged;
+        final int temperature;
+        final int voltage;
+        final long counterMicroAh;
+        final int cycleCount;
+
+        Sample(float level, int status, int plugged, int temperature, int voltage, long counterMicroAh,
+               int cycleCount) {
+            this.level = level;
+            this.status = status;
+            this.plugged = plugged;
+            this.temperature = temperature;
+            this.voltage = voltage;
+            this.counterMicroAh = counterMicroAh;
+            this.cycleCount = cycleCount;
+        }
+    }
+
+    /**
+     * 一个充电或放电会话的累计统计（不保存原始样本）
+     */
+    private static final class Session {
+        final boolean charging;
+        final long startedAt;
+        final long startElapsed;
+        final float startLevel;
+        final long startCounter;
+        int plugged;
+        int status;
+        float level;
+        long counter;
+        int cycleCount;
+        long samples;
+        // 亮/灭屏时长及对应的电量变化（百分点，充电为正）
+        long lastAdvance;
+        long screenOnMs;
+        long screenOffMs;
+        float screenOnDelta;
+        float screenOffDelta;
+        // 温度（0.1℃）和电压（mV）
+        int minTemperature = Integer.MAX_VALUE;
+        int maxTemperature = Integer.MIN_VALUE;
+        long sumTemperature;
+        long temperatureSamples;
+        int minVoltage = Integer.MAX_VALUE;
+        int maxVoltage = Integer.MIN_VALUE;
+        // 每百分点耗时的指数平均，用于估算充满时间；lastLevelChange为0表示会话内电量还没变过
+        long lastLevelChange;
+        double paceMsPerPct;
+        long fullAtElapsed;
+
+        Session(boolean charging, int plugged, Sample sample, long now, boolean screenOn) {
+            this.charging = charging;
+            this.startedAt = System.currentTimeMillis();
+            this.startElapsed = now;
+            this.startLevel = sample.level;
+            this.startCounter = sample.counterMicroAh;
+            this.plugged = plugged;
+            this.level = sample.level;
+            this.lastAdvance = now;
+            update(sample, now, screenOn);
+        }
+
+        /**
+         * 把上次事件以来的时间计入当时的亮/灭屏状态
+         */
+        void advance(long now, boolean screenOn) {
+            long elapsed = now - lastAdvance;
+            if (screenOn) {
+                screenOnMs += elapsed;
+            } else {
+                screenOffMs += elapsed;
+            }
+            lastAdvance = now;
+        }
+
+        void update(Sample sample, long now, boolean screenOn) {
+            advance(now, screenOn);
+            float delta = sample.level - level;
+            if (delta != 0) {
+                if (screenOn) {
+                    screenOnDelta += delta;
+                } else {
+                    screenOffDelta += delta;
+                }
+                // 会话开始时所在的百分点已走了多久未知，从第一次真实变化之后才开始计时
+                if (charging && delta > 0 && lastLevelChange != 0) {
+                    double pace = (now - lastLevelChange) / delta;
+                    paceMsPerPct = paceMsPerPct == 0 ? pace : paceMsPerPct + PACE_ALPHA * (pace - paceMsPerPct);
+                }
+                lastLevelChange = now;
+            }
+            level = sample.level;
+            status = sample.status;
+            if (sample.plugged != 0) {
+                plugged = sample.plugged;
+            }
+            counter = sample.counterMicroAh;
+            if (sample.cycleCount >= 0) {
+                cycleCount = sample.cycleCount;
+            }
+            if (charging && fullAtElapsed == 0 && sample.status == BatteryManager.BATTERY_STATUS_FULL) {
+                fullAtElapsed = now;
+            }
+            if (sample.temperature != Integer.MIN_VALUE) {
+                minTemperature = Math.min(minTemperature, sample.temperature);
+                maxTemperature = Math.max(maxTemperature, sample.temperature);
+                sumTemperature += sample.temperature;
+                temperatureSamples++;
+            }
+            if (sample.voltage > 0) {
+                minVoltage = Math.min(minVoltage, sample.voltage);
+                maxVoltage = Math.max(maxVoltage, sample.voltage);
+            }
+            samples++;
+        }
+
+        /**
+         * 库仑计变化量（mAh），设备不支持库仑计时返回NaN
+         */
+        double counterDeltaMah() {
+            if (startCounter == Long.MIN_VALUE || counter == Long.MIN_VALUE) {
+                return Double.NaN;
+            }
+            return (counter - startCounter) / 1000.0;
+        }
+
+        /**
+         * 按库仑计变化量与电量跨度推算满电容量（mAh），数据不足时返回-1
+         */
+        double estimateCapacityMah() {
+            float span = level - startLevel;
+            double deltaMah = counterDeltaMah();
+            if (Double.isNaN(deltaMah) || Math.abs(span) < MIN_CAPACITY_SPAN
+                    || Math.signum(span) != Math.signum(deltaMah)) {
+                return -1;
+            }
+            return deltaMah / span * 100;
+        }
+
+        /**
+         * @param now           统计截止时间
+         * @param screenOn      当前亮屏状态（用于计入未结算的时段），已结束的会话传false且已结算
+         * @param remainingMs   系统估算的充满剩余时间，不可用时为-1（已结束的会话传null）
+         */
+        JsonObject toJson(long now, boolean screenOn, Long remainingMs) {
+            long onMs = screenOnMs;
+            long offMs = screenOffMs;
+            if (now > lastAdvance) {
+                if (screenOn) {
+                    onMs += now - lastAdvance;
+                } else {
+                    offMs += now - lastAdvance;
+                }
+            }
+            long durationMs = now - startElapsed;
+
+            JsonObject json = new JsonObject();
+            json.addProperty("type", charging ? "charge" : "discharge");
+            json.addProperty("startedAt", startedAt);
+            json.addProperty("durationMs", durationMs);
+            if (remainingMs == null) {
+                json.addProperty("endedAt", startedAt + durationMs);
+            }
+            json.addProperty("startLevel", startLevel);
+            json.addProperty("level", level);
+            json.addProperty("status", BatteryInfoHandler.describeStatus(status));
+            if (charging) {
+                json.addProperty("plugged", BatteryInfoHandler.describePlugged(plugged));
+            }
+            json.addProperty("samples", samples);
+
+            float change = level - startLevel;
+            if (durationMs >= MIN_RATE_DURATION_MS) {
+                json.addProperty(charging ? "chargePctPerHour" : "drainPctPerHour",
+                        round1((charging ? change : -change) / hours(durationMs)));
+            }
+            double deltaMah = counterDeltaMah();
+            if (!Double.isNaN(deltaMah)) {
+                json.addProperty(charging ? "chargedMah" : "dischargedMah", round1(Math.abs(deltaMah)));
+                if (durationMs >= MIN_RATE_DURATION_MS) {
+                    json.addProperty("averageCurrentMa", round1(deltaMah / hours(durationMs)));
+                }
+            }
+
+            JsonObject screen = new JsonObject();
+            screen.add("on", screenJson(onMs, screenOnDelta));
+            screen.add("off", screenJson(offMs, screenOffDelta));
+            json.add("screen", screen);
+
+            if (charging) {
+                if (fullAtElapsed != 0) {
+                    json.addProperty("timeToFullMs", fullAtElapsed - startElapsed);
+                } else if (remainingMs != null) {
+                    if (remainingMs >= 0) {
+                        json.addProperty("estimatedTimeToFullMs", remainingMs);
+                        json.addProperty("estimateSource", "system");
+                    } else if (paceMsPerPct > 0 && level < 100) {
+                        json.addProperty("estimatedTimeToFullMs", Math.round((100 - level) * paceMsPerPct));
+                        json.addProperty("estimateSource", "observed");
+                    }
+                }
+            }
+            double capacity = estimateCapacityMah();
+            if (capacity > 0) {
+                json.addProperty("capacityEstimateMah", Math.round(capacity));
+            }
+            if (temperatureSamples > 0) {
+                JsonObject temperature = new JsonObject();
+                temperature.addProperty("min", minTemperature / 10.0);
+                temperature.addProperty("max", maxTemperature / 10.0);
+                temperature.addProperty("mean", round1(sumTemperature / (double) temperatureSamples / 10.0));
+                json.add("temperature", temperature);
+            }
+            if (maxVoltage > 0) {
+                JsonObject voltage = new JsonObject();
+                voltage.addProperty("min", minVoltage / 1000.0);
+                voltage.addProperty("max", maxVoltage / 1000.0);
+                json.add("voltage", voltage);
+            }
+            if (cycleCount > 0) {
+                json.addProperty("cycleCount", cycleCount);
+            }
+            return json;
+        }
+
+        private JsonObject screenJson(long ms, float levelChange) {
+            JsonObject json = new JsonObject();
+            json.addProperty("durationMs", ms);
+            json.addProperty("levelChange", round1(levelChange));
+            if (ms >= MIN_RATE_DURATION_MS) {
+                json.addProperty(charging ? "chargePctPerHour" : "drainPctPerHour",
+                        round1((charging ? levelChange : -levelChange) / hours(ms)));
+            }
+            return json;
+        }
+    }
+}
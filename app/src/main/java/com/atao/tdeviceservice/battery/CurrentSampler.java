@@ -0,0 +1,221 @@
+package com.atao.tdeviceservice.battery;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.gson.JsonObject;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 电池电流采样器 - 进程级单例
+ *
+ * 在设备端按固定频率读取瞬时电流，采样时就地累加最小/最大/平均值，
+ * 并按梯形法积分得到会话期间的电量（mAh）和能量（mWh），不保存原始样本。
+ * 电流符号沿用系统的约定（多数设备放电为负）。
+ */
+public class CurrentSampler {
+
+    private static final String TAG = "CurrentSampler";
+    public static final int DEFAULT_HZ = 10;
+    public static final int MAX_HZ = 50;
+    // 电压变化缓慢，每秒读取一次粘性广播即可
+    private static final long VOLTAGE_REFRESH_NS = TimeUnit.SECONDS.toNanos(1);
+    // µA·ns 换算为 mAh（µW·ns 换算为 mWh 同理）
+    private static final double MICRO_NANOS_PER_MILLI_HOUR = 1000.0 * 3600.0 * 1e9;
+
+    private static volatile CurrentSampler instance;
+
+    private final Context context;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_FOREGROUND);
+            runnable.run();
+        }, "BatterySampler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 以下字段由this保护
+    private ScheduledFuture<?> task;
+    private BatteryManager batteryManager;
+    private int hz;
+    private long startedAtMillis;
+    private long startedAtNanos;
+    private long stoppedAtNanos;
+    private long samples;
+    private long errors;
+    private long minMicroAmp;
+    private long maxMicroAmp;
+    private double sumMicroAmp;
+    private long lastMicroAmp;
+    private long lastSampleNanos;
+    private double chargeMicroAmpNanos;
+    private double energyMicroWattNanos;
+    private int voltageMilliVolt;
+    private long voltageReadNanos;
+
+    private CurrentSampler(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public static CurrentSampler getInstance(Context context) {
+        if (instance == null) {
+            synchronized (CurrentSampler.class) {
+                if (instance == null) {
+                    instance = new CurrentSampler(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 开始新的采样会话（清空上次的统计）
+     *
+     * @return 已有会话在运行时返回false
+     */
+    public synchronized boolean start(int requestedHz) {
+        if (task != null) {
+            return false;
+        }
+        batteryManager = (BatteryManager) context.getSystemService(Context.BATTERY_SERVICE);
+        if (batteryManager == null) {
+            throw new IllegalStateException("BatteryManager unavailable");
+        }
+        hz = Math.max(1, Math.min(MAX_HZ, requestedHz));
+        startedAtMillis = System.currentTimeMillis();
+        startedAtNanos = SystemClock.elapsedRealtimeNanos();
+        stoppedAtNanos = 0;
+        samples = 0;
+        errors = 0;
+        minMicroAmp = Long.MAX_VALUE;
+        maxMicroAmp = Long.MIN_VALUE;
+        sumMicroAmp = 0;
+        lastSampleNanos = 0;
+        chargeMicroAmpNanos = 0;
+        energyMicroWattNanos = 0;
+        voltageReadNanos = 0;
+
+        long periodMicros = 1_000_000L / hz;
+        task = scheduler.scheduleAtFixedRate(this::sample, 0, periodMicros, TimeUnit.MICROSECONDS);
+        Log.d(TAG, "Battery sampling started at " + hz + " Hz");
+        return true;
+    }
+
+    /**
+     * 结束当前会话
+     *
+     * @return 没有运行中的会话时返回false
+     */
+    public synchronized boolean stop() {
+        if (task == null) {
+            return false;
+        }
+        task.cancel(false);
+        task = null;
+        stoppedAtNanos = SystemClock.elapsedRealtimeNanos();
+        Log.d(TAG, "Battery sampling stopped after " + samples + " samples");
+        return true;
+    }
+
+    public synchronized boolean isRunning() {
+        return task != null;
+    }
+
+    private void sample() {
+        BatteryManager manager;
+        synchronized (this) {
+            manager = batteryManager;
+            if (task == null || manager == null) {
+                return;
+            }
+        }
+        // Binder调用不持锁，避免阻塞报告请求
+        // 异常必须在这里处理：scheduleAtFixedRate的任务抛出异常后不会再执行
+        long microAmp;
+        long now;
+        int voltage = -1;
+        try {
+            microAmp = manager.getLongProperty(BatteryManager.BATTERY_PROPERTY_CURRENT_NOW);
+            now = SystemClock.elapsedRealtimeNanos();
+            if (now - voltageReadNanos >= VOLTAGE_REFRESH_NS) {
+                Intent battery = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+                voltage = battery != null ? battery.getIntExtra(BatteryManager.EXTRA_VOLTAGE, -1) : -1;
+            }
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                if (errors++ == 0) {
+                    Log.w(TAG, "Battery sample failed", e);
+                }
+            }
+            return;
+        }
+
+        synchronized (this) {
+            if (task == null) {
+                return;
+            }
+            if (voltage > 0) {
+                voltageMilliVolt = voltage;
+                voltageReadNanos = now;
+            }
+            if (microAmp == Long.MIN_VALUE) {
+                errors++;
+                return;
+            }
+            if (lastSampleNanos != 0) {
+                // 梯形法积分
+                long dt = now - lastSampleNanos;
+                double averageMicroAmp = (lastMicroAmp + microAmp) / 2.0;
+                chargeMicroAmpNanos += averageMicroAmp * dt;
+                energyMicroWattNanos += averageMicroAmp * voltageMilliVolt / 1000.0 * dt;
+            }
+            lastMicroAmp = microAmp;
+            lastSampleNanos = now;
+            samples++;
+            sumMicroAmp += microAmp;
+            if (microAmp < minMicroAmp) {
+                minMicroAmp = microAmp;
+            }
+            if (microAmp > maxMicroAmp) {
+                maxMicroAmp = microAmp;
+            }
+        }
+    }
+
+    /**
+     * 当前（或最近一次）会话的统计
+     */
+    public synchronized JsonObject report() {
+        JsonObject json = new JsonObject();
+        json.addProperty("running", task != null);
+        if (startedAtNanos == 0) {
+            return json;
+        }
+        long end = stoppedAtNanos != 0 ? stoppedAtNanos : SystemClock.elapsedRealtimeNanos();
+        json.addProperty("hz", hz);
+        json.addProperty("startedAt", startedAtMillis);
+        json.addProperty("durationMs", TimeUnit.NANOSECONDS.toMillis(end - startedAtNanos));
+        json.addProperty("samples", samples);
+        json.addProperty("errors", errors);
+        if (samples > 0) {
+            JsonObject current = new JsonObject();
+            current.addProperty("min", minMicroAmp / 1000.0);
+            current.addProperty("max", maxMicroAmp / 1000.0);
+            current.addProperty("mean", sumMicroAmp / samples / 1000.0);
+            json.add("currentMa", current);
+            json.addProperty("chargeMah", chargeMicroAmpNanos / MICRO_NANOS_PER_MILLI_HOUR);
+            json.addProperty("energyMwh", energyMicroWattNanos / MICRO_NANOS_PER_MILLI_HOUR);
+        }
+        return json;
+    }
+}
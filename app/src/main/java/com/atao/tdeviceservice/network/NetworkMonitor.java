@@ -0,0 +1,333 @@
+package com.atao.tdeviceservice.network;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.LinkAddress;
+import android.net.LinkProperties;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.wifi.WifiInfo;
+import android.util.Log;
+
+import com.atao.tdeviceservice.telemetry.TelemetryExporter;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 网络状态监听 - 进程级单例
+ *
+ * 只注册一次默认网络回调，回调中重建不可变快照；请求直接读取快照，不访问系统服务。
+ * 连接、传输方式、地址等变化（不含信号强度波动）同时作为"network"事件推送到遥测。
+ */
+public class NetworkMonitor {
+
+    private static final String TAG = "NetworkMonitor";
+    private static volatile NetworkMonitor instance;
+
+    private final Context context;
+    private final ConnectivityManager.NetworkCallback callback = new ConnectivityManager.NetworkCallback() {
+        @Override
+        public void onAvailable(Network network) {
+            update(network, null, null);
+        }
+
+        @Override
+        public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+            update(network, capabilities, null);
+        }
+
+        @Override
+        public void onLinkPropertiesChanged(Network network, LinkProperties linkProperties) {
+            update(network, null, linkProperties);
+        }
+
+        @Override
+        public void onLost(Network network) {
+            lost(network);
+        }
+    };
+
+    // 修改在synchronized中，isStarted()不加锁读取
+    private volatile boolean registered;
+    // 以下只在回调线程上修改（回调按顺序投递）
+    private Network currentNetwork;
+    private NetworkCapabilities currentCapabilities;
+    private LinkProperties currentLinkProperties;
+    private long changes;
+
+    private volatile Snapshot snapshot = Snapshot.disconnected(0, 0);
+
+    private NetworkMonitor(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public static NetworkMonitor getInstance(Context context) {
+        if (instance == null) {
+            synchronized (NetworkMonitor.class) {
+                if (instance == null) {
+                    instance = new NetworkMonitor(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 注册默认网络回调（重复调用无效果），注册后系统立即回调当前网络状态
+     */
+    public synchronized void start() {
+        if (registered) {
+            return;
+        }
+        ConnectivityManager manager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (manager == null) {
+            Log.w(TAG, "ConnectivityManager unavailable");
+            return;
+        }
+        try {
+            manager.registerDefaultNetworkCallback(callback);
+            registered = true;
+            Log.d(TAG, "Network callback registered");
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to register network callback", e);
+        }
+    }
+
+    public synchronized void stop() {
+        if (!registered) {
+            return;
+        }
+        ConnectivityManager manager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (manager != null) {
+            try {
+                manager.unregisterNetworkCallback(callback);
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Network callback was not registered", e);
+            }
+        }
+        registered = false;
+    }
+
+    public boolean isStarted() {
+        return registered;
+    }
+
+    /**
+     * 当前快照（不可变）
+     */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    private void update(Network network, NetworkCapabilities capabilities, LinkProperties linkProperties) {
+        if (!network.equals(currentNetwork)) {
+            currentNetwork = network;
+            currentCapabilities = null;
+            currentLinkProperties = null;
+        }
+        if (capabilities != null) {
+            currentCapabilities = capabilities;
+        }
+        if (linkProperties != null) {
+            currentLinkProperties = linkProperties;
+        }
+        // onAvailable之后系统紧接着回调能力和链路属性，两者都拿到前不发布，
+        // 避免出现"unknown"或没有地址的中间快照（否则会多推一次遥测事件）
+        if (currentCapabilities == null || currentLinkProperties == null) {
+            return;
+        }
+        publish(Snapshot.of(currentCapabilities, currentLinkProperties, ++changes, System.currentTimeMillis()));
+    }
+
+    private void lost(Network network) {
+        if (!network.equals(currentNetwork)) {
+            return;
+        }
+        currentNetwork = null;
+        currentCapabilities = null;
+        currentLinkProperties = null;
+        publish(Snapshot.disconnected(++changes, System.currentTimeMillis()));
+    }
+
+    private void publish(Snapshot next) {
+        Snapshot previous = snapshot;
+        snapshot = next;
+        if (!next.sameConnection(previous)) {
+            Log.d(TAG, "Network changed: " + next.transport + " connected=" + next.connected
+                    + " addresses=" + next.addresses);
+            TelemetryExporter.getInstance(context).record("network", next.toJson());
+        }
+    }
+
+    /**
+     * 不可变网络快照
+     */
+    public static final class Snapshot {
+        public final boolean connected;
+        public final String transport;
+        public final boolean validated;
+        public final boolean metered;
+        public final boolean vpn;
+        public final int downstreamKbps;
+        public final int upstreamKbps;
+        public final String interfaceName;
+        public final List<String> addresses;
+        public final List<String> dnsServers;
+        /** Wi-Fi信息，非Wi-Fi网络时为null */
+        public final Wifi wifi;
+        public final long changes;
+        public final long updatedAt;
+
+        private Snapshot(boolean connected, String transport, boolean validated, boolean metered, boolean vpn,
+                         int downstreamKbps, int upstreamKbps, String interfaceName, List<String> addresses,
+                         List<String> dnsServers, Wifi wifi, long changes, long updatedAt) {
+            this.connected = connected;
+            this.transport = transport;
+            this.validated = validated;
+            this.metered = metered;
+            this.vpn = vpn;
+            this.downstreamKbps = downstreamKbps;
+            this.upstreamKbps = upstreamKbps;
+            this.interfaceName = interfaceName;
+            this.addresses = addresses;
+            this.dnsServers = dnsServers;
+            this.wifi = wifi;
+            this.changes = changes;
+            this.updatedAt = updatedAt;
+        }
+
+        static Snapshot disconnected(long changes, long updatedAt) {
+            return new Snapshot(false, "none", false, false, false, 0, 0, null,
+                    Collections.emptyList(), Collections.emptyList(), null, changes, updatedAt);
+        }
+
+        /**
+         * 由网络能力和链路属性构建快照（caps不能为null，链路属性未到时地址为空）
+         */
+        static Snapshot of(NetworkCapabilities caps, LinkProperties link, long changes, long updatedAt) {
+            List<String> addresses = new ArrayList<>();
+            List<String> dnsServers = new ArrayList<>();
+            String interfaceName = null;
+            if (link != null) {
+                interfaceName = link.getInterfaceName();
+                for (LinkAddress address : link.getLinkAddresses()) {
+                    addresses.add(address.toString());
+                }
+                for (InetAddress dns : link.getDnsServers()) {
+                    dnsServers.add(dns.getHostAddress());
+                }
+            }
+            Wifi wifi = null;
+            if (caps.getTransportInfo() instanceof WifiInfo) {
+                WifiInfo info = (WifiInfo) caps.getTransportInfo();
+                wifi = new Wifi(info.getRssi(), info.getLinkSpeed(), info.getTxLinkSpeedMbps(),
+                        info.getRxLinkSpeedMbps(), info.getFrequency());
+            }
+            return new Snapshot(true, describeTransport(caps),
+                    caps.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED),
+                    !caps.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED),
+                    caps.hasTransport(NetworkCapabilities.TRANSPORT_VPN),
+                    caps.getLinkDownstreamBandwidthKbps(), caps.getLinkUpstreamBandwidthKbps(),
+                    interfaceName, Collections.unmodifiableList(addresses),
+                    Collections.unmodifiableList(dnsServers), wifi, changes, updatedAt);
+        }
+
+        private static String describeTransport(NetworkCapabilities caps) {
+            if (caps.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) {
+                return "wifi";
+            } else if (caps.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)) {
+                return "cellular";
+            } else if (caps.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET)) {
+                return "ethernet";
+            } else if (caps.hasTransport(NetworkCapabilities.TRANSPORT_BLUETOOTH)) {
+                return "bluetooth";
+            } else if (caps.hasTransport(NetworkCapabilities.TRANSPORT_VPN)) {
+                return "vpn";
+            }
+            return "unknown";
+        }
+
+        /**
+         * 连接是否相同（忽略信号强度、带宽估计等频繁波动的字段）
+         */
+        boolean sameConnection(Snapshot other) {
+            return connected == other.connected
+                    && transport.equals(other.transport)
+                    && validated == other.validated
+                    && metered == other.metered
+                    && vpn == other.vpn
+                    && Objects.equals(interfaceName, other.interfaceName)
+                    && addresses.equals(other.addresses)
+                    && dnsServers.equals(other.dnsServers);
+        }
+
+        public JsonObject toJson() {
+            JsonObject json = new JsonObject();
+            json.addProperty("connected", connected);
+            json.addProperty("transport", transport);
+            if (connected) {
+                json.addProperty("validated", validated);
+                json.addProperty("metered", metered);
+                json.addProperty("vpn", vpn);
+                json.addProperty("downstreamKbps", downstreamKbps);
+                json.addProperty("upstreamKbps", upstreamKbps);
+                json.addProperty("interface", interfaceName);
+                json.add("addresses", addressesJson());
+                JsonArray dns = new JsonArray();
+                for (String server : dnsServers) {
+                    dns.add(server);
+                }
+                json.add("dnsServers", dns);
+            }
+            if (wifi != null) {
+                json.add("wifi", wifi.toJson());
+            }
+            json.addProperty("changes", changes);
+            json.addProperty("updatedAt", updatedAt);
+            return json;
+        }
+
+        public JsonArray addressesJson() {
+            JsonArray array = new JsonArray();
+            for (String address : addresses) {
+                array.add(address);
+            }
+            return array;
+        }
+    }
+
+    /**
+     * Wi-Fi链路信息（SSID/BSSID需要定位权限，不采集）
+     */
+    public static final class Wifi {
+        public final int rssi;
+        public final int linkSpeedMbps;
+        public final int txLinkSpeedMbps;
+        public final int rxLinkSpeedMbps;
+        public final int frequencyMhz;
+
+        Wifi(int rssi, int linkSpeedMbps, int txLinkSpeedMbps, int rxLinkSpeedMbps, int frequencyMhz) {
+            this.rssi = rssi;
+            this.linkSpeedMbps = linkSpeedMbps;
+            this.txLinkSpeedMbps = txLinkSpeedMbps;
+            this.rxLinkSpeedMbps = rxLinkSpeedMbps;
+            this.frequencyMhz = frequencyMhz;
+        }
+
+        public JsonObject toJson() {
+            JsonObject json = new JsonObject();
+            json.addProperty("rssi", rssi);
+            json.addProperty("linkSpeedMbps", linkSpeedMbps);
+            json.addProperty("txLinkSpeedMbps", txLinkSpeedMbps);
+            json.addProperty("rxLinkSpeedMbps", rxLinkSpeedMbps);
+            json.addProperty("frequencyMhz", frequencyMhz);
+            return json;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.atao.tdeviceservice.provider;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.UriMatcher;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.Bundle;
+
+import com.atao.tdeviceservice.api.BatteryInfoHandler;
+import com.atao.tdeviceservice.apps.PackageIndex;
+import com.atao.tdeviceservice.battery.BatterySnapshot;
+
+/**
+ * 只读ContentProvider - 设备上的客户端直接通过Binder读取数据，不经过HTTP
+ *
+ * 数据与HTTP接口共用同一份内存状态：应用列表来自PackageIndex快照，
+ * 电池状态使用服务后台统计时缓存的电池广播（BatterySnapshot.cached），服务未运行时才读取粘性广播。
+ *
+ * content://com.atao.tdeviceservice.provider/apps              应用列表，支持 system/launcher/enabled/prefix/contains 参数
+ * content://com.atao.tdeviceservice.provider/apps/包名          单个应用
+ * content://com.atao.tdeviceservice.provider/battery           电池快照（一行）
+ * call("queryApps", null, {"packages": String[]})            批量查询多个包
+ * call("battery", null, null)                                 电池快照
+ *
+ * 调用方需要持有READ_PERMISSION：与本应用同签名，或声明后通过 adb shell pm grant 授予。
+ */
+public class DeviceDataProvider extends ContentProvider {
+
+    private static final String TAG = "DeviceDataProvider";
+
+    public static final String AUTHORITY = "com.atao.tdeviceservice.provider";
+    /** 读取权限（signature|development），清单中声明为provider的readPermission */
+    public static final String READ_PERMISSION = "com.atao.tdeviceservice.permission.READ_DEVICE_DATA";
+    public static final String METHOD_QUERY_APPS = "queryApps";
+    public static final String METHOD_BATTERY = "battery";
+    public static final String EXTRA_PACKAGES = "packages";
+
+    private static final String[] APP_COLUMNS = {"package_name", "is_system", "enabled", "is_launcher"};
+    private static final String[] BATTERY_COLUMNS = {"level", "status", "is_charging", "health", "charge_type",
+            "temperature", "voltage", "current_ma", "technology", "stale", "timestamp"};
+
+    private static final int MATCH_APPS = 1;
+    private static final int MATCH_APP = 2;
+    private static final int MATCH_BATTERY = 3;
+
+    private final UriMatcher matcher = new UriMatcher(UriMatcher.NO_MATCH);
+
+    @Override
+    public boolean onCreate() {
+        // 在Application.onCreate之前于主线程调用，这里不做任何初始化
+        matcher.addURI(AUTHORITY, "apps", MATCH_APPS);
+        matcher.addURI(AUTHORITY, "apps/*", MATCH_APP);
+        matcher.addURI(AUTHORITY, "battery", MATCH_BATTERY);
+        return true;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        switch (matcher.match(uri)) {
+            case MATCH_APPS:
+                return queryApps(uri);
+            case MATCH_APP:
+                return queryApp(uri.getLastPathSegment());
+            case MATCH_BATTERY:
+                return queryBattery();
+            default:
+                throw new IllegalArgumentException("Unknown uri: " + uri);
+        }
+    }
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        // 系统不对call()检查readPermission，需要自行校验
+        getContext().enforceCallingOrSelfPermission(READ_PERMISSION, "Reading " + AUTHORITY);
+        switch (method) {
+            case METHOD_QUERY_APPS:
+                String[] packages = extras != null ? extras.getStringArray(EXTRA_PACKAGES) : null;
+                if (packages == null) {
+                    throw new IllegalArgumentException("Missing " + EXTRA_PACKAGES);
+                }
+                return callQueryApps(packages);
+            case METHOD_BATTERY:
+                return callBattery();
+            default:
+                throw new IllegalArgumentException("Unknown method: " + method);
+        }
+    }
+
+    private Cursor queryApps(Uri uri) {
+        PackageIndex.Filter filter = new PackageIndex.Filter();
+        filter.system = parseBoolean(uri.getQueryParameter("system"));
+        filter.launcher = parseBoolean(uri.getQueryParameter("launcher"));
+        filter.enabled = parseBoolean(uri.getQueryParameter("enabled"));
+        filter.prefix = uri.getQueryParameter("prefix");
+        filter.contains = uri.getQueryParameter("contains");
+
+        PackageIndex.Snapshot snapshot = packageIndex().getSnapshot();
+        MatrixCursor cursor = new MatrixCursor(APP_COLUMNS, snapshot.size());
+        for (int i = 0; i < snapshot.size(); i++) {
+            PackageIndex.Entry entry = snapshot.get(i);
+            if (filter.matches(entry)) {
+                addAppRow(cursor, entry);
+            }
+        }
+        return cursor;
+    }
+
+    private Cursor queryApp(String packageName) {
+        MatrixCursor cursor = new MatrixCursor(APP_COLUMNS, 1);
+        PackageIndex.Entry entry = packageIndex().getSnapshot().find(packageName);
+        if (entry != null) {
+            addAppRow(cursor, entry);
+        }
+        return cursor;
+    }
+
+    private static void addAppRow(MatrixCursor cursor, PackageIndex.Entry entry) {
+        cursor.addRow(new Object[]{entry.packageName, entry.isSystem ? 1 : 0, entry.enabled ? 1 : 0,
+                entry.isLauncher ? 1 : 0});
+    }
+
+    private Cursor queryBattery() {
+        BatterySnapshot snapshot = readBattery();
+        MatrixCursor cursor = new MatrixCursor(BATTERY_COLUMNS, 1);
+        // 缺失的字段为NULL，布尔值按0/1
+        cursor.newRow()
+                .add("level", snapshot.level)
+                .add("status", BatteryInfoHandler.describeStatus(snapshot.status))
+                .add("is_charging", snapshot.isCharging() ? 1 : 0)
+                .add("health", BatteryInfoHandler.describeHealth(snapshot.health))
+                .add("charge_type", BatteryInfoHandler.describePlugged(snapshot.plugged))
+                .add("temperature", snapshot.temperature)
+                .add("voltage", snapshot.voltage)
+                .add("current_ma", snapshot.currentMilliAmp)
+                .add("technology", snapshot.technology)
+                .add("stale", snapshot.stale ? 1 : 0)
+                .add("timestamp", snapshot.timestamp);
+        return cursor;
+    }
+
+    /**
+     * 批量查询：每个包一个Bundle，未安装的包 installed=false
+     */
+    private Bundle callQueryApps(String[] packages) {
+        PackageIndex.Snapshot snapshot = packageIndex().getSnapshot();
+        Bundle result = new Bundle();
+        for (String packageName : packages) {
+            PackageIndex.Entry entry = snapshot.find(packageName);
+            Bundle app = new Bundle();
+            app.putBoolean("installed", entry != null);
+            if (entry != null) {
+                app.putBoolean("is_system", entry.isSystem);
+                app.putBoolean("enabled", entry.enabled);
+                app.putBoolean("is_launcher", entry.isLauncher);
+            }
+            result.putBundle(packageName, app);
+        }
+        return result;
+    }
+
+    private BatterySnapshot readBattery() {
+        try {
+            return BatterySnapshot.cached(getContext());
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to get battery status: " + e.getMessage());
+        }
+    }
+
+    private Bundle callBattery() {
+        BatterySnapshot snapshot = readBattery();
+        Bundle battery = new Bundle();
+        if (snapshot.level != null) {
+            battery.putFloat("level", snapshot.level);
+        }
+        battery.putString("status", BatteryInfoHandler.describeStatus(snapshot.status));
+        battery.putBoolean("is_charging", snapshot.isCharging());
+        battery.putString("health", BatteryInfoHandler.describeHealth(snapshot.health));
+        battery.putString("charge_type", BatteryInfoHandler.describePlugged(snapshot.plugged));
+        if (snapshot.temperature != null) {
+            battery.putFloat("temperature", snapshot.temperature);
+        }
+        if (snapshot.voltage != null) {
+            battery.putFloat("voltage", snapshot.voltage);
+        }
+        if (snapshot.currentMilliAmp != null) {
+            battery.putLong("current_ma", snapshot.currentMilliAmp);
+        }
+        battery.putString("technology", snapshot.technology);
+        battery.putBoolean("stale", snapshot.stale);
+        battery.putLong("timestamp", snapshot.timestamp);
+        return battery;
+    }
+
+    private PackageIndex packageIndex() {
+        return PackageIndex.getInstance(getContext());
+    }
+
+    private static Boolean parseBoolean(String value) {
+        return value == null ? null : Boolean.valueOf(value);
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        switch (matcher.match(uri)) {
+            case MATCH_APPS:
+                return "vnd.android.cursor.dir/vnd." + AUTHORITY + ".app";
+            case MATCH_APP:
+                return "vnd.android.cursor.item/vnd." + AUTHORITY + ".app";
+            case MATCH_BATTERY:
+                return "vnd.android.cursor.item/vnd." + AUTHORITY + ".battery";
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("Read-only provider");
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Read-only provider");
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Read-only provider");
+    }
+}
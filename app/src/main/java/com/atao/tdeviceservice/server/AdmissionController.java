@@ -0,0 +1,168 @@
+package com.atao.tdeviceservice.server;
+
+import android.os.SystemClock;
+
+import com.google.gson.JsonObject;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 请求准入控制 - 进程级单例
+ *
+ * 1. 按（客户端地址, 路由类别）做令牌桶限流，超出时返回429；
+ * 2. 开销大的路由另有全局并发上限，满了直接返回503，不排队。
+ * 令牌桶用GCRA实现：每个桶只有一个long（理论到达时间），通过CAS更新，无锁。
+ */
+public class AdmissionController {
+
+    private static final AdmissionController instance = new AdmissionController();
+
+    /** 开销大的路由：图标渲染、全量应用遍历、存储/使用统计、进程扫描 */
+    private static final Set<String> HEAVY_ROUTES = new HashSet<>(Arrays.asList(
+            "/api/apps/list",
+            "/api/apps/query",
+            "/api/apps/icon",
+            "/api/apps/icons",
+            "/api/apps/storage",
+            "/api/apps/usage",
+            "/api/apps/processes"));
+
+    /** 不限流的路由（负载高时健康检查仍需可用） */
+    private static final String EXEMPT_ROUTE = "/api/health";
+
+    private static final int LIGHT_RATE_PER_SEC = 50;
+    private static final int LIGHT_BURST = 100;
+    private static final int HEAVY_RATE_PER_SEC = 10;
+    private static final int HEAVY_BURST = 20;
+    private static final int HEAVY_CONCURRENCY = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+    private static final int OVERLOAD_RETRY_AFTER_SEC = 1;
+
+    /** 桶数量超过该值时清理已回满的桶 */
+    private static final int PRUNE_THRESHOLD = 256;
+
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final Semaphore heavyPermits = new Semaphore(HEAVY_CONCURRENCY);
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong overloaded = new AtomicLong();
+
+    private AdmissionController() {
+    }
+
+    public static AdmissionController getInstance() {
+        return instance;
+    }
+
+    /**
+     * 准入结果：admitted为false时overloaded/retryAfterSec给出拒绝方式；
+     * 获得了并发许可的请求处理完后必须调用release()，重复调用只释放一次
+     */
+    public static final class Ticket {
+        public final boolean admitted;
+        public final boolean overloaded;
+        public final long retryAfterSec;
+        private final Semaphore permit;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Ticket(boolean admitted, boolean overloaded, long retryAfterSec, Semaphore permit) {
+            this.admitted = admitted;
+            this.overloaded = overloaded;
+            this.retryAfterSec = retryAfterSec;
+            this.permit = permit;
+        }
+
+        public void release() {
+            if (permit != null && released.compareAndSet(false, true)) {
+                permit.release();
+            }
+        }
+    }
+
+    private static final Ticket ADMITTED = new Ticket(true, false, 0, null);
+
+    /**
+     * 判断请求能否进入处理
+     */
+    public Ticket admit(String clientAddress, String uri) {
+        if (EXEMPT_ROUTE.equals(uri)) {
+            return ADMITTED;
+        }
+        boolean heavy = HEAVY_ROUTES.contains(uri);
+        long now = SystemClock.elapsedRealtimeNanos();
+        long waitNanos = heavy
+                ? take(clientAddress + "|heavy", now, HEAVY_RATE_PER_SEC, HEAVY_BURST)
+                : take(clientAddress + "|light", now, LIGHT_RATE_PER_SEC, LIGHT_BURST);
+        if (waitNanos > 0) {
+            rateLimited.incrementAndGet();
+            return new Ticket(false, false, Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999L)), null);
+        }
+        if (!heavy) {
+            return ADMITTED;
+        }
+        if (!heavyPermits.tryAcquire()) {
+            overloaded.incrementAndGet();
+            return new Ticket(false, true, OVERLOAD_RETRY_AFTER_SEC, null);
+        }
+        return new Ticket(true, false, 0, heavyPermits);
+    }
+
+    /**
+     * 从令牌桶取一个令牌，成功返回0，否则返回需要等待的纳秒数
+     */
+    private long take(String key, long now, int ratePerSec, int burst) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= PRUNE_THRESHOLD) {
+                prune(now);
+            }
+            bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(Long.MIN_VALUE));
+        }
+        long interval = TimeUnit.SECONDS.toNanos(1) / ratePerSec;
+        long tolerance = interval * (burst - 1);
+        while (true) {
+            long tat = bucket.get();
+            long base = tat == Long.MIN_VALUE || tat < now ? now : tat;
+            long allowAt = base - tolerance;
+            if (allowAt > now) {
+                return allowAt - now;
+            }
+            if (bucket.compareAndSet(tat, base + interval)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * 删除已经回满的桶（删除后重建的桶同样是满的，不影响限流结果）
+     */
+    private void prune(long now) {
+        Iterator<Map.Entry<String, AtomicLong>> it = buckets.entrySet().iterator();
+        while (it.hasNext()) {
+            long tat = it.next().getValue().get();
+            if (tat == Long.MIN_VALUE || tat <= now) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * 导出为JSON，供健康检查使用
+     */
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("rateLimited", rateLimited.get());
+        json.addProperty("overloaded", overloaded.get());
+        json.addProperty("heavyInFlight", HEAVY_CONCURRENCY - heavyPermits.availablePermits());
+        json.addProperty("heavyConcurrency", HEAVY_CONCURRENCY);
+        json.addProperty("buckets", buckets.size());
+        return json;
+    }
+}
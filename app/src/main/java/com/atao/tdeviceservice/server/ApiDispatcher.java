@@ -0,0 +1,306 @@
+package com.atao.tdeviceservice.server;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.atao.tdeviceservice.api.ApiHandler;
+import com.atao.tdeviceservice.api.AppInfoHandler;
+import com.atao.tdeviceservice.api.AppProcessesHandler;
+import com.atao.tdeviceservice.api.AppStorageHandler;
+import com.atao.tdeviceservice.api.AppUsageHandler;
+import com.atao.tdeviceservice.api.BatteryInfoHandler;
+import com.atao.tdeviceservice.api.BatterySessionHandler;
+import com.atao.tdeviceservice.api.HealthHandler;
+import com.atao.tdeviceservice.api.NetworkHandler;
+import com.atao.tdeviceservice.api.SystemStatsHandler;
+import com.atao.tdeviceservice.api.TraceHandler;
+import com.atao.tdeviceservice.util.Tracer;
+import com.google.gson.JsonObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import fi.iki.elonen.NanoHTTPD;
+import fi.iki.elonen.NanoHTTPD.IHTTPSession;
+import fi.iki.elonen.NanoHTTPD.Response;
+
+/**
+ * API请求分发器 - 进程级单例
+ * 处理器及其缓存保存在这里而不是ApiServer中，监听器重建时不会丢失
+ */
+public class ApiDispatcher {
+
+    private static final String TAG = "ApiDispatcher";
+    private static volatile ApiDispatcher instance;
+
+    private final Context context;
+    private final Map<String, LazyHandler> handlers = new HashMap<>();
+
+    private ApiDispatcher(Context context) {
+        this.context = context.getApplicationContext();
+        initHandlers();
+    }
+
+    public static ApiDispatcher getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ApiDispatcher.class) {
+                if (instance == null) {
+                    instance = new ApiDispatcher(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 注册API路由（同类处理器共享一个实例）
+     * 处理器在对应路由第一次被请求时才创建，启动时只登记工厂
+     */
+    private void initHandlers() {
+        // 健康检查处理器 - 最基础的服务状态检查
+        route(new LazyHandler(() -> new HealthHandler(context)), "/api/health");
+
+        // 电池信息处理器
+        route(new LazyHandler(() -> new BatteryInfoHandler(context)),
+                "/api/battery/level",
+                "/api/battery/charging",
+                "/api/battery/health",
+                "/api/battery/temperature",
+                "/api/battery/isCharging",
+                "/api/battery/chargeType",
+                "/api/battery/current",
+                "/api/battery/voltage",
+                "/api/battery/snapshot");
+
+        // 电池电流采样会话与充放电会话统计处理器
+        route(new LazyHandler(() -> new BatterySessionHandler(context)),
+                "/api/battery/session/start",
+                "/api/battery/session/stop",
+                "/api/battery/session/report",
+                "/api/battery/sessions");
+
+        // 系统状态处理器
+        route(new LazyHandler(() -> new SystemStatsHandler(context)),
+                "/api/system/snapshot",
+                "/api/system/cpu",
+                "/api/system/memory",
+                "/api/system/thermal");
+
+        // 应用信息处理器
+        route(new LazyHandler(() -> new AppInfoHandler(context)),
+                "/api/apps/list",
+                "/api/apps/changes",
+                "/api/apps/query",
+                "/api/apps/name",
+                "/api/apps/isSystem",
+                "/api/apps/isLauncher",
+                "/api/apps/launcherActivity",
+                "/api/apps/version",
+                "/api/apps/info",
+                "/api/apps/icon",
+                "/api/apps/icons");
+
+        // 应用存储占用处理器
+        route(new LazyHandler(() -> new AppStorageHandler(context)), "/api/apps/storage");
+
+        // 应用使用统计处理器
+        route(new LazyHandler(() -> new AppUsageHandler(context)), "/api/apps/usage");
+
+        // 应用进程内存处理器
+        route(new LazyHandler(() -> new AppProcessesHandler(context)), "/api/apps/processes");
+
+        // 网络状态处理器
+        route(new LazyHandler(() -> new NetworkHandler(context)),
+                "/api/network",
+                "/api/network/wifi",
+                "/api/network/addresses");
+
+        // 请求追踪处理器
+        route(new LazyHandler(() -> new TraceHandler(context)),
+                "/api/trace/start",
+                "/api/trace/stop",
+                "/api/trace/status",
+                "/api/trace/dump");
+
+        Log.d(TAG, "API routes registered: " + handlers.size() + " routes");
+    }
+
+    private void route(LazyHandler handler, String... uris) {
+        for (String uri : uris) {
+            handlers.put(uri, handler);
+        }
+    }
+
+    /**
+     * 分发请求到对应的处理器
+     */
+    public Response dispatch(IHTTPSession session) {
+        String uri = session.getUri();
+        String method = session.getMethod().name();
+
+        Log.d(TAG, "API Request: " + method + " " + uri);
+
+        // 处理OPTIONS请求
+        if ("OPTIONS".equals(method)) {
+            return withCors(NanoHTTPD.newFixedLengthResponse(Response.Status.OK, "application/json", ""));
+        }
+
+        // 查找对应的处理器
+        LazyHandler route = handlers.get(uri);
+        if (route != null) {
+            // 超出限流或并发上限时立即拒绝，不排队占用线程
+            AdmissionController.Ticket ticket = AdmissionController.getInstance()
+                    .admit(session.getRemoteIpAddress(), uri);
+            if (!ticket.admitted) {
+                return reject(ticket, session);
+            }
+            boolean handedOff = false;
+            try {
+                ApiHandler handler = route.get();
+                JsonObject result;
+                try (Tracer.Span span = Tracer.begin("handler", route.name())) {
+                    Response raw = handler.handleRawRequest(uri, session);
+                    if (raw != null) {
+                        handedOff = releaseOnClose(raw, ticket);
+                        return raw;
+                    }
+                    result = handler.handleRequest(uri, session);
+                }
+                try (Tracer.Span span = Tracer.begin("encode")) {
+                    return encode(Response.Status.OK, result, session);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error handling request: " + uri, e);
+                return error(Response.Status.INTERNAL_ERROR, "Internal server error", session);
+            } finally {
+                if (!handedOff) {
+                    ticket.release();
+                }
+            }
+        }
+
+        // 404 Not Found
+        return error(Response.Status.NOT_FOUND, "API endpoint not found", session);
+    }
+
+    /**
+     * 流式响应（如图标包）在dispatch返回后仍由写线程生成，
+     * 并发许可改为在响应流关闭时释放（发送完成或客户端断开时NanoHTTPD都会关闭响应）
+     */
+    private boolean releaseOnClose(Response response, AdmissionController.Ticket ticket) {
+        InputStream data = response.getData();
+        if (data == null) {
+            return false;
+        }
+        response.setData(new TicketReleasingStream(data, ticket));
+        return true;
+    }
+
+    /**
+     * 限流返回429，过载返回503，都带Retry-After
+     */
+    private Response reject(AdmissionController.Ticket ticket, IHTTPSession session) {
+        Response response = ticket.overloaded
+                ? error(Response.Status.SERVICE_UNAVAILABLE, "Server busy", session)
+                : error(Response.Status.TOO_MANY_REQUESTS, "Too many requests", session);
+        response.addHeader("Retry-After", String.valueOf(ticket.retryAfterSec));
+        return response;
+    }
+
+    /**
+     * 错误响应 {"error": message}，与正常响应一样按Accept头编码
+     */
+    private Response error(Response.Status status, String message, IHTTPSession session) {
+        JsonObject result = new JsonObject();
+        result.addProperty("error", message);
+        return encode(status, result, session);
+    }
+
+    /**
+     * 按Accept头选择编码：默认JSON，Accept包含application/cbor时使用CBOR
+     */
+    private Response encode(Response.Status status, JsonObject result, IHTTPSession session) {
+        String accept = session.getHeaders().get("accept");
+        Response response;
+        if (accept != null && accept.contains(CborEncoder.MIME_TYPE)) {
+            byte[] body = CborEncoder.encode(result);
+            response = NanoHTTPD.newFixedLengthResponse(status, CborEncoder.MIME_TYPE,
+                    new ByteArrayInputStream(body), body.length);
+        } else {
+            response = NanoHTTPD.newFixedLengthResponse(status, "application/json", result.toString());
+        }
+        response.addHeader("Vary", "Accept");
+        return response;
+    }
+
+    /**
+     * 设置CORS头
+     */
+    private Response withCors(Response response) {
+        response.addHeader("Access-Control-Allow-Origin", "*");
+        response.addHeader("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
+        response.addHeader("Access-Control-Allow-Headers", "Content-Type");
+        return response;
+    }
+
+    /**
+     * 关闭时释放准入许可的响应流
+     */
+    private static final class TicketReleasingStream extends FilterInputStream {
+        private final AdmissionController.Ticket ticket;
+
+        TicketReleasingStream(InputStream in, AdmissionController.Ticket ticket) {
+            super(in);
+            this.ticket = ticket;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                ticket.release();
+            }
+        }
+    }
+
+    /**
+     * 延迟创建的处理器（类名在创建时取一次，供追踪使用）
+     */
+    private static final class LazyHandler {
+        private final Supplier<ApiHandler> factory;
+        private volatile ApiHandler handler;
+        private String name;
+
+        LazyHandler(Supplier<ApiHandler> factory) {
+            this.factory = factory;
+        }
+
+        ApiHandler get() {
+            ApiHandler current = handler;
+            if (current == null) {
+                synchronized (this) {
+                    current = handler;
+                    if (current == null) {
+                        current = factory.get();
+                        name = current.getClass().getSimpleName();
+                        handler = current;
+                    }
+                }
+            }
+            return current;
+        }
+
+        /**
+         * 处理器类名，get()之后调用（写入handler前已赋值，volatile读保证可见）
+         */
+        String name() {
+            return name;
+        }
+    }
+}
@@ -3,98 +3,58 @@ package com.atao.tdeviceservice.server;
 import android.content.Context;
 import android.util.Log;
 
-import com.atao.tdeviceservice.TDeviceServiceApplication;
-import com.atao.tdeviceservice.api.ApiHandler;
-import com.atao.tdeviceservice.api.AppInfoHandler;
-import com.atao.tdeviceservice.api.BatteryInfoHandler;
-import com.atao.tdeviceservice.api.HealthHandler;
+import com.atao.tdeviceservice.util.Tracer;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.net.ServerSocket;
+import java.net.Socket;
 
 import fi.iki.elonen.NanoHTTPD;
 
 /**
  * API服务器 - 基于NanoHTTPD的轻量级HTTP服务器
+ * 只负责监听和连接管理，请求分发及缓存由共享的ApiDispatcher负责
  */
 public class ApiServer extends NanoHTTPD {
 
     private static final String TAG = "ApiServer";
-    private Context context;
-    private Map<String, ApiHandler> handlers;
+    private final ApiDispatcher dispatcher;
+    private final DrainingAsyncRunner runner = new DrainingAsyncRunner();
+    private volatile ServerSocket listenerSocket;
 
     public ApiServer(int port, Context context) {
         super(port);
-        this.context = context;
-        initHandlers();
+        this.dispatcher = ApiDispatcher.getInstance(context);
+        setServerSocketFactory(this::createServerSocket);
+        setAsyncRunner(runner);
     }
 
     /**
-     * 初始化API处理器
+     * 创建监听Socket - 开启SO_REUSEADDR，并在accept时记录冷启动指标
      */
-    private void initHandlers() {
-        handlers = new HashMap<>();
-
-        // 健康检查处理器 - 最基础的服务状态检查
-        handlers.put("/api/health", new HealthHandler(context));
-
-        // 电池信息处理器
-        handlers.put("/api/battery/level", new BatteryInfoHandler(context));
-        handlers.put("/api/battery/charging", new BatteryInfoHandler(context));
-        handlers.put("/api/battery/health", new BatteryInfoHandler(context));
-        handlers.put("/api/battery/temperature", new BatteryInfoHandler(context));
-        handlers.put("/api/battery/isCharging", new BatteryInfoHandler(context));
-        handlers.put("/api/battery/chargeType", new BatteryInfoHandler(context));
-        handlers.put("/api/battery/current", new BatteryInfoHandler(context));
-        handlers.put("/api/battery/voltage", new BatteryInfoHandler(context));
-
-        // 应用信息处理器
-        handlers.put("/api/apps/list", new AppInfoHandler(context));
-        handlers.put("/api/apps/name", new AppInfoHandler(context));
-        handlers.put("/api/apps/isSystem", new AppInfoHandler(context));
-        handlers.put("/api/apps/isLauncher", new AppInfoHandler(context));
-        handlers.put("/api/apps/launcherActivity", new AppInfoHandler(context));
-        handlers.put("/api/apps/version", new AppInfoHandler(context));
-        handlers.put("/api/apps/icon", new AppInfoHandler(context));
-
-        Log.d(TAG, "API handlers initialized: " + handlers.size() + " handlers");
+    private ServerSocket createServerSocket() throws IOException {
+        ServerSocket serverSocket = new ServerSocket() {
+            @Override
+            public Socket accept() throws IOException {
+                Socket socket = super.accept();
+                ServerMetrics.getInstance().markAccepted();
+                return socket;
+            }
+        };
+        serverSocket.setReuseAddress(true);
+        listenerSocket = serverSocket;
+        return serverSocket;
     }
 
     @Override
     public Response serve(IHTTPSession session) {
-        String uri = session.getUri();
-        String method = session.getMethod().name();
-
-        Log.d(TAG, "API Request: " + method + " " + uri);
-
-        // 设置CORS头
-        Response response = newFixedLengthResponse(Response.Status.OK, "application/json", "");
-        response.addHeader("Access-Control-Allow-Origin", "*");
-        response.addHeader("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
-        response.addHeader("Access-Control-Allow-Headers", "Content-Type");
-
-        // 处理OPTIONS请求
-        if ("OPTIONS".equals(method)) {
-            return response;
+        ServerMetrics.getInstance().recordTcpRequest();
+        Response response;
+        try (Tracer.Span span = Tracer.begin("serve", session.getUri())) {
+            response = dispatcher.dispatch(session);
         }
-
-        // 查找对应的处理器
-        ApiHandler handler = handlers.get(uri);
-        if (handler != null) {
-            try {
-                String result = handler.handleRequest(uri, session);
-                return newFixedLengthResponse(Response.Status.OK, "application/json", result);
-            } catch (Exception e) {
-                Log.e(TAG, "Error handling request: " + uri, e);
-                return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, "application/json",
-                        "{\"error\":\"Internal server error\"}");
-            }
-        }
-
-        // 404 Not Found
-        return newFixedLengthResponse(Response.Status.NOT_FOUND, "application/json",
-                "{\"error\":\"API endpoint not found\"}");
+        ServerMetrics.getInstance().markRequestServed();
+        return response;
     }
 
     @Override
@@ -103,6 +63,34 @@ public class ApiServer extends NanoHTTPD {
         Log.d(TAG, "API Server started on port " + getListeningPort());
     }
 
+    /**
+     * 关闭监听Socket，释放端口但不中断已建立的连接
+     */
+    public void closeListener() {
+        ServerSocket socket = listenerSocket;
+        if (socket == null) {
+            return;
+        }
+        try {
+            socket.close();
+            Log.d(TAG, "API Server listener closed, draining " + runner.getRunning().size() + " connections");
+        } catch (IOException e) {
+            Log.w(TAG, "Error closing listener socket", e);
+        }
+    }
+
+    /**
+     * 排空后停止：等待已建立的连接处理完毕（最多timeoutMs），再强制关闭剩余连接
+     */
+    public void drainAndStop(long timeoutMs) {
+        closeListener();
+        boolean drained = runner.awaitIdle(timeoutMs);
+        if (!drained) {
+            Log.w(TAG, "Drain timed out, closing " + runner.getRunning().size() + " connections");
+        }
+        stop();
+    }
+
     @Override
     public void stop() {
         try {
@@ -113,4 +101,33 @@ public class ApiServer extends NanoHTTPD {
             Log.e(TAG, "Error stopping API Server", e);
         }
     }
+
+    /**
+     * 可等待空闲的连接执行器，连接处理结束时通知排空等待方
+     */
+    private static class DrainingAsyncRunner extends DefaultAsyncRunner {
+
+        @Override
+        public void closed(ClientHandler clientHandler) {
+            super.closed(clientHandler);
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+
+        synchronized boolean awaitIdle(long timeoutMs) {
+            long deadline = System.currentTimeMillis() + timeoutMs;
+            long remaining = timeoutMs;
+            while (!getRunning().isEmpty() && remaining > 0) {
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+                remaining = deadline - System.currentTimeMillis();
+            }
+            return getRunning().isEmpty();
+        }
+    }
 }
@@ -0,0 +1,195 @@
+package com.atao.tdeviceservice.server;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * CBOR编码器（RFC 8949）- 将与JSON相同的响应对象编码为紧凑二进制
+ *
+ * 整数编码为CBOR整数，小数优先用float32（无精度损失时），否则用float64。
+ * 每个线程复用一块输出缓冲区，编码过大响应后不保留扩容后的缓冲区。
+ */
+public final class CborEncoder {
+
+    public static final String MIME_TYPE = "application/cbor";
+
+    private static final int MAJOR_UNSIGNED = 0;
+    private static final int MAJOR_NEGATIVE = 1;
+    private static final int MAJOR_TEXT = 3;
+    private static final int MAJOR_ARRAY = 4;
+    private static final int MAJOR_MAP = 5;
+    private static final int SIMPLE_FALSE = 0xF4;
+    private static final int SIMPLE_TRUE = 0xF5;
+    private static final int SIMPLE_NULL = 0xF6;
+    private static final int FLOAT32 = 0xFA;
+    private static final int FLOAT64 = 0xFB;
+
+    // 线程保留的缓冲区上限，超过时丢弃，下次从初始大小重新分配
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+    private static final int INITIAL_BUFFER = 4096;
+
+    private static final ThreadLocal<CborEncoder> LOCAL = ThreadLocal.withInitial(CborEncoder::new);
+
+    private byte[] buffer = new byte[INITIAL_BUFFER];
+    private int length;
+
+    private CborEncoder() {
+    }
+
+    /**
+     * 编码为字节数组
+     */
+    public static byte[] encode(JsonElement element) {
+        CborEncoder encoder = LOCAL.get();
+        encoder.length = 0;
+        encoder.write(element);
+        byte[] encoded = Arrays.copyOf(encoder.buffer, encoder.length);
+        if (encoder.buffer.length > MAX_RETAINED_BUFFER) {
+            LOCAL.remove();
+        }
+        return encoded;
+    }
+
+    private void write(JsonElement element) {
+        if (element == null || element.isJsonNull()) {
+            writeByte(SIMPLE_NULL);
+        } else if (element.isJsonObject()) {
+            JsonObject object = element.getAsJsonObject();
+            writeHead(MAJOR_MAP, object.size());
+            for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+                writeText(entry.getKey());
+                write(entry.getValue());
+            }
+        } else if (element.isJsonArray()) {
+            JsonArray array = element.getAsJsonArray();
+            writeHead(MAJOR_ARRAY, array.size());
+            for (JsonElement item : array) {
+                write(item);
+            }
+        } else {
+            writePrimitive(element.getAsJsonPrimitive());
+        }
+    }
+
+    private void writePrimitive(JsonPrimitive primitive) {
+        if (primitive.isBoolean()) {
+            writeByte(primitive.getAsBoolean() ? SIMPLE_TRUE : SIMPLE_FALSE);
+        } else if (primitive.isNumber()) {
+            writeNumber(primitive.getAsNumber());
+        } else {
+            writeText(primitive.getAsString());
+        }
+    }
+
+    private void writeNumber(Number number) {
+        if (number instanceof Integer || number instanceof Long
+                || number instanceof Short || number instanceof Byte) {
+            writeInteger(number.longValue());
+            return;
+        }
+        if (number instanceof Float) {
+            writeFloat(number.floatValue());
+            return;
+        }
+        if (number instanceof Double) {
+            writeDouble(number.doubleValue());
+            return;
+        }
+        // LazilyParsedNumber / BigDecimal 等：按字面值判断是否为整数
+        BigDecimal decimal = new BigDecimal(number.toString());
+        if (decimal.scale() <= 0) {
+            BigInteger integer = decimal.toBigIntegerExact();
+            if (integer.bitLength() < 64) {
+                writeInteger(integer.longValue());
+                return;
+            }
+        }
+        writeDouble(decimal.doubleValue());
+    }
+
+    private void writeInteger(long value) {
+        if (value >= 0) {
+            writeHead(MAJOR_UNSIGNED, value);
+        } else {
+            writeHead(MAJOR_NEGATIVE, -1 - value);
+        }
+    }
+
+    private void writeFloat(float value) {
+        writeByte(FLOAT32);
+        int bits = Float.floatToIntBits(value);
+        ensureCapacity(4);
+        buffer[length++] = (byte) (bits >>> 24);
+        buffer[length++] = (byte) (bits >>> 16);
+        buffer[length++] = (byte) (bits >>> 8);
+        buffer[length++] = (byte) bits;
+    }
+
+    private void writeDouble(double value) {
+        float narrowed = (float) value;
+        if (narrowed == value) {
+            writeFloat(narrowed);
+            return;
+        }
+        writeByte(FLOAT64);
+        long bits = Double.doubleToLongBits(value);
+        ensureCapacity(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[length++] = (byte) (bits >>> shift);
+        }
+    }
+
+    private void writeText(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        writeHead(MAJOR_TEXT, bytes.length);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+
+    /**
+     * 写入类型头：主类型 + 参数（长度或整数值）
+     */
+    private void writeHead(int majorType, long argument) {
+        int major = majorType << 5;
+        if (argument < 24) {
+            writeByte(major | (int) argument);
+        } else if (argument < 0x100) {
+            writeByte(major | 24);
+            writeByte((int) argument);
+        } else if (argument < 0x10000) {
+            writeByte(major | 25);
+            writeByte((int) (argument >>> 8));
+            writeByte((int) argument);
+        } else if (argument < 0x100000000L) {
+            writeByte(major | 26);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                writeByte((int) (argument >>> shift));
+            }
+        } else {
+            writeByte(major | 27);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                writeByte((int) (argument >>> shift));
+            }
+        }
+    }
+
+    private void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[length++] = (byte) value;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.atao.tdeviceservice.server;
+
+import android.content.Context;
+import android.net.LocalServerSocket;
+import android.net.LocalSocket;
+import android.net.LocalSocketAddress;
+import android.util.Log;
+
+import com.atao.tdeviceservice.util.Tracer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/**
+ * 本地Socket传输 - 在abstract命名空间的LocalServerSocket上提供与ApiServer相同的路由
+ *
+ * 电脑端通过 adb forward tcp:8080 localabstract:tdevice 访问，不经过设备TCP回环，也不占用端口。
+ * 复用NanoHTTPD的HTTP解析，请求交给共享的ApiDispatcher处理。
+ * 连接由有上限的线程池处理，超出上限的连接直接关闭。
+ */
+public class LocalApiServer extends NanoHTTPD {
+
+    private static final String TAG = "LocalApiServer";
+    public static final String SOCKET_NAME = "tdevice";
+    // 同时处理的连接数上限（空闲连接SOCKET_READ_TIMEOUT后释放）
+    private static final int MAX_CONNECTIONS = 16;
+
+    private final ApiDispatcher dispatcher;
+    private LocalServerSocket serverSocket;
+    private Thread acceptThread;
+    private ThreadPoolExecutor workers;
+    private volatile boolean running;
+
+    public LocalApiServer(Context context) {
+        super(0);
+        this.dispatcher = ApiDispatcher.getInstance(context);
+    }
+
+    @Override
+    public Response serve(IHTTPSession session) {
+        ServerMetrics.getInstance().recordLocalRequest();
+        Response response;
+        try (Tracer.Span span = Tracer.begin("serve", session.getUri())) {
+            response = dispatcher.dispatch(session);
+        }
+        ServerMetrics.getInstance().markRequestServed();
+        return response;
+    }
+
+    @Override
+    public void start() throws IOException {
+        serverSocket = new LocalServerSocket(SOCKET_NAME);
+        AtomicInteger workerCount = new AtomicInteger();
+        workers = new ThreadPoolExecutor(0, MAX_CONNECTIONS, 30, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable,
+                            "LocalApiServer Request Processor-" + workerCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        running = true;
+        acceptThread = new Thread(this::acceptLoop, "LocalApiServer Listener");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        Log.d(TAG, "Local API Server listening on localabstract:" + SOCKET_NAME);
+    }
+
+    /**
+     * 接收连接，交给线程池处理，线程池已满时关闭连接
+     */
+    private void acceptLoop() {
+        while (running) {
+            try {
+                LocalSocket socket = serverSocket.accept();
+                if (!running) {
+                    closeQuietly(socket);
+                    break;
+                }
+                try {
+                    workers.execute(() -> handleConnection(socket));
+                } catch (RejectedExecutionException e) {
+                    Log.w(TAG, "Too many local connections, closing new connection");
+                    closeQuietly(socket);
+                }
+            } catch (IOException e) {
+                if (running) {
+                    Log.w(TAG, "Error accepting local connection", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 在单个连接上循环处理请求（支持keep-alive）
+     */
+    private void handleConnection(LocalSocket socket) {
+        TempFileManager tempFileManager = getTempFileManagerFactory().create();
+        try {
+            socket.setSoTimeout(SOCKET_READ_TIMEOUT);
+            HTTPSession session = new HTTPSession(tempFileManager, socket.getInputStream(),
+                    socket.getOutputStream(), InetAddress.getLoopbackAddress());
+            while (running && !socket.isClosed()) {
+                session.execute();
+            }
+        } catch (SocketException | SocketTimeoutException e) {
+            // 客户端关闭连接或空闲超时，正常结束
+        } catch (Exception e) {
+            Log.w(TAG, "Error handling local connection", e);
+        } finally {
+            tempFileManager.clear();
+            closeQuietly(socket);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            // LocalServerSocket.close()不会唤醒阻塞的accept()，先连一次把它唤醒
+            LocalSocket wakeup = new LocalSocket();
+            wakeup.connect(new LocalSocketAddress(SOCKET_NAME));
+            closeQuietly(wakeup);
+        } catch (IOException e) {
+            Log.d(TAG, "Wakeup connection failed: " + e.getMessage());
+        }
+        // 进行中的请求处理完当前这次后退出
+        workers.shutdown();
+        try {
+            serverSocket.close();
+            Log.d(TAG, "Local API Server stopped");
+        } catch (IOException e) {
+            Log.e(TAG, "Error stopping Local API Server", e);
+        }
+    }
+
+    public boolean isRunning() {
+        return running && acceptThread != null && acceptThread.isAlive();
+    }
+
+    private static void closeQuietly(LocalSocket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.atao.tdeviceservice.server;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 端口发布 - 将实际监听端口原子写入小文件，供电脑端工具读取
+ *
+ * 读取方式：
+ * adb shell cat /sdcard/Android/data/com.atao.tdeviceservice/files/api_port
+ */
+public final class PortPublisher {
+
+    private static final String TAG = "PortPublisher";
+    private static final String PORT_FILE = "api_port";
+
+    private PortPublisher() {
+    }
+
+    /**
+     * 发布端口（先写临时文件再rename，读取方不会看到半截内容）
+     */
+    public static void publish(Context context, int port) {
+        for (File dir : getTargetDirs(context)) {
+            File target = new File(dir, PORT_FILE);
+            File tmp = new File(dir, PORT_FILE + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(tmp)) {
+                out.write(String.valueOf(port).getBytes(StandardCharsets.US_ASCII));
+                out.getFD().sync();
+            } catch (Exception e) {
+                Log.w(TAG, "Failed to write port file in " + dir, e);
+                continue;
+            }
+            if (!tmp.renameTo(target)) {
+                Log.w(TAG, "Failed to publish port file " + target);
+                tmp.delete();
+            }
+        }
+        Log.d(TAG, "Published API port " + port);
+    }
+
+    /**
+     * 撤销端口发布
+     */
+    public static void clear(Context context) {
+        for (File dir : getTargetDirs(context)) {
+            new File(dir, PORT_FILE).delete();
+        }
+    }
+
+    private static File[] getTargetDirs(Context context) {
+        File external = context.getExternalFilesDir(null);
+        if (external == null) {
+            return new File[]{context.getFilesDir()};
+        }
+        return new File[]{context.getFilesDir(), external};
+    }
+}
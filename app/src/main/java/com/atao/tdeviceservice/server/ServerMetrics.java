@@ -0,0 +1,157 @@
+package com.atao.tdeviceservice.server;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.gson.JsonObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 服务器运行指标 - 进程级单例，不随ApiServer实例重建而丢失
+ *
+ * 同时记录冷启动时间线（均为elapsedRealtime）：
+ * 进程启动 → Application.onCreate → Service.onCreate → 端口绑定 → 首次accept → 首个请求处理完成
+ */
+public class ServerMetrics {
+
+    private static final String TAG = "ServerMetrics";
+    private static final ServerMetrics instance = new ServerMetrics();
+
+    private final long processStartAt = Process.getStartElapsedRealtime();
+    private volatile long applicationCreatedAt = -1;
+    private volatile long serviceCreatedAt = -1;
+    private volatile long boundAt = -1;
+    private volatile long firstAcceptAt = -1;
+    private volatile long firstRequestServedAt = -1;
+    private volatile int boundPort = -1;
+    private volatile boolean ephemeralPort = false;
+    private final AtomicLong tcpRequests = new AtomicLong();
+    private final AtomicLong localRequests = new AtomicLong();
+
+    private ServerMetrics() {
+    }
+
+    public static ServerMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * 记录Application.onCreate时间
+     */
+    public void markApplicationCreated() {
+        applicationCreatedAt = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * 记录服务创建时间（冷启动起点）
+     */
+    public void markServiceCreated() {
+        serviceCreatedAt = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * 记录监听端口绑定完成
+     */
+    public void markBound(int port, boolean ephemeral) {
+        boundAt = SystemClock.elapsedRealtime();
+        boundPort = port;
+        ephemeralPort = ephemeral;
+        if (serviceCreatedAt > 0) {
+            Log.i(TAG, "metric cold_start_to_bind_ms=" + (boundAt - serviceCreatedAt) + " port=" + port);
+        }
+    }
+
+    /**
+     * 记录第一次accept，只在首次调用时生效
+     */
+    public void markAccepted() {
+        if (firstAcceptAt > 0) {
+            return;
+        }
+        synchronized (this) {
+            if (firstAcceptAt > 0) {
+                return;
+            }
+            firstAcceptAt = SystemClock.elapsedRealtime();
+        }
+        if (serviceCreatedAt > 0) {
+            Log.i(TAG, "metric cold_start_to_first_accept_ms=" + (firstAcceptAt - serviceCreatedAt));
+        }
+    }
+
+    /**
+     * 记录请求处理完成，只在首次调用时生效
+     */
+    public void markRequestServed() {
+        if (firstRequestServedAt > 0) {
+            return;
+        }
+        synchronized (this) {
+            if (firstRequestServedAt > 0) {
+                return;
+            }
+            firstRequestServedAt = SystemClock.elapsedRealtime();
+        }
+        Log.i(TAG, "metric process_start_to_first_request_ms=" + (firstRequestServedAt - processStartAt));
+    }
+
+    /**
+     * 记录一次TCP传输的请求
+     */
+    public void recordTcpRequest() {
+        tcpRequests.incrementAndGet();
+    }
+
+    /**
+     * 记录一次本地Socket传输的请求
+     */
+    public void recordLocalRequest() {
+        localRequests.incrementAndGet();
+    }
+
+    public int getBoundPort() {
+        return boundPort;
+    }
+
+    /**
+     * 导出为JSON，供健康检查使用
+     */
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("port", boundPort);
+        json.addProperty("ephemeralPort", ephemeralPort);
+        json.addProperty("tcpRequests", tcpRequests.get());
+        json.addProperty("localRequests", localRequests.get());
+        if (serviceCreatedAt > 0 && boundAt > 0) {
+            json.addProperty("coldStartToBindMs", boundAt - serviceCreatedAt);
+        }
+        if (serviceCreatedAt > 0 && firstAcceptAt > 0) {
+            json.addProperty("coldStartToFirstAcceptMs", firstAcceptAt - serviceCreatedAt);
+        }
+        json.add("startup", startupTimeline());
+        return json;
+    }
+
+    /**
+     * 冷启动时间线，各阶段为相对进程启动的毫秒数，未发生的阶段不输出
+     */
+    private JsonObject startupTimeline() {
+        JsonObject timeline = new JsonObject();
+        timeline.addProperty("processStartElapsed", processStartAt);
+        addPhase(timeline, "applicationCreatedMs", applicationCreatedAt);
+        addPhase(timeline, "serviceCreatedMs", serviceCreatedAt);
+        addPhase(timeline, "boundMs", boundAt);
+        addPhase(timeline, "firstAcceptMs", firstAcceptAt);
+        addPhase(timeline, "firstRequestServedMs", firstRequestServedAt);
+        timeline.addProperty("processUptimeMs", SystemClock.elapsedRealtime() - processStartAt);
+        return timeline;
+    }
+
+    private void addPhase(JsonObject timeline, String name, long at) {
+        if (at > 0) {
+            timeline.addProperty(name, at - processStartAt);
+        }
+    }
+}
@@ -12,6 +12,7 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
@@ -22,9 +23,28 @@ import android.util.Log;
 import androidx.core.app.NotificationCompat;
 
 import com.atao.tdeviceservice.R;
+import com.atao.tdeviceservice.apps.IconCache;
+import com.atao.tdeviceservice.apps.IconPrewarmer;
+import com.atao.tdeviceservice.apps.IconRenderer;
+import com.atao.tdeviceservice.apps.PackageChangeJournal;
+import com.atao.tdeviceservice.apps.StorageStatsCache;
+import com.atao.tdeviceservice.battery.ChargeSessionTracker;
+import com.atao.tdeviceservice.battery.CurrentSampler;
+import com.atao.tdeviceservice.network.NetworkMonitor;
 import com.atao.tdeviceservice.server.ApiServer;
+import com.atao.tdeviceservice.server.LocalApiServer;
+import com.atao.tdeviceservice.server.PortPublisher;
+import com.atao.tdeviceservice.server.ServerMetrics;
+import com.atao.tdeviceservice.system.ProcessSampler;
+import com.atao.tdeviceservice.system.SystemStatsSampler;
+import com.atao.tdeviceservice.telemetry.TelemetryExporter;
+import com.google.gson.JsonObject;
 import com.karumi.dexter.BuildConfig;
 
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 /**
  * 设备信息服务 - 前台服务，确保稳定运行
  */
@@ -34,40 +54,109 @@ public class DeviceService extends Service {
     // 移除通知相关常量
     private static final int SERVER_PORT = 8080;
     private static final int SERVICE_STOP_TIMEOUT = 5000; // 5秒超时
+    private static final long SERVER_DRAIN_TIMEOUT = 10000; // 旧监听器排空超时
 
-    private ApiServer apiServer;
+    private volatile ApiServer apiServer;
+    private volatile LocalApiServer localApiServer;
     private BroadcastReceiver restartReceiver;
+    private BroadcastReceiver packageReceiver;
     private Handler keepAliveHandler;
     private Runnable keepAliveRunnable;
     private Handler stopHandler;
     private volatile boolean isServiceStopping = false;
+    private volatile boolean destroyed = false;
+
+    // 启动与监听器重建都在这个线程上串行执行，不占用主线程
+    private final ExecutorService startupExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ServiceStartup");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     @Override
     public void onCreate() {
         super.onCreate();
         Log.d(TAG, "DeviceService onCreate");
+        ServerMetrics.getInstance().markServiceCreated();
+        IconCache.getInstance().configure(this);
 
         // 初始化停止处理器
         stopHandler = new Handler(Looper.getMainLooper());
 
+        // 先绑定监听端口，其余子系统随后在启动线程上初始化，主线程不等待
+        startupExecutor.execute(this::startInBackground);
+
         // 注册服务重启监听器
         registerRestartReceiver();
 
-        // 检查电池优化设置
-        checkBatteryOptimization();
+        // 注册应用包变化监听器
+        registerPackageReceiver();
 
-        // 启动API服务器
-        startApiServer();
-        
         // 启动保活机制
         startKeepAliveMechanism();
     }
 
+    /**
+     * 启动线程上的初始化：监听器优先，其次是后台任务
+     * 应用索引、图标渲染器、处理器等在首次请求时才创建
+     * 每一步之后检查destroyed：onDestroy可能在这一步启动前已执行过对应的stop，
+     * 此时由启动线程自己再停止一次（stop都是幂等的），否则接收器和线程会泄漏
+     */
+    private void startInBackground() {
+        // 启动API服务器
+        startApiServer();
+        if (destroyed) {
+            return;
+        }
+
+        // 按配置启动本地Socket传输，后台预热应用图标，周期采样系统状态
+        applyBackgroundConfig();
+        if (destroyed) {
+            return;
+        }
+
+        // 后台刷新应用存储占用
+        StorageStatsCache.getInstance(this).start();
+        if (destroyed) {
+            StorageStatsCache.getInstance(this).stop();
+            return;
+        }
+
+        // 监听网络状态变化
+        NetworkMonitor.getInstance(this).start();
+        if (destroyed) {
+            NetworkMonitor.getInstance(this).stop();
+            return;
+        }
+
+        // 统计充放电会话
+        ChargeSessionTracker.getInstance(this).start();
+        if (destroyed) {
+            ChargeSessionTracker.getInstance(this).stop();
+            return;
+        }
+
+        // 检查电池优化设置
+        checkBatteryOptimization();
+    }
+
     @SuppressLint("WrongConstant")
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         Log.d(TAG, "DeviceService onStartCommand - flags: " + flags + ", startId: " + startId);
 
+        // 应用启动参数中的配置项（读写SharedPreferences，放到启动线程上）
+        if (intent != null) {
+            Bundle extras = intent.getExtras();
+            startupExecutor.execute(() -> {
+                if (destroyed) {
+                    return;
+                }
+                ServiceConfig.getInstance(this).applyExtras(extras);
+                applyBackgroundConfig();
+            });
+        }
+
         // 检查是否有停止信号
         if (intent != null && "stop".equals(intent.getStringExtra("action"))) {
             Log.d(TAG, "Received stop signal, stopping service safely");
@@ -99,10 +188,26 @@ public class DeviceService extends Service {
         return null;
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // 只使用未废弃的两个级别（RUNNING_*等级别从API 34起不再回调）：
+        // 界面不可见时释放图标渲染池，进程进入后台LRU列表时再清空图标缓存
+        if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            Log.d(TAG, "onTrimMemory level " + level + ", trimming icon pool");
+            IconRenderer.getInstance().trim();
+        }
+        if (level >= TRIM_MEMORY_BACKGROUND) {
+            IconCache.getInstance().clear();
+        }
+    }
+
     @Override
     public void onDestroy() {
         super.onDestroy();
         Log.d(TAG, "DeviceService onDestroy");
+        destroyed = true;
+        startupExecutor.shutdownNow();
 
         try {
             // 立即停止前台服务状态，避免超时异常
@@ -117,15 +222,24 @@ public class DeviceService extends Service {
 
             // 注销重启监听器
             unregisterRestartReceiver();
+            unregisterPackageReceiver();
+            IconPrewarmer.getInstance(this).stop();
+            StorageStatsCache.getInstance(this).stop();
+            CurrentSampler.getInstance(this).stop();
+            SystemStatsSampler.getInstance().setPeriodicInterval(0);
+            ProcessSampler.getInstance(this).setPeriodicInterval(0);
+            NetworkMonitor.getInstance(this).stop();
+            ChargeSessionTracker.getInstance(this).stop();
+            // 最后停止遥测，结束会话时推送的chargeSession事件仍能写入暂存区
+            TelemetryExporter.getInstance(this).stop();
 
             // 停止保活机制
             stopKeepAliveMechanism();
             
             // 停止API服务器
-            if (apiServer != null) {
-                apiServer.stop();
-                Log.d(TAG, "API Server stopped");
-            }
+            stopApiServer();
+            stopLocalApiServer();
+            PortPublisher.clear(this);
             
             Log.d(TAG, "DeviceService destroyed successfully");
         } catch (Exception e) {
@@ -152,22 +266,20 @@ public class DeviceService extends Service {
 
     /**
      * 注册服务重启监听器
+     * 亮屏/灭屏/解锁及应用更新只做存活检查，服务器正常时不再重建，避免断流和缓存丢失
      */
     private void registerRestartReceiver() {
         restartReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
                 String action = intent.getAction();
-                Log.d(TAG, "Service restart detected, action: " + action + ", restarting API server");
-                
-                // 重新启动API服务器
-                if (apiServer != null) {
-                    apiServer.stop();
+                if (isApiServerRunning()) {
+                    Log.d(TAG, "Received " + action + ", API server is healthy");
+                    return;
                 }
-                startApiServer();
-                
-                // 确保后台服务状态
-                Log.d(TAG, "Service restarted successfully");
+
+                Log.w(TAG, "Received " + action + ", API server is down, restarting");
+                startupExecutor.execute(DeviceService.this::ensureServersRunning);
             }
         };
         
@@ -194,54 +306,204 @@ public class DeviceService extends Service {
     }
 
     /**
-     * 启动API服务器
+     * 注册应用包变化监听器，记录变化日志、使应用索引和图标/存储缓存失效
      */
-    private void startApiServer() {
-        try {
-            // 如果已有服务器实例，先停止
-            if (apiServer != null) {
-                Log.d(TAG, "Stopping existing API Server before restart");
-                apiServer.stop();
-                apiServer = null;
-                Thread.sleep(1000); // 等待端口释放
-            }
-            
-            // 检查端口是否可用
-            if (!isPortAvailable(SERVER_PORT)) {
-                Log.w(TAG, "Port " + SERVER_PORT + " is not available");
-                
-                // 尝试强制清理端口
-                forceCleanupPort(SERVER_PORT);
-                Thread.sleep(2000); // 等待清理完成
-                
-                // 再次检查端口是否可用
-                if (isPortAvailable(SERVER_PORT)) {
-                    Log.d(TAG, "Port " + SERVER_PORT + " is now available after cleanup");
-                    apiServer = new ApiServer(SERVER_PORT, this);
-                } else {
-                    Log.w(TAG, "Port still not available, trying to find alternative port");
-                    int alternativePort = findAvailablePort(SERVER_PORT);
-                    if (alternativePort != -1) {
-                        Log.d(TAG, "Using alternative port: " + alternativePort);
-                        apiServer = new ApiServer(alternativePort, this);
-                    } else {
-                        Log.e(TAG, "No available port found");
-                        return;
-                    }
+    private void registerPackageReceiver() {
+        packageReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                Log.d(TAG, "Package changed: " + intent.getAction() + " " + intent.getData());
+                PackageChangeJournal.Event change = PackageChangeJournal.getInstance()
+                        .onPackageBroadcast(context, intent);
+                if (intent.getData() != null) {
+                    String packageName = intent.getData().getSchemeSpecificPart();
+                    IconCache.getInstance().remove(packageName);
+                    StorageStatsCache.getInstance(context).invalidate(packageName);
                 }
-            } else {
-                apiServer = new ApiServer(SERVER_PORT, this);
+                if (change != null) {
+                    recordPackageEvent(change);
+                }
+                IconPrewarmer.getInstance(context).onPackagesChanged();
+                ProcessSampler.getInstance(context).onPackagesChanged();
             }
-            
-            apiServer.start();
-            Log.d(TAG, "API Server started on port " + apiServer.getListeningPort());
-        } catch (Exception e) {
+        };
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addDataScheme("package");
+        registerReceiver(packageReceiver, filter);
+    }
+
+    /**
+     * 应用包变化推送到遥测（使用变化日志去重后的事件，未开启时直接返回）
+     */
+    private void recordPackageEvent(PackageChangeJournal.Event change) {
+        TelemetryExporter exporter = TelemetryExporter.getInstance(this);
+        if (!exporter.isEnabled()) {
+            return;
+        }
+        JsonObject event = new JsonObject();
+        event.addProperty("change", change.type);
+        event.addProperty("package", change.packageName);
+        event.addProperty("seq", change.seq);
+        exporter.record("package", event);
+    }
+
+    /**
+     * 注销应用包变化监听器
+     */
+    private void unregisterPackageReceiver() {
+        if (packageReceiver != null) {
+            try {
+                unregisterReceiver(packageReceiver);
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Receiver was not registered", e);
+            }
+            packageReceiver = null;
+        }
+    }
+
+    /**
+     * 启动API服务器
+     * 已有实例时做无缝交接：旧实例先释放端口，新实例立即绑定，旧实例在后台排空进行中的请求
+     */
+    private synchronized void startApiServer() {
+        if (destroyed || isServiceStopping) {
+            return;
+        }
+        ApiServer previous = apiServer;
+        if (previous != null) {
+            Log.d(TAG, "Handing over API Server listener");
+            previous.closeListener();
+        }
+
+        apiServer = bindApiServer();
+        if (apiServer != null) {
+            int port = apiServer.getListeningPort();
+            ServerMetrics.getInstance().markBound(port, port != SERVER_PORT);
+            PortPublisher.publish(this, port);
+            Log.d(TAG, "API Server started on port " + port);
+        }
+
+        if (previous != null) {
+            Thread drainThread = new Thread(() -> previous.drainAndStop(SERVER_DRAIN_TIMEOUT),
+                    "ApiServer-Drain");
+            drainThread.setDaemon(true);
+            drainThread.start();
+        }
+    }
+
+    /**
+     * 停止API服务器（与startApiServer互斥，避免停止时启动线程仍在绑定）
+     */
+    private synchronized void stopApiServer() {
+        if (apiServer != null) {
+            apiServer.stop();
+            apiServer = null;
+            Log.d(TAG, "API Server stopped");
+        }
+    }
+
+    /**
+     * 监听器不在运行时重建（在启动线程上执行）
+     */
+    private void ensureServersRunning() {
+        if (destroyed || isServiceStopping) {
+            return;
+        }
+        if (!isApiServerRunning()) {
+            Log.w(TAG, "API Server not running, restarting...");
+            startApiServer();
+        }
+        startLocalApiServer();
+    }
+
+    /**
+     * 绑定监听端口
+     * 优先绑定固定端口（SO_REUSEADDR），失败则直接退回系统分配的临时端口，不做探测和等待
+     */
+    private ApiServer bindApiServer() {
+        ApiServer server = new ApiServer(SERVER_PORT, this);
+        try {
+            server.start();
+            return server;
+        } catch (IOException e) {
+            Log.w(TAG, "Port " + SERVER_PORT + " is not available, falling back to ephemeral port: "
+                    + e.getMessage());
+        }
+
+        server = new ApiServer(0, this);
+        try {
+            server.start();
+            return server;
+        } catch (IOException e) {
             Log.e(TAG, "Failed to start API Server", e);
-            // 尝试使用备用端口
-            tryAlternativePort();
+            return null;
         }
     }
     
+    /**
+     * 按配置开启或关闭本地Socket传输和后台任务（图标预热、系统状态周期采样、遥测推送）
+     */
+    private void applyBackgroundConfig() {
+        if (destroyed) {
+            return;
+        }
+        ServiceConfig config = ServiceConfig.getInstance(this);
+        startLocalApiServer();
+        IconPrewarmer.getInstance(this).configure(config.isIconPrewarmEnabled(), config.getPrewarmMinBattery());
+        SystemStatsSampler.getInstance().setPeriodicInterval(config.getSystemSampleIntervalMs());
+        ProcessSampler.getInstance(this).setPeriodicInterval(config.getProcessSampleIntervalMs());
+        TelemetryExporter.getInstance(this).configure(config.getTelemetryUrl(), config.getTelemetryBatchMs(),
+                config.getTelemetryMaxBatch(), config.getTelemetryBatteryIntervalMs());
+        if (destroyed) {
+            // onDestroy在配置期间执行过停止时，撤销刚开启的后台任务
+            IconPrewarmer.getInstance(this).stop();
+            SystemStatsSampler.getInstance().setPeriodicInterval(0);
+            ProcessSampler.getInstance(this).setPeriodicInterval(0);
+            TelemetryExporter.getInstance(this).stop();
+        }
+    }
+
+    /**
+     * 启动本地Socket传输（与TCP监听器并行，共享分发器），配置关闭时停止正在运行的实例
+     */
+    private synchronized void startLocalApiServer() {
+        if (destroyed || isServiceStopping) {
+            return;
+        }
+        if (!ServiceConfig.getInstance(this).isLocalSocketEnabled()) {
+            if (localApiServer != null) {
+                Log.d(TAG, "Local socket transport disabled, stopping");
+                stopLocalApiServer();
+            }
+            return;
+        }
+        if (localApiServer != null && localApiServer.isRunning()) {
+            return;
+        }
+        try {
+            localApiServer = new LocalApiServer(this);
+            localApiServer.start();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to start local socket transport", e);
+            localApiServer = null;
+        }
+    }
+
+    /**
+     * 停止本地Socket传输
+     */
+    private synchronized void stopLocalApiServer() {
+        if (localApiServer != null) {
+            localApiServer.stop();
+            localApiServer = null;
+        }
+    }
+
     /**
      * 启动保活机制
      */
@@ -259,10 +521,7 @@ public class DeviceService extends Service {
                 try {
                 // 定期检查服务状态，保持服务活跃
                 Log.d(TAG, "Keep alive check - Service running normally");
-                    if (apiServer == null || !isApiServerRunning()) {
-                        Log.w(TAG, "API Server not running, restarting...");
-                        startApiServer();
-                    }
+                    startupExecutor.execute(DeviceService.this::ensureServersRunning);
                     
                     // 每30秒执行一次保活检查
                     keepAliveHandler.postDelayed(this, 30000);
@@ -291,29 +550,10 @@ public class DeviceService extends Service {
     
     /**
      * 检查API服务器是否正在运行
+     * 直接检查监听线程状态，不在主线程发起HTTP请求
      */
     private boolean isApiServerRunning() {
-        if (apiServer == null) {
-            return false;
-        }
-        
-        try {
-            int port = apiServer.getListeningPort();
-            // 尝试通过HTTP请求检查服务器状态
-            java.net.URL url = new java.net.URL("http://127.0.0.1:" + port + "/api/health");
-            java.net.HttpURLConnection connection = (java.net.HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("GET");
-            connection.setConnectTimeout(2000);
-            connection.setReadTimeout(2000);
-            
-            int responseCode = connection.getResponseCode();
-            connection.disconnect();
-            
-            return responseCode == 200;
-        } catch (Exception e) {
-            Log.d(TAG, "API Server health check failed: " + e.getMessage());
-            return false;
-        }
+        return apiServer != null && apiServer.isAlive();
     }
     
     /**
@@ -343,13 +583,12 @@ public class DeviceService extends Service {
                     stopKeepAliveMechanism();
                     
                     // 停止API服务器
-                    if (apiServer != null) {
-                        apiServer.stop();
-                        Log.d(TAG, "API Server stopped");
-                    }
+                    stopApiServer();
+                    stopLocalApiServer();
                     
                     // 注销重启监听器
                     unregisterRestartReceiver();
+                    unregisterPackageReceiver();
                     
                     Log.d(TAG, "All components stopped successfully");
                 } catch (Exception e) {
@@ -371,71 +610,4 @@ public class DeviceService extends Service {
     public boolean isStopping() {
         return isServiceStopping;
     }
-    
-    /**
-     * 检查端口是否可用
-     */
-    private boolean isPortAvailable(int port) {
-        try {
-            java.net.ServerSocket serverSocket = new java.net.ServerSocket(port);
-            serverSocket.close();
-            return true;
-        } catch (Exception e) {
-            Log.d(TAG, "Port " + port + " is not available: " + e.getMessage());
-            return false;
-        }
-    }
-    
-    /**
-     * 查找可用端口
-     */
-    private int findAvailablePort(int startPort) {
-        for (int port = startPort; port <= startPort + 100; port++) {
-            if (isPortAvailable(port)) {
-                return port;
-            }
-        }
-        return -1;
-    }
-    
-    /**
-     * 尝试使用备用端口启动API服务器
-     */
-    private void tryAlternativePort() {
-        try {
-            Log.d(TAG, "Trying to start API Server on alternative port");
-            int alternativePort = findAvailablePort(8081);
-            if (alternativePort != -1) {
-                apiServer = new ApiServer(alternativePort, this);
-                apiServer.start();
-                Log.d(TAG, "API Server started on alternative port " + alternativePort);
-            } else {
-                Log.e(TAG, "Failed to find any available port for API Server");
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to start API Server on alternative port", e);
-        }
-    }
-    
-    /**
-     * 强制清理端口占用（通过ADB命令）
-     */
-    private void forceCleanupPort(int port) {
-        try {
-            Log.d(TAG, "Attempting to cleanup port " + port + " using ADB");
-            ProcessBuilder pb = new ProcessBuilder(
-                "adb", "shell", "netstat", "-tulpn", "|", "grep", ":" + port
-            );
-            Process process = pb.start();
-            int exitCode = process.waitFor();
-            
-            if (exitCode == 0) {
-                Log.d(TAG, "Found process using port " + port + ", attempting to kill");
-                // 这里可以添加杀死进程的逻辑，但需要root权限
-                Log.w(TAG, "Port cleanup requires root access");
-            }
-        } catch (Exception e) {
-            Log.w(TAG, "Failed to cleanup port " + port + ": " + e.getMessage());
-        }
-    }
 }
\ No newline at end of file
@@ -0,0 +1,146 @@
+package com.atao.tdeviceservice.service;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 服务配置 - 持久化在SharedPreferences中
+ *
+ * 通过启动Intent的extra修改，例如：
+ * adb shell am start-foreground-service -n com.atao.tdeviceservice/.service.DeviceService --ez local_socket false
+ */
+public class ServiceConfig {
+
+    private static final String TAG = "ServiceConfig";
+    private static final String PREFS_NAME = "service_config";
+
+    /** 是否开启本地Socket（localabstract:tdevice）传输 */
+    public static final String KEY_LOCAL_SOCKET = "local_socket";
+
+    /** 是否在后台预热桌面应用图标 */
+    public static final String KEY_ICON_PREWARM = "icon_prewarm";
+    /** 使用电池时，电量低于该百分比暂停图标预热 */
+    public static final String KEY_PREWARM_MIN_BATTERY = "prewarm_min_battery";
+
+    /** 系统状态（CPU/内存/温度）周期采样间隔，毫秒，0表示只在请求时采样 */
+    public static final String KEY_SYSTEM_SAMPLE_INTERVAL = "system_sample_interval_ms";
+    /** 应用进程内存周期采样间隔，毫秒，0表示只在请求时采样（不采样PSS） */
+    public static final String KEY_PROCESS_SAMPLE_INTERVAL = "process_sample_interval_ms";
+
+    /** 遥测收集端地址（HTTP POST），为空表示不推送 */
+    public static final String KEY_TELEMETRY_URL = "telemetry_url";
+    /** 遥测批次时间窗口，毫秒 */
+    public static final String KEY_TELEMETRY_BATCH_MS = "telemetry_batch_ms";
+    /** 遥测批次最大事件数，攒够后提前发送 */
+    public static final String KEY_TELEMETRY_MAX_BATCH = "telemetry_max_batch";
+    /** 遥测电池快照采样间隔，毫秒，0表示不采样 */
+    public static final String KEY_TELEMETRY_BATTERY_INTERVAL = "telemetry_battery_interval_ms";
+
+    private static final Set<String> KNOWN_KEYS = new HashSet<>(Arrays.asList(
+            KEY_LOCAL_SOCKET,
+            KEY_ICON_PREWARM,
+            KEY_PREWARM_MIN_BATTERY,
+            KEY_SYSTEM_SAMPLE_INTERVAL,
+            KEY_PROCESS_SAMPLE_INTERVAL,
+            KEY_TELEMETRY_URL,
+            KEY_TELEMETRY_BATCH_MS,
+            KEY_TELEMETRY_MAX_BATCH,
+            KEY_TELEMETRY_BATTERY_INTERVAL
+    ));
+
+    private static volatile ServiceConfig instance;
+
+    private final SharedPreferences prefs;
+
+    private ServiceConfig(Context context) {
+        this.prefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    public static ServiceConfig getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ServiceConfig.class) {
+                if (instance == null) {
+                    instance = new ServiceConfig(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 将Intent extra中已知的配置项写入配置
+     */
+    @SuppressWarnings("deprecation")
+    public void applyExtras(Bundle extras) {
+        if (extras == null) {
+            return;
+        }
+        SharedPreferences.Editor editor = prefs.edit();
+        boolean changed = false;
+        for (String key : extras.keySet()) {
+            if (!KNOWN_KEYS.contains(key)) {
+                continue;
+            }
+            Object value = extras.get(key);
+            if (value instanceof Boolean) {
+                editor.putBoolean(key, (Boolean) value);
+            } else if (value instanceof Integer) {
+                editor.putInt(key, (Integer) value);
+            } else if (value instanceof Long) {
+                editor.putLong(key, (Long) value);
+            } else if (value instanceof String) {
+                editor.putString(key, (String) value);
+            } else {
+                Log.w(TAG, "Unsupported config value type for " + key);
+                continue;
+            }
+            Log.d(TAG, "Config updated: " + key + "=" + value);
+            changed = true;
+        }
+        if (changed) {
+            editor.apply();
+        }
+    }
+
+    public boolean isLocalSocketEnabled() {
+        return prefs.getBoolean(KEY_LOCAL_SOCKET, true);
+    }
+
+    public boolean isIconPrewarmEnabled() {
+        return prefs.getBoolean(KEY_ICON_PREWARM, true);
+    }
+
+    public int getPrewarmMinBattery() {
+        return prefs.getInt(KEY_PREWARM_MIN_BATTERY, 30);
+    }
+
+    public int getSystemSampleIntervalMs() {
+        return prefs.getInt(KEY_SYSTEM_SAMPLE_INTERVAL, 5000);
+    }
+
+    public int getProcessSampleIntervalMs() {
+        return prefs.getInt(KEY_PROCESS_SAMPLE_INTERVAL, 10000);
+    }
+
+    public String getTelemetryUrl() {
+        return prefs.getString(KEY_TELEMETRY_URL, "");
+    }
+
+    public int getTelemetryBatchMs() {
+        return prefs.getInt(KEY_TELEMETRY_BATCH_MS, 10000);
+    }
+
+    public int getTelemetryMaxBatch() {
+        return prefs.getInt(KEY_TELEMETRY_MAX_BATCH, 200);
+    }
+
+    public int getTelemetryBatteryIntervalMs() {
+        return prefs.getInt(KEY_TELEMETRY_BATTERY_INTERVAL, 60000);
+    }
+}
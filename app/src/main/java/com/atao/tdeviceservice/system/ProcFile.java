@@ -0,0 +1,134 @@
+package com.atao.tdeviceservice.system;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * /proc、/sys 文件读取器
+ *
+ * 文件句柄长期保持打开，每次读取前seek到开头（内核会重新生成内容），
+ * 内容读入固定大小的复用缓冲区，数字直接从字节解析，不创建String。
+ * 非线程安全，由调用方加锁。
+ */
+final class ProcFile {
+
+    private final File file;
+    private final byte[] buffer;
+    private RandomAccessFile handle;
+    private int length;
+    private int position;
+
+    ProcFile(String path, int bufferSize) {
+        this.file = new File(path);
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * 重新读取文件（最多读满缓冲区，超出部分忽略），失败时关闭句柄，下次重新打开
+     */
+    boolean read() {
+        try {
+            if (handle == null) {
+                handle = new RandomAccessFile(file, "r");
+            }
+            handle.seek(0);
+            length = 0;
+            int n;
+            while (length < buffer.length && (n = handle.read(buffer, length, buffer.length - length)) > 0) {
+                length += n;
+            }
+            position = 0;
+            return true;
+        } catch (IOException | SecurityException e) {
+            close();
+            length = 0;
+            position = 0;
+            return false;
+        }
+    }
+
+    boolean hasRemaining() {
+        return position < length;
+    }
+
+    /**
+     * 当前位置是否以prefix开头
+     */
+    boolean startsWith(byte[] prefix) {
+        if (length - position < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer[position + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean peekDigit() {
+        return position < length && buffer[position] >= '0' && buffer[position] <= '9';
+    }
+
+    void skip(int count) {
+        position = Math.min(length, position + count);
+    }
+
+    /**
+     * 跳过空白后解析一个（可带负号的）整数；当前行没有更多数字时返回0且不跨行
+     */
+    long nextLong() {
+        while (position < length && (buffer[position] == ' ' || buffer[position] == '\t')) {
+            position++;
+        }
+        boolean negative = false;
+        if (position < length && buffer[position] == '-') {
+            negative = true;
+            position++;
+        }
+        long value = 0;
+        while (position < length) {
+            byte b = buffer[position];
+            if (b < '0' || b > '9') {
+                break;
+            }
+            value = value * 10 + (b - '0');
+            position++;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * 移动到下一行开头
+     */
+    void nextLine() {
+        while (position < length && buffer[position] != '\n') {
+            position++;
+        }
+        if (position < length) {
+            position++;
+        }
+    }
+
+    /**
+     * 读取文件并解析开头的整数，失败返回defaultValue
+     */
+    long readLong(long defaultValue) {
+        if (!read() || !hasRemaining()) {
+            return defaultValue;
+        }
+        return nextLong();
+    }
+
+    void close() {
+        if (handle != null) {
+            try {
+                handle.close();
+            } catch (IOException ignored) {
+                // 关闭失败无需处理
+            }
+            handle = null;
+        }
+    }
+}
@@ -0,0 +1,587 @@
+package com.atao.tdeviceservice.system;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Debug;
+import android.os.Process;
+import android.os.SystemClock;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructStat;
+import android.util.Log;
+
+import com.atao.tdeviceservice.apps.PackageIndex;
+import com.atao.tdeviceservice.util.Tracer;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 应用进程与内存采样器 - 进程级单例
+ *
+ * 每次采样列出 /proc 下的应用进程（uid≥10000），读 /proc/<pid>/statm 得到RSS；
+ * statm句柄按pid常驻复用，进程名和所属包只在新进程出现时解析一次。
+ * PSS需要 ActivityManager.getProcessMemoryInfo（多个进程时几百毫秒），只在周期采样中低频执行，且不持锁。
+ * /proc 看不到其他应用进程时（hidepid），退回 ActivityManager.getRunningAppProcesses。
+ * 进程列表和uid→包的对应关系按有效期缓存，只在采样线程上锁外刷新，请求线程的采样不做Binder调用。
+ */
+public class ProcessSampler {
+
+    private static final String TAG = "ProcessSampler";
+    // 同一份结果在该时间内重复请求不重新采样
+    private static final long MIN_SAMPLE_GAP_MS = 500;
+    // PSS采样间隔
+    private static final long PSS_INTERVAL_MS = 60000;
+    // ActivityManager进程列表缓存有效期
+    private static final long RUNNING_PROCESSES_TTL_MS = 30000;
+    // uid→包缓存有效期（包变化时另外清空）
+    private static final long UID_PACKAGES_TTL_MS = 10 * 60 * 1000;
+
+    private static volatile ProcessSampler instance;
+
+    private final Context context;
+    private final long pageKb;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, "Process-Sampler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 以下字段由this保护
+    private final Map<Integer, Tracked> tracked = new HashMap<>();
+    private ScheduledFuture<?> periodic;
+    private long periodMs;
+    private long pssSampledAtElapsed;
+    private long pssSampledAt;
+    private long sampledAt;
+    private long sampledAtElapsed;
+    private volatile boolean procVisible;
+    private volatile Result latest;
+
+    // 以下缓存只在采样线程上刷新，锁内只读；查不到包的uid记为""
+    private final Map<Integer, String> uidPackages = new ConcurrentHashMap<>();
+    private final Set<Integer> pendingUids = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean refreshQueued = new AtomicBoolean();
+    private volatile List<ActivityManager.RunningAppProcessInfo> runningProcesses;
+    private volatile long runningProcessesAtElapsed;
+    private volatile long uidPackagesAtElapsed;
+
+    private ProcessSampler(Context context) {
+        this.context = context.getApplicationContext();
+        this.pageKb = Math.max(1, Os.sysconf(OsConstants._SC_PAGESIZE) / 1024);
+    }
+
+    public static ProcessSampler getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ProcessSampler.class) {
+                if (instance == null) {
+                    instance = new ProcessSampler(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 开启或关闭周期采样，intervalMs<=0表示关闭（只在请求时采样RSS，不采样PSS）
+     */
+    public synchronized void setPeriodicInterval(long intervalMs) {
+        if (intervalMs == periodMs && (periodic != null) == (intervalMs > 0)) {
+            return;
+        }
+        if (periodic != null) {
+            periodic.cancel(false);
+            periodic = null;
+        }
+        periodMs = Math.max(0, intervalMs);
+        if (periodMs > 0) {
+            periodic = scheduler.scheduleWithFixedDelay(() -> sample(true), 0, periodMs, TimeUnit.MILLISECONDS);
+            Log.d(TAG, "Periodic process sampling every " + periodMs + "ms");
+        }
+    }
+
+    /**
+     * 返回不早于maxAgeMs的结果（过旧时立即做一次只含RSS的轻量采样）
+     */
+    public Result latest(long maxAgeMs) {
+        Result current = latest;
+        if (current == null || SystemClock.elapsedRealtime() - current.sampledAtElapsed > maxAgeMs) {
+            sample(false);
+            current = latest;
+        }
+        return current;
+    }
+
+    /**
+     * 采样一次
+     * RSS在锁内采样；PSS的Binder调用在锁外执行，期间请求线程的latest()和RSS采样不会被阻塞
+     *
+     * @param allowPss 是否允许在到期时采样PSS（请求线程上不做）
+     */
+    void sample(boolean allowPss) {
+        if (allowPss) {
+            refreshFallback();
+        }
+        Tracked[] pssTargets = sampleRss(allowPss);
+        if (allowPss) {
+            // 本次新出现的uid立即解析，不等下一个周期
+            resolvePendingUids();
+        } else if (fallbackStale()) {
+            requestRefresh();
+        }
+        if (pssTargets == null) {
+            return;
+        }
+        Debug.MemoryInfo[] infos;
+        try (Tracer.Span span = Tracer.begin("processSampler.pss")) {
+            infos = queryPss(pssTargets);
+        }
+        applyPss(pssTargets, infos);
+    }
+
+    /**
+     * 锁内扫描进程并发布只含RSS的结果
+     *
+     * @return PSS到期时返回需要采样PSS的进程，否则返回null
+     */
+    private synchronized Tracked[] sampleRss(boolean allowPss) {
+        long now = SystemClock.elapsedRealtime();
+        if (sampledAtElapsed != 0 && now - sampledAtElapsed < MIN_SAMPLE_GAP_MS && !allowPss) {
+            return null;
+        }
+        try (Tracer.Span span = Tracer.begin("processSampler.sample")) {
+            PackageIndex.Snapshot packages = PackageIndex.getInstance(context).peekSnapshot();
+            Set<Integer> alive = new HashSet<>();
+            procVisible = scanProc(packages, alive);
+            if (!procVisible) {
+                // 只看得到自己的进程，由缓存的ActivityManager进程列表补充
+                mergeRunningAppProcesses(packages, alive);
+            }
+            removeExited(alive);
+        }
+        sampledAt = System.currentTimeMillis();
+        sampledAtElapsed = SystemClock.elapsedRealtime();
+        latest = buildResult();
+        if (!allowPss || now - pssSampledAtElapsed < PSS_INTERVAL_MS || tracked.isEmpty()) {
+            return null;
+        }
+        pssSampledAtElapsed = now;
+        return tracked.values().toArray(new Tracked[0]);
+    }
+
+    /**
+     * 批量查询PSS（Binder调用，不持锁），失败时返回null
+     */
+    private Debug.MemoryInfo[] queryPss(Tracked[] targets) {
+        ActivityManager manager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (manager == null) {
+            return null;
+        }
+        int[] pids = new int[targets.length];
+        for (int i = 0; i < targets.length; i++) {
+            pids[i] = targets[i].pid;
+        }
+        try {
+            return manager.getProcessMemoryInfo(pids);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "getProcessMemoryInfo failed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 写回PSS并重新发布结果（查询期间已退出或pid被复用的进程跳过）
+     */
+    private synchronized void applyPss(Tracked[] targets, Debug.MemoryInfo[] infos) {
+        if (infos == null) {
+            return;
+        }
+        for (int i = 0; i < targets.length && i < infos.length; i++) {
+            Tracked process = targets[i];
+            if (tracked.get(process.pid) != process) {
+                continue;
+            }
+            int pss = infos[i].getTotalPss();
+            // 没有权限或进程已退出时返回0
+            process.pssKb = pss > 0 ? pss : -1;
+        }
+        pssSampledAt = System.currentTimeMillis();
+        latest = buildResult();
+    }
+
+    /**
+     * 扫描 /proc，返回是否能看到其他应用的进程
+     */
+    private boolean scanProc(PackageIndex.Snapshot packages, Set<Integer> alive) {
+        String[] names = new File("/proc").list();
+        if (names == null) {
+            return false;
+        }
+        int myUid = Process.myUid();
+        boolean otherUidSeen = false;
+        for (String name : names) {
+            int pid = parsePid(name);
+            if (pid <= 0) {
+                continue;
+            }
+            StructStat stat;
+            try {
+                stat = Os.stat("/proc/" + pid);
+            } catch (ErrnoException e) {
+                continue;
+            }
+            if (stat.st_uid < Process.FIRST_APPLICATION_UID) {
+                continue;
+            }
+            if (stat.st_uid != myUid) {
+                otherUidSeen = true;
+            }
+            Tracked process = tracked.get(pid);
+            if (process != null && (process.uid != stat.st_uid || process.startTime != stat.st_ctime)) {
+                // pid已被新进程复用
+                process.close();
+                process = null;
+            }
+            if (process == null) {
+                String processName = readCmdline(pid);
+                if (processName == null) {
+                    continue;
+                }
+                process = new Tracked(pid, stat.st_uid, stat.st_ctime, processName,
+                        resolvePackage(processName, stat.st_uid, packages));
+                tracked.put(pid, process);
+            }
+            process.sampleStatm(pageKb);
+            alive.add(pid);
+        }
+        return otherUidSeen;
+    }
+
+    private void mergeRunningAppProcesses(PackageIndex.Snapshot packages, Set<Integer> alive) {
+        List<ActivityManager.RunningAppProcessInfo> running = runningProcesses;
+        if (running == null) {
+            return;
+        }
+        for (ActivityManager.RunningAppProcessInfo info : running) {
+            if (!tracked.containsKey(info.pid)) {
+                String packageName = info.pkgList != null && info.pkgList.length > 0
+                        ? info.pkgList[0] : resolvePackage(info.processName, info.uid, packages);
+                tracked.put(info.pid, new Tracked(info.pid, info.uid, 0, info.processName, packageName));
+            }
+            alive.add(info.pid);
+        }
+    }
+
+    private void removeExited(Set<Integer> alive) {
+        Iterator<Map.Entry<Integer, Tracked>> it = tracked.entrySet().iterator();
+        while (it.hasNext()) {
+            Tracked process = it.next().getValue();
+            if (!alive.contains(process.pid)) {
+                process.close();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * 进程名 "包名" 或 "包名:子进程"；不是已安装包名时查uid缓存，未缓存的uid交给采样线程解析
+     */
+    private String resolvePackage(String processName, int uid, PackageIndex.Snapshot packages) {
+        int colon = processName.indexOf(':');
+        String candidate = colon > 0 ? processName.substring(0, colon) : processName;
+        if (packages != null && packages.find(candidate) != null) {
+            return candidate;
+        }
+        String cached = uidPackages.get(uid);
+        if (cached == null) {
+            pendingUids.add(uid);
+            return null;
+        }
+        return cached.isEmpty() ? null : cached;
+    }
+
+    /**
+     * 锁外刷新到期的进程列表和uid→包缓存（Binder调用），只在采样线程上执行
+     */
+    private void refreshFallback() {
+        long now = SystemClock.elapsedRealtime();
+        if (now - uidPackagesAtElapsed >= UID_PACKAGES_TTL_MS) {
+            uidPackages.clear();
+            uidPackagesAtElapsed = now;
+        }
+        if (runningProcessesStale(now)) {
+            ActivityManager manager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+            List<ActivityManager.RunningAppProcessInfo> running = null;
+            try {
+                running = manager != null ? manager.getRunningAppProcesses() : null;
+            } catch (RuntimeException e) {
+                Log.w(TAG, "getRunningAppProcesses failed: " + e.getMessage());
+            }
+            runningProcesses = running != null ? running : Collections.emptyList();
+            runningProcessesAtElapsed = now;
+        }
+        resolvePendingUids();
+    }
+
+    private void resolvePendingUids() {
+        if (pendingUids.isEmpty()) {
+            return;
+        }
+        PackageManager pm = context.getPackageManager();
+        Iterator<Integer> it = pendingUids.iterator();
+        while (it.hasNext()) {
+            int uid = it.next();
+            it.remove();
+            String[] uidPackageNames = pm.getPackagesForUid(uid);
+            uidPackages.put(uid, uidPackageNames != null && uidPackageNames.length > 0 ? uidPackageNames[0] : "");
+        }
+        applyResolvedPackages();
+    }
+
+    /**
+     * 把新解析出的包名补到尚未归属的进程上并重新发布结果
+     */
+    private synchronized void applyResolvedPackages() {
+        boolean changed = false;
+        for (Tracked process : tracked.values()) {
+            if (process.packageName == null) {
+                String packageName = uidPackages.get(process.uid);
+                if (packageName != null && !packageName.isEmpty()) {
+                    process.packageName = packageName;
+                    changed = true;
+                }
+            }
+        }
+        if (changed) {
+            latest = buildResult();
+        }
+    }
+
+    private boolean runningProcessesStale(long now) {
+        return !procVisible && (runningProcesses == null || now - runningProcessesAtElapsed >= RUNNING_PROCESSES_TTL_MS);
+    }
+
+    private boolean fallbackStale() {
+        return !pendingUids.isEmpty() || runningProcessesStale(SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * 请求线程发现缓存过期时交给采样线程刷新（合并重复请求），自身不等待
+     */
+    private void requestRefresh() {
+        if (refreshQueued.compareAndSet(false, true)) {
+            scheduler.execute(() -> {
+                refreshQueued.set(false);
+                refreshFallback();
+            });
+        }
+    }
+
+    /**
+     * 包安装/卸载后uid与包的对应关系可能变化
+     */
+    public void onPackagesChanged() {
+        uidPackages.clear();
+    }
+
+    private static String readCmdline(int pid) {
+        try {
+            byte[] bytes = Files.readAllBytes(new File("/proc/" + pid + "/cmdline").toPath());
+            int end = 0;
+            while (end < bytes.length && bytes[end] != 0) {
+                end++;
+            }
+            return end > 0 ? new String(bytes, 0, end, StandardCharsets.UTF_8) : null;
+        } catch (IOException | SecurityException e) {
+            return null;
+        }
+    }
+
+    private static int parsePid(String name) {
+        int value = 0;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private Result buildResult() {
+        List<ProcessInfo> processes = new ArrayList<>(tracked.size());
+        for (Tracked process : tracked.values()) {
+            processes.add(new ProcessInfo(process.pid, process.uid, process.processName, process.packageName,
+                    process.rssKb, process.vmSizeKb, process.pssKb));
+        }
+        processes.sort((a, b) -> Long.compare(b.rssKb, a.rssKb));
+        return new Result(processes, procVisible ? "proc" : "activityManager", sampledAt, sampledAtElapsed,
+                pssSampledAt);
+    }
+
+    /**
+     * 被跟踪的进程（statm句柄常驻）
+     */
+    private static final class Tracked {
+        final int pid;
+        final int uid;
+        final long startTime;
+        final String processName;
+        // 所属uid尚未解析时为null，由采样线程补上
+        String packageName;
+        final ProcFile statm;
+        long rssKb = -1;
+        long vmSizeKb = -1;
+        long pssKb = -1;
+
+        Tracked(int pid, int uid, long startTime, String processName, String packageName) {
+            this.pid = pid;
+            this.uid = uid;
+            this.startTime = startTime;
+            this.processName = processName;
+            this.packageName = packageName;
+            this.statm = new ProcFile("/proc/" + pid + "/statm", 128);
+        }
+
+        /**
+         * statm：size resident shared text lib data dt（单位为页）
+         */
+        void sampleStatm(long pageKb) {
+            if (!statm.read()) {
+                return;
+            }
+            vmSizeKb = statm.nextLong() * pageKb;
+            rssKb = statm.nextLong() * pageKb;
+        }
+
+        void close() {
+            statm.close();
+        }
+    }
+
+    /**
+     * 单个进程的采样结果
+     */
+    public static final class ProcessInfo {
+        public final int pid;
+        public final int uid;
+        public final String processName;
+        public final String packageName;
+        public final long rssKb;
+        public final long vmSizeKb;
+        public final long pssKb;
+
+        ProcessInfo(int pid, int uid, String processName, String packageName, long rssKb, long vmSizeKb,
+                    long pssKb) {
+            this.pid = pid;
+            this.uid = uid;
+            this.processName = processName;
+            this.packageName = packageName;
+            this.rssKb = rssKb;
+            this.vmSizeKb = vmSizeKb;
+            this.pssKb = pssKb;
+        }
+    }
+
+    /**
+     * 一次采样的不可变结果，进程按RSS从大到小排序
+     */
+    public static final class Result {
+        public final List<ProcessInfo> processes;
+        /** proc：/proc可见所有应用进程；activityManager：只能看到部分进程 */
+        public final String source;
+        public final long sampledAt;
+        final long sampledAtElapsed;
+        /** 最近一次PSS采样时间，0表示尚未采样 */
+        public final long pssSampledAt;
+
+        Result(List<ProcessInfo> processes, String source, long sampledAt, long sampledAtElapsed,
+               long pssSampledAt) {
+            this.processes = processes;
+            this.source = source;
+            this.sampledAt = sampledAt;
+            this.sampledAtElapsed = sampledAtElapsed;
+            this.pssSampledAt = pssSampledAt;
+        }
+
+        /**
+         * 按包分组输出，packageFilter为null时输出全部
+         */
+        public JsonObject toJson(String packageFilter) {
+            Map<String, JsonObject> byPackage = new LinkedHashMap<>();
+            int count = 0;
+            for (ProcessInfo process : processes) {
+                String key = process.packageName != null ? process.packageName : process.processName;
+                if (packageFilter != null && !packageFilter.equals(key)) {
+                    continue;
+                }
+                JsonObject app = byPackage.get(key);
+                if (app == null) {
+                    app = new JsonObject();
+                    app.addProperty("package", key);
+                    app.addProperty("uid", process.uid);
+                    app.addProperty("rssKb", 0L);
+                    app.add("processes", new JsonArray());
+                    byPackage.put(key, app);
+                }
+                if (process.rssKb >= 0) {
+                    app.addProperty("rssKb", app.get("rssKb").getAsLong() + process.rssKb);
+                }
+                if (process.pssKb >= 0) {
+                    long pss = app.has("pssKb") ? app.get("pssKb").getAsLong() : 0;
+                    app.addProperty("pssKb", pss + process.pssKb);
+                }
+                JsonObject entry = new JsonObject();
+                entry.addProperty("pid", process.pid);
+                entry.addProperty("name", process.processName);
+                if (process.rssKb >= 0) {
+                    entry.addProperty("rssKb", process.rssKb);
+                    entry.addProperty("vmSizeKb", process.vmSizeKb);
+                }
+                if (process.pssKb >= 0) {
+                    entry.addProperty("pssKb", process.pssKb);
+                }
+                app.getAsJsonArray("processes").add(entry);
+                count++;
+            }
+            JsonArray apps = new JsonArray();
+            for (JsonObject app : byPackage.values()) {
+                apps.add(app);
+            }
+            JsonObject json = new JsonObject();
+            json.add("apps", apps);
+            json.addProperty("processCount", count);
+            json.addProperty("source", source);
+            json.addProperty("sampledAt", sampledAt);
+            if (pssSampledAt > 0) {
+                json.addProperty("pssSampledAt", pssSampledAt);
+            }
+            return json;
+        }
+    }
+}
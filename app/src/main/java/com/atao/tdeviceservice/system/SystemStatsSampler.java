@@ -0,0 +1,329 @@
+package com.atao.tdeviceservice.system;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 系统状态采样器 - 进程级单例
+ *
+ * 读取 /proc/stat（各核CPU占用，按两次采样的差值计算）、cpufreq（当前频率）、
+ * /proc/meminfo（内存与交换区）和 thermal_zone（温度）。
+ * 所有文件句柄和缓冲区在首次使用时创建并一直复用；结果保存在基本类型字段中，
+ * 只在生成JSON时分配对象。请求读取时结果过旧会立即采样，也可开启周期采样供所有请求共享。
+ */
+public class SystemStatsSampler {
+
+    private static final String TAG = "SystemStatsSampler";
+    private static final byte[] CPU = "cpu".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MEM_TOTAL = "MemTotal:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MEM_FREE = "MemFree:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MEM_AVAILABLE = "MemAvailable:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CACHED = "Cached:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SWAP_TOTAL = "SwapTotal:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SWAP_FREE = "SwapFree:".getBytes(StandardCharsets.US_ASCII);
+    // 两次采样间隔太短时CPU差值噪声很大，直接复用上次结果
+    private static final long MIN_SAMPLE_GAP_MS = 250;
+
+    private static final SystemStatsSampler instance = new SystemStatsSampler();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, "SystemStats-Sampler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 以下字段由this保护
+    private boolean initialized;
+    private ProcFile stat;
+    private ProcFile meminfo;
+    private ProcFile[] cpuFreq;
+    private ProcFile[] thermalTemp;
+    private String[] thermalZone;
+    private String[] thermalType;
+    private boolean cpuAvailable;
+
+    // CPU：下标0为总体，1..n为各核
+    private long[] prevTotal;
+    private long[] prevIdle;
+    private float[] cpuUsage;
+    private long[] freqKhz;
+    private long memTotalKb;
+    private long memFreeKb;
+    private long memAvailableKb;
+    private long cachedKb;
+    private long swapTotalKb;
+    private long swapFreeKb;
+    private long[] thermalMilliC;
+    private long sampledAt;
+    private long sampledAtElapsed;
+    private ScheduledFuture<?> periodic;
+    private long periodMs;
+
+    private SystemStatsSampler() {
+    }
+
+    public static SystemStatsSampler getInstance() {
+        return instance;
+    }
+
+    /**
+     * 开启或关闭周期采样，intervalMs<=0表示关闭
+     */
+    public synchronized void setPeriodicInterval(long intervalMs) {
+        if (intervalMs == periodMs && (periodic != null) == (intervalMs > 0)) {
+            return;
+        }
+        if (periodic != null) {
+            periodic.cancel(false);
+            periodic = null;
+        }
+        periodMs = Math.max(0, intervalMs);
+        if (periodMs > 0) {
+            periodic = scheduler.scheduleWithFixedDelay(this::sample, 0, periodMs, TimeUnit.MILLISECONDS);
+            Log.d(TAG, "Periodic system sampling every " + periodMs + "ms");
+        }
+    }
+
+    /**
+     * 返回不早于maxAgeMs的采样结果（过旧时立即采样）
+     */
+    public synchronized JsonObject latest(long maxAgeMs) {
+        if (sampledAtElapsed == 0 || SystemClock.elapsedRealtime() - sampledAtElapsed > maxAgeMs) {
+            sample();
+        }
+        return toJson();
+    }
+
+    /**
+     * 采样一次所有指标
+     */
+    public synchronized void sample() {
+        if (sampledAtElapsed != 0 && SystemClock.elapsedRealtime() - sampledAtElapsed < MIN_SAMPLE_GAP_MS) {
+            return;
+        }
+        if (!initialized) {
+            init();
+        }
+        sampleCpu();
+        sampleMemory();
+        for (int i = 0; i < thermalTemp.length; i++) {
+            thermalMilliC[i] = thermalTemp[i].readLong(Long.MIN_VALUE);
+        }
+        sampledAt = System.currentTimeMillis();
+        sampledAtElapsed = SystemClock.elapsedRealtime();
+    }
+
+    private void init() {
+        int cores = countCores();
+        stat = new ProcFile("/proc/stat", 4096);
+        meminfo = new ProcFile("/proc/meminfo", 4096);
+        cpuFreq = new ProcFile[cores];
+        for (int i = 0; i < cores; i++) {
+            cpuFreq[i] = new ProcFile("/sys/devices/system/cpu/cpu" + i + "/cpufreq/scaling_cur_freq", 32);
+        }
+        prevTotal = new long[cores + 1];
+        prevIdle = new long[cores + 1];
+        cpuUsage = new float[cores + 1];
+        Arrays.fill(cpuUsage, -1);
+        freqKhz = new long[cores];
+
+        List<String> zones = listThermalZones();
+        thermalTemp = new ProcFile[zones.size()];
+        thermalZone = new String[zones.size()];
+        thermalType = new String[zones.size()];
+        thermalMilliC = new long[zones.size()];
+        for (int i = 0; i < zones.size(); i++) {
+            String dir = "/sys/class/thermal/" + zones.get(i);
+            thermalZone[i] = zones.get(i);
+            thermalType[i] = readString(dir + "/type");
+            thermalTemp[i] = new ProcFile(dir + "/temp", 32);
+        }
+        initialized = true;
+        Log.d(TAG, "System stats initialized: " + cores + " cores, " + zones.size() + " thermal zones");
+    }
+
+    private void sampleCpu() {
+        // /proc/stat 开头是 "cpu" 总体行和各 "cpuN" 行，之后的内容不需要
+        cpuAvailable = stat.read();
+        while (cpuAvailable && stat.hasRemaining() && stat.startsWith(CPU)) {
+            stat.skip(CPU.length);
+            int slot = stat.peekDigit() ? (int) stat.nextLong() + 1 : 0;
+            long user = stat.nextLong();
+            long nice = stat.nextLong();
+            long system = stat.nextLong();
+            long idle = stat.nextLong();
+            long iowait = stat.nextLong();
+            long irq = stat.nextLong();
+            long softirq = stat.nextLong();
+            long steal = stat.nextLong();
+            stat.nextLine();
+            if (slot >= prevTotal.length) {
+                continue;
+            }
+            long total = user + nice + system + idle + iowait + irq + softirq + steal;
+            long idleAll = idle + iowait;
+            long deltaTotal = total - prevTotal[slot];
+            long deltaIdle = idleAll - prevIdle[slot];
+            if (prevTotal[slot] != 0 && deltaTotal > 0) {
+                cpuUsage[slot] = 1f - (float) deltaIdle / deltaTotal;
+            }
+            prevTotal[slot] = total;
+            prevIdle[slot] = idleAll;
+        }
+        for (int i = 0; i < cpuFreq.length; i++) {
+            // 离线的核心没有频率
+            freqKhz[i] = cpuFreq[i].readLong(-1);
+        }
+    }
+
+    private void sampleMemory() {
+        if (!meminfo.read()) {
+            return;
+        }
+        while (meminfo.hasRemaining()) {
+            if (meminfo.startsWith(MEM_TOTAL)) {
+                meminfo.skip(MEM_TOTAL.length);
+                memTotalKb = meminfo.nextLong();
+            } else if (meminfo.startsWith(MEM_FREE)) {
+                meminfo.skip(MEM_FREE.length);
+                memFreeKb = meminfo.nextLong();
+            } else if (meminfo.startsWith(MEM_AVAILABLE)) {
+                meminfo.skip(MEM_AVAILABLE.length);
+                memAvailableKb = meminfo.nextLong();
+            } else if (meminfo.startsWith(CACHED)) {
+                meminfo.skip(CACHED.length);
+                cachedKb = meminfo.nextLong();
+            } else if (meminfo.startsWith(SWAP_TOTAL)) {
+                meminfo.skip(SWAP_TOTAL.length);
+                swapTotalKb = meminfo.nextLong();
+            } else if (meminfo.startsWith(SWAP_FREE)) {
+                meminfo.skip(SWAP_FREE.length);
+                swapFreeKb = meminfo.nextLong();
+            }
+            meminfo.nextLine();
+        }
+    }
+
+    private synchronized JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("sampledAt", sampledAt);
+        json.add("cpu", cpuJson());
+        json.add("memory", memoryJson());
+        json.add("thermal", thermalJson());
+        return json;
+    }
+
+    private JsonObject cpuJson() {
+        JsonObject cpu = new JsonObject();
+        // 部分系统禁止普通应用读取 /proc/stat，此时只有频率
+        cpu.addProperty("usageAvailable", cpuAvailable);
+        if (cpuUsage[0] >= 0) {
+            cpu.addProperty("usage", cpuUsage[0]);
+        }
+        JsonArray cores = new JsonArray();
+        for (int i = 0; i < freqKhz.length; i++) {
+            JsonObject core = new JsonObject();
+            core.addProperty("core", i);
+            if (cpuUsage[i + 1] >= 0) {
+                core.addProperty("usage", cpuUsage[i + 1]);
+            }
+            core.addProperty("online", freqKhz[i] >= 0);
+            if (freqKhz[i] >= 0) {
+                core.addProperty("freqKhz", freqKhz[i]);
+            }
+            cores.add(core);
+        }
+        cpu.add("cores", cores);
+        return cpu;
+    }
+
+    private JsonObject memoryJson() {
+        JsonObject memory = new JsonObject();
+        memory.addProperty("totalKb", memTotalKb);
+        memory.addProperty("freeKb", memFreeKb);
+        memory.addProperty("availableKb", memAvailableKb);
+        memory.addProperty("cachedKb", cachedKb);
+        memory.addProperty("swapTotalKb", swapTotalKb);
+        memory.addProperty("swapFreeKb", swapFreeKb);
+        return memory;
+    }
+
+    private JsonArray thermalJson() {
+        JsonArray zones = new JsonArray();
+        for (int i = 0; i < thermalTemp.length; i++) {
+            if (thermalMilliC[i] == Long.MIN_VALUE) {
+                continue;
+            }
+            JsonObject zone = new JsonObject();
+            zone.addProperty("zone", thermalZone[i]);
+            zone.addProperty("type", thermalType[i]);
+            // 大多数设备单位为毫摄氏度，少数直接给出摄氏度
+            long raw = thermalMilliC[i];
+            zone.addProperty("celsius", Math.abs(raw) >= 1000 ? raw / 1000.0 : raw);
+            zones.add(zone);
+        }
+        return zones;
+    }
+
+    private static int countCores() {
+        String[] names = new File("/sys/devices/system/cpu").list();
+        int cores = 0;
+        if (names != null) {
+            for (String name : names) {
+                if (name.matches("cpu\\d+")) {
+                    cores = Math.max(cores, Integer.parseInt(name.substring(3)) + 1);
+                }
+            }
+        }
+        return cores > 0 ? cores : Runtime.getRuntime().availableProcessors();
+    }
+
+    private static List<String> listThermalZones() {
+        List<String> zones = new ArrayList<>();
+        String[] names = new File("/sys/class/thermal").list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith("thermal_zone")) {
+                    zones.add(name);
+                }
+            }
+        }
+        zones.sort((a, b) -> Integer.compare(zoneNumber(a), zoneNumber(b)));
+        return zones;
+    }
+
+    private static int zoneNumber(String zone) {
+        try {
+            return Integer.parseInt(zone.substring("thermal_zone".length()));
+        } catch (NumberFormatException e) {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    private static String readString(String path) {
+        try {
+            return new String(Files.readAllBytes(new File(path).toPath()), StandardCharsets.UTF_8).trim();
+        } catch (IOException | SecurityException e) {
+            return "unknown";
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.atao.tdeviceservice.telemetry;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Process;
+import android.provider.Settings;
+import android.util.Log;
+
+import com.atao.tdeviceservice.battery.BatterySnapshot;
+import com.atao.tdeviceservice.server.AdmissionController;
+import com.atao.tdeviceservice.server.ServerMetrics;
+import com.atao.tdeviceservice.util.SystemCallExecutor;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 遥测推送 - 进程级单例
+ *
+ * 电池快照、应用包变化等事件先进入内存队列，按时间窗口（或攒够条数）打包成一个批次，
+ * gzip压缩后写入磁盘暂存区，再按时间顺序POST到收集端。
+ * 收集端不可达时批次留在暂存区，按指数退避重试；暂存区有大小上限，超出时丢弃最旧的批次。
+ * 所有工作都在一个后台线程上完成，record()只做入队；上传与退避由TelemetryUploader完成。
+ */
+public class TelemetryExporter {
+
+    private static final String TAG = "TelemetryExporter";
+    private static final int MAX_QUEUE = 5000;
+    private static final long SPOOL_MAX_BYTES = 4 * 1024 * 1024;
+    private static final int SPOOL_MAX_FILES = 500;
+
+    private static volatile TelemetryExporter instance;
+
+    private final Context context;
+    private final TelemetrySpool spool;
+    private final TelemetryUploader uploader;
+    private final LongSupplier clock;
+    private final ArrayBlockingQueue<JsonObject> queue = new ArrayBlockingQueue<>(MAX_QUEUE);
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, "Telemetry");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean flushPending = new AtomicBoolean();
+
+    private volatile String collectorUrl;
+    private volatile int maxBatchEvents;
+    private long batchIntervalMs;
+    private long batteryIntervalMs;
+    private ScheduledFuture<?> flushTask;
+    private ScheduledFuture<?> batteryTask;
+    private ScheduledFuture<?> retryTask;
+
+    // 只在遥测线程上读写
+    private long batchSequence;
+
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private TelemetryExporter(Context context) {
+        this.context = context.getApplicationContext();
+        this.clock = System::currentTimeMillis;
+        this.spool = new TelemetrySpool(new File(this.context.getFilesDir(), "telemetry_spool"),
+                SPOOL_MAX_BYTES, SPOOL_MAX_FILES);
+        this.uploader = new TelemetryUploader(spool, clock, TelemetryUploader.BACKOFF_MIN_MS,
+                TelemetryUploader.BACKOFF_MAX_MS);
+    }
+
+    public static TelemetryExporter getInstance(Context context) {
+        if (instance == null) {
+            synchronized (TelemetryExporter.class) {
+                if (instance == null) {
+                    instance = new TelemetryExporter(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 应用配置，url为空时停止推送（暂存区保留，下次开启后继续上传）
+     *
+     * @param batchIntervalMs 批次时间窗口，越大批次越大、延迟越高
+     * @param maxBatchEvents 批次内事件数达到该值时提前发送
+     * @param batteryIntervalMs 电池快照采样间隔，0表示不采样
+     */
+    public synchronized void configure(String url, long batchIntervalMs, int maxBatchEvents, long batteryIntervalMs) {
+        String normalized = url == null || url.trim().isEmpty() ? null : url.trim();
+        if (normalized == null) {
+            if (collectorUrl != null) {
+                Log.d(TAG, "Telemetry export disabled");
+            }
+            stop();
+            return;
+        }
+        boolean changed = !normalized.equals(collectorUrl) || batchIntervalMs != this.batchIntervalMs
+                || maxBatchEvents != this.maxBatchEvents || batteryIntervalMs != this.batteryIntervalMs;
+        if (!changed) {
+            return;
+        }
+        cancelTasks();
+        collectorUrl = normalized;
+        this.batchIntervalMs = Math.max(1000, batchIntervalMs);
+        this.maxBatchEvents = Math.max(1, maxBatchEvents);
+        this.batteryIntervalMs = batteryIntervalMs;
+        flushTask = scheduler.scheduleWithFixedDelay(this::closeWindow,
+                this.batchIntervalMs, this.batchIntervalMs, TimeUnit.MILLISECONDS);
+        if (batteryIntervalMs > 0) {
+            batteryTask = scheduler.scheduleWithFixedDelay(this::recordBattery,
+                    0, batteryIntervalMs, TimeUnit.MILLISECONDS);
+        }
+        // 上次遗留在暂存区的批次立即尝试上传
+        uploader.retryNow();
+        scheduler.execute(this::upload);
+        Log.d(TAG, "Telemetry export to " + normalized + " every " + this.batchIntervalMs
+                + "ms (max " + this.maxBatchEvents + " events)");
+    }
+
+    /**
+     * 停止推送，队列中的事件写入暂存区
+     */
+    public synchronized void stop() {
+        if (collectorUrl == null) {
+            return;
+        }
+        collectorUrl = null;
+        cancelTasks();
+        scheduler.execute(() -> spoolQueued(Integer.MAX_VALUE, false));
+    }
+
+    private void cancelTasks() {
+        for (ScheduledFuture<?> task : new ScheduledFuture<?>[]{flushTask, batteryTask, retryTask}) {
+            if (task != null) {
+                task.cancel(false);
+            }
+        }
+        flushTask = null;
+        batteryTask = null;
+        retryTask = null;
+    }
+
+    public boolean isEnabled() {
+        return collectorUrl != null;
+    }
+
+    /**
+     * 记录一个事件（任意线程调用，未开启时直接返回）
+     */
+    public void record(String type, JsonObject data) {
+        if (collectorUrl == null) {
+            return;
+        }
+        JsonObject event = new JsonObject();
+        event.addProperty("type", type);
+        event.addProperty("ts", clock.getAsLong());
+        event.add("data", data);
+        while (!queue.offer(event)) {
+            // 队列满时丢弃最旧的事件
+            if (queue.poll() != null) {
+                dropped.incrementAndGet();
+            }
+        }
+        recorded.incrementAndGet();
+        if (queue.size() >= maxBatchEvents && flushPending.compareAndSet(false, true)) {
+            scheduler.execute(this::flush);
+        }
+    }
+
+    /**
+     * 时间窗口结束：附上本窗口的运行指标后发送
+     */
+    private void closeWindow() {
+        if (collectorUrl == null) {
+            return;
+        }
+        record("metrics", collectMetrics());
+        flush();
+    }
+
+    /**
+     * 打包队列中的事件写入暂存区，然后上传
+     * 退避期间只打包满的批次，避免收集端不可达时每个时间窗口都产生一个小文件
+     */
+    private void flush() {
+        flushPending.set(false);
+        if (collectorUrl == null) {
+            return;
+        }
+        spoolQueued(maxBatchEvents, uploader.isBackingOff());
+        upload();
+    }
+
+    private void spoolQueued(int batchLimit, boolean fullOnly) {
+        while (queue.size() >= (fullOnly ? batchLimit : 1)) {
+            JsonArray events = new JsonArray();
+            JsonObject event;
+            while (events.size() < batchLimit && (event = queue.poll()) != null) {
+                events.add(event);
+            }
+            if (events.size() == 0) {
+                return;
+            }
+            JsonObject batch = new JsonObject();
+            batch.add("device", deviceInfo());
+            long now = clock.getAsLong();
+            batch.addProperty("batchId", Long.toHexString(now) + "-" + batchSequence++);
+            batch.addProperty("createdAt", now);
+            batch.add("events", events);
+            try {
+                int overflow = spool.write(gzip(batch.toString().getBytes(StandardCharsets.UTF_8)));
+                uploader.countOverflow(overflow);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to spool telemetry batch", e);
+                dropped.addAndGet(events.size());
+            }
+        }
+    }
+
+    /**
+     * 上传暂存区中的批次，失败时按上传器给出的退避时间安排重试
+     */
+    private void upload() {
+        String url = collectorUrl;
+        if (url == null) {
+            return;
+        }
+        long retryDelayMs = uploader.upload(url);
+        if (retryDelayMs < 0) {
+            return;
+        }
+        synchronized (this) {
+            if (collectorUrl != null) {
+                retryTask = scheduler.schedule(this::flush, retryDelayMs, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 电池快照事件，电池状态与HTTP接口共用系统调用键
+     */
+    private void recordBattery() {
+        try {
+            BatterySnapshot snapshot = BatterySnapshot.read(context);
+            JsonObject battery = snapshot.toJson();
+            if (snapshot.stale) {
+                battery.addProperty("stale", true);
+            }
+            record("battery", battery);
+        } catch (Exception e) {
+            Log.w(TAG, "Battery snapshot unavailable: " + e.getMessage());
+        }
+    }
+
+    private JsonObject collectMetrics() {
+        JsonObject metrics = new JsonObject();
+        metrics.add("server", ServerMetrics.getInstance().toJson());
+        metrics.add("systemCalls", SystemCallExecutor.getInstance().toJson());
+        metrics.add("admission", AdmissionController.getInstance().toJson());
+        return metrics;
+    }
+
+    private JsonObject deviceInfo() {
+        JsonObject device = new JsonObject();
+        device.addProperty("androidId", Settings.Secure.getString(context.getContentResolver(),
+                Settings.Secure.ANDROID_ID));
+        device.addProperty("manufacturer", Build.MANUFACTURER);
+        device.addProperty("model", Build.MODEL);
+        device.addProperty("sdk", Build.VERSION.SDK_INT);
+        return device;
+    }
+
+    /**
+     * 运行状态，供健康检查使用
+     */
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("enabled", collectorUrl != null);
+        if (collectorUrl != null) {
+            json.addProperty("collector", collectorUrl);
+        }
+        json.addProperty("queued", queue.size());
+        json.addProperty("recorded", recorded.get());
+        json.addProperty("dropped", dropped.get());
+        uploader.addTo(json);
+        return json;
+    }
+}
@@ -0,0 +1,110 @@
+package com.atao.tdeviceservice.telemetry;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * 遥测批次的磁盘暂存区
+ *
+ * 每个批次压缩后写成一个文件，上传成功后删除；收集端不可达时文件保留用于重试。
+ * 总大小或文件数超限时删除最旧的批次。文件名以创建时间开头，按名称排序即按时间排序。
+ */
+class TelemetrySpool {
+
+    private static final String TAG = "TelemetrySpool";
+    private static final String SUFFIX = ".json.gz";
+
+    private final File dir;
+    private final long maxBytes;
+    private final int maxFiles;
+    private int sequence;
+
+    TelemetrySpool(File dir, long maxBytes, int maxFiles) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.maxFiles = maxFiles;
+    }
+
+    /**
+     * 写入一个批次（先写临时文件再改名，进程被杀时不会留下半个批次）
+     *
+     * @return 因超限被删除的旧批次数
+     */
+    int write(byte[] batch) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create spool directory " + dir);
+        }
+        String name = String.format("%013d-%04d", System.currentTimeMillis(), sequence++ % 10000);
+        File tmp = new File(dir, name + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(batch);
+        }
+        if (!tmp.renameTo(new File(dir, name + SUFFIX))) {
+            tmp.delete();
+            throw new IOException("Cannot commit spool file " + name);
+        }
+        return trim();
+    }
+
+    /**
+     * 最旧的批次，没有时返回null
+     */
+    File oldest() {
+        File[] files = list();
+        return files.length > 0 ? files[0] : null;
+    }
+
+    byte[] read(File file) throws IOException {
+        return Files.readAllBytes(file.toPath());
+    }
+
+    void delete(File file) {
+        if (!file.delete() && file.exists()) {
+            Log.w(TAG, "Failed to delete spool file " + file.getName());
+        }
+    }
+
+    int count() {
+        return list().length;
+    }
+
+    long bytes() {
+        long total = 0;
+        for (File file : list()) {
+            total += file.length();
+        }
+        return total;
+    }
+
+    private int trim() {
+        File[] files = list();
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        int dropped = 0;
+        for (int i = 0; i < files.length && (files.length - i > maxFiles || total > maxBytes); i++) {
+            total -= files[i].length();
+            delete(files[i]);
+            dropped++;
+        }
+        if (dropped > 0) {
+            Log.w(TAG, "Spool full, dropped " + dropped + " oldest batches");
+        }
+        return dropped;
+    }
+
+    private File[] list() {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files, (a, b) -> a.getName().compareTo(b.getName()));
+        return files;
+    }
+}
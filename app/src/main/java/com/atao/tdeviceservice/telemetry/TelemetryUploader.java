@@ -0,0 +1,193 @@
+package com.atao.tdeviceservice.telemetry;
+
+import android.util.Log;
+
+import com.google.gson.JsonObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * 暂存区批次上传与退避
+ *
+ * 按时间顺序POST暂存区中的批次，失败时按指数退避（带抖动，遵循Retry-After）计算下次尝试时间。
+ * 不依赖Android框架，时钟和退避参数由TelemetryExporter传入，单元测试可直接构造。
+ */
+class TelemetryUploader {
+
+    private static final String TAG = "TelemetryUploader";
+    static final long BACKOFF_MIN_MS = 5000;
+    static final long BACKOFF_MAX_MS = 5 * 60 * 1000;
+    private static final int CONNECT_TIMEOUT_MS = 10000;
+    private static final int READ_TIMEOUT_MS = 10000;
+
+    private final TelemetrySpool spool;
+    private final LongSupplier clock;
+    private final long backoffMinMs;
+    private final long backoffMaxMs;
+
+    // 只在遥测线程上读写
+    private long backoffMs;
+
+    private volatile long nextAttemptAt;
+    private volatile String lastError;
+    private final AtomicLong batchesSent = new AtomicLong();
+    private final AtomicLong batchesFailed = new AtomicLong();
+    private final AtomicLong batchesDiscarded = new AtomicLong();
+
+    TelemetryUploader(TelemetrySpool spool, LongSupplier clock, long backoffMinMs, long backoffMaxMs) {
+        this.spool = spool;
+        this.clock = clock;
+        this.backoffMinMs = backoffMinMs;
+        this.backoffMaxMs = backoffMaxMs;
+    }
+
+    /**
+     * 是否处于退避期
+     */
+    boolean isBackingOff() {
+        return clock.getAsLong() < nextAttemptAt;
+    }
+
+    /**
+     * 取消退避等待（重新配置收集端时立即尝试上传）
+     */
+    void retryNow() {
+        nextAttemptAt = 0;
+    }
+
+    /**
+     * 暂存区超限丢弃的旧批次计入discarded
+     */
+    void countOverflow(int batches) {
+        batchesDiscarded.addAndGet(batches);
+    }
+
+    /**
+     * 按时间顺序上传暂存区中的批次
+     *
+     * @return 上传失败时返回距下次尝试的毫秒数；全部上传完或仍在退避期时返回-1
+     */
+    long upload(String url) {
+        if (isBackingOff()) {
+            return -1;
+        }
+        File file;
+        while ((file = spool.oldest()) != null) {
+            int status;
+            long retryAfterMs = -1;
+            try {
+                HttpURLConnection connection = post(url, spool.read(file));
+                status = connection.getResponseCode();
+                retryAfterMs = parseRetryAfter(connection.getHeaderField("Retry-After"));
+                drain(connection);
+            } catch (IOException e) {
+                status = -1;
+                lastError = e.getClass().getSimpleName() + ": " + e.getMessage();
+            }
+
+            if (status >= 200 && status < 300) {
+                spool.delete(file);
+                batchesSent.incrementAndGet();
+                backoffMs = 0;
+                lastError = null;
+                continue;
+            }
+            if (status >= 400 && status < 500 && status != 408 && status != 429) {
+                // 收集端拒绝该批次，重试也不会成功
+                Log.w(TAG, "Collector rejected batch " + file.getName() + " with HTTP " + status);
+                spool.delete(file);
+                batchesDiscarded.incrementAndGet();
+                lastError = "HTTP " + status;
+                continue;
+            }
+            if (status > 0) {
+                lastError = "HTTP " + status;
+            }
+            batchesFailed.incrementAndGet();
+            return backOff(retryAfterMs);
+        }
+        return -1;
+    }
+
+    private long backOff(long retryAfterMs) {
+        backoffMs = backoffMs == 0 ? backoffMinMs : Math.min(backoffMaxMs, backoffMs * 2);
+        long delay = Math.max(retryAfterMs, backoffMs + ThreadLocalRandom.current().nextLong(backoffMs / 5 + 1));
+        nextAttemptAt = clock.getAsLong() + delay;
+        Log.w(TAG, "Telemetry upload failed (" + lastError + "), retrying in " + delay + "ms");
+        return delay;
+    }
+
+    private static HttpURLConnection post(String url, byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        connection.setReadTimeout(READ_TIMEOUT_MS);
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(body.length);
+        connection.setRequestProperty("Content-Type", "application/json");
+        connection.setRequestProperty("Content-Encoding", "gzip");
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body);
+        }
+        return connection;
+    }
+
+    /**
+     * 读完响应体，连接才能回到keep-alive池中复用
+     */
+    private static void drain(HttpURLConnection connection) {
+        try (InputStream in = connection.getResponseCode() < 400
+                ? connection.getInputStream() : connection.getErrorStream()) {
+            if (in != null) {
+                byte[] buffer = new byte[1024];
+                while (in.read(buffer) != -1) {
+                    // 丢弃
+                }
+            }
+        } catch (IOException e) {
+            connection.disconnect();
+        }
+    }
+
+    static long parseRetryAfter(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    long nextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    /**
+     * 上传状态写入健康检查的telemetry字段
+     */
+    void addTo(JsonObject json) {
+        json.addProperty("batchesSent", batchesSent.get());
+        json.addProperty("batchesFailed", batchesFailed.get());
+        json.addProperty("batchesDiscarded", batchesDiscarded.get());
+        json.addProperty("spooledBatches", spool.count());
+        json.addProperty("spooledBytes", spool.bytes());
+        long wait = nextAttemptAt - clock.getAsLong();
+        if (wait > 0) {
+            json.addProperty("retryInMs", wait);
+        }
+        if (lastError != null) {
+            json.addProperty("lastError", lastError);
+        }
+    }
+}
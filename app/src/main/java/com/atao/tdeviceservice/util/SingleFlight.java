@@ -0,0 +1,110 @@
+package com.atao.tdeviceservice.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 请求合并 - 同一个key的并发计算只执行一次，其余调用方等待并共享同一结果
+ *
+ * execute()由第一个调用方在自己的线程上执行计算，后来者最多等待到该次计算开始后的timeoutMs；
+ * submit()把计算交给指定线程池，所有调用方拿到同一个Future。
+ * 超过timeoutMs仍未完成的计算视为卡死，之后的调用方不再等待它，而是重新发起一次计算。
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, Flight<V>> flights = new ConcurrentHashMap<>();
+
+    /**
+     * 执行或加入key对应的计算
+     *
+     * @throws TimeoutException 等待中的计算超过timeoutMs仍未完成
+     */
+    public V execute(K key, long timeoutMs, Callable<V> computation) throws Exception {
+        while (true) {
+            Flight<V> flight = new Flight<>();
+            Flight<V> existing = flights.putIfAbsent(key, flight);
+            if (existing == null) {
+                return lead(key, flight, computation);
+            }
+
+            long elapsed = System.currentTimeMillis() - existing.startedAt;
+            if (elapsed >= timeoutMs) {
+                // 已卡死的计算不再阻塞新的调用方
+                flights.remove(key, existing);
+                continue;
+            }
+            try {
+                return existing.future.get(timeoutMs - elapsed, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 异步执行或加入key对应的计算
+     */
+    public CompletableFuture<V> submit(K key, long timeoutMs, Executor executor, Callable<V> computation) {
+        while (true) {
+            Flight<V> flight = new Flight<>();
+            Flight<V> existing = flights.putIfAbsent(key, flight);
+            if (existing == null) {
+                try {
+                    executor.execute(() -> {
+                        try {
+                            lead(key, flight, computation);
+                        } catch (Exception ignored) {
+                            // 异常已通过Future传递给调用方
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    flights.remove(key, flight);
+                    flight.future.completeExceptionally(e);
+                }
+                return flight.future;
+            }
+
+            if (System.currentTimeMillis() - existing.startedAt >= timeoutMs) {
+                flights.remove(key, existing);
+                continue;
+            }
+            return existing.future;
+        }
+    }
+
+    /**
+     * 当前正在进行的计算数量
+     */
+    public int inFlightCount() {
+        return flights.size();
+    }
+
+    private V lead(K key, Flight<V> flight, Callable<V> computation) throws Exception {
+        try {
+            V value = computation.call();
+            flight.future.complete(value);
+            return value;
+        } catch (Throwable t) {
+            // 包括Error（如OutOfMemoryError），否则等待者会一直等到超时
+            flight.future.completeExceptionally(t);
+            throw t;
+        } finally {
+            flights.remove(key, flight);
+        }
+    }
+
+    private static final class Flight<V> {
+        final CompletableFuture<V> future = new CompletableFuture<>();
+        final long startedAt = System.currentTimeMillis();
+    }
+}
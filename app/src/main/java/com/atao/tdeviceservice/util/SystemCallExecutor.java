@@ -0,0 +1,184 @@
+package com.atao.tdeviceservice.util;
+
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.google.gson.JsonObject;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 系统服务调用隔离 - 进程级单例
+ *
+ * PackageManager/BatteryManager等Binder调用在专用线程池上执行，请求线程只等待到截止时间。
+ * 超时时返回该key上一次成功的结果并标记为过期，原调用继续在后台完成并刷新结果。
+ * 旧值超过MAX_STALENESS_MS后不再使用；等待队列有上限，队列满时新调用直接失败（同样按旧值兜底）。
+ * 相同key的并发调用通过SingleFlight合并。
+ */
+public class SystemCallExecutor {
+
+    private static final String TAG = "SystemCallExecutor";
+    private static final int POOL_SIZE = 4;
+    private static final int LAST_KNOWN_CAPACITY = 1024;
+    // 超过该时间仍未返回的调用视为卡死，不再让新请求等待它
+    private static final long STUCK_TIMEOUT_MS = 30000;
+    // 旧值最长使用时间，超过后超时直接报错而不返回过旧的数据
+    private static final long MAX_STALENESS_MS = 5 * 60 * 1000;
+    // 等待执行的调用上限（Binder卡住时不无限堆积）
+    private static final int QUEUE_CAPACITY = 64;
+
+    /** 默认单次调用截止时间 */
+    public static final long DEFAULT_DEADLINE_MS = 1000;
+
+    private static final SystemCallExecutor instance = new SystemCallExecutor();
+
+    private final AtomicInteger threadCount = new AtomicInteger();
+    // 队列满时拒绝新调用，SingleFlight以RejectedExecutionException结束对应的Future
+    private final ExecutorService executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(QUEUE_CAPACITY), runnable -> {
+                Thread thread = new Thread(runnable, "SystemCall-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.AbortPolicy());
+    private final SingleFlight<String, Object> flights = new SingleFlight<>();
+    private final LruCache<String, Known> lastKnown = new LruCache<>(LAST_KNOWN_CAPACITY);
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong staleServed = new AtomicLong();
+    private final AtomicLong staleExpired = new AtomicLong();
+
+    private SystemCallExecutor() {
+    }
+
+    public static SystemCallExecutor getInstance() {
+        return instance;
+    }
+
+    /**
+     * 在系统调用线程池上执行（相同key合并），不保留结果
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> submit(String key, Callable<T> call) {
+        Callable<T> task = call;
+        if (Tracer.isEnabled()) {
+            task = () -> {
+                try (Tracer.Span span = Tracer.begin("systemCall", key)) {
+                    return call.call();
+                }
+            };
+        }
+        return (CompletableFuture<T>) flights.submit(key, STUCK_TIMEOUT_MS, executor, (Callable<Object>) task);
+    }
+
+    /**
+     * 带截止时间的调用，成功结果记为该key的最新值
+     *
+     * @throws TimeoutException 超过截止时间且没有可用的旧值
+     */
+    public <T> Result<T> call(String key, long deadlineMs, Callable<T> call) throws Exception {
+        return call(key, deadlineMs, call, true);
+    }
+
+    /**
+     * 带截止时间的调用
+     *
+     * @param remember 是否保留结果作为超时时的旧值（大对象如Drawable不应保留）
+     * @throws TimeoutException 超过截止时间且没有可用的旧值
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Result<T> call(String key, long deadlineMs, Callable<T> call, boolean remember) throws Exception {
+        CompletableFuture<T> future = submit(key, () -> {
+            T value = call.call();
+            if (remember && value != null) {
+                lastKnown.put(key, new Known(value, SystemClock.elapsedRealtime()));
+            }
+            return value;
+        });
+        try (Tracer.Span span = Tracer.begin("systemCall.wait", key)) {
+            return new Result<>(future.get(deadlineMs, TimeUnit.MILLISECONDS), false);
+        } catch (TimeoutException e) {
+            timeouts.incrementAndGet();
+            return staleOrThrow(key, remember, "missed " + deadlineMs + "ms deadline",
+                    new TimeoutException("System service call timed out: " + key));
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RejectedExecutionException) {
+                rejected.incrementAndGet();
+                return staleOrThrow(key, remember, "rejected (queue full)", (RejectedExecutionException) cause);
+            }
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 未在期限内拿到结果时，返回不超过MAX_STALENESS_MS的旧值，否则抛出failure
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Result<T> staleOrThrow(String key, boolean remember, String reason, Exception failure)
+            throws Exception {
+        Known last = remember ? lastKnown.get(key) : null;
+        if (last != null) {
+            if (SystemClock.elapsedRealtime() - last.at <= MAX_STALENESS_MS) {
+                staleServed.incrementAndGet();
+                Log.w(TAG, "System call " + key + " " + reason + ", serving stale value");
+                return new Result<>((T) last.value, true);
+            }
+            lastKnown.remove(key);
+            staleExpired.incrementAndGet();
+        }
+        throw failure;
+    }
+
+    /**
+     * 运行统计，供健康检查使用
+     */
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("inFlight", flights.inFlightCount());
+        json.addProperty("timeouts", timeouts.get());
+        json.addProperty("rejected", rejected.get());
+        json.addProperty("staleServed", staleServed.get());
+        json.addProperty("staleExpired", staleExpired.get());
+        return json;
+    }
+
+    /**
+     * 上一次成功的结果及其时间（elapsedRealtime）
+     */
+    private static final class Known {
+        final Object value;
+        final long at;
+
+        Known(Object value, long at) {
+            this.value = value;
+            this.at = at;
+        }
+    }
+
+    /**
+     * 调用结果，stale为true表示截止时间内未返回，value是上一次的结果
+     */
+    public static final class Result<T> {
+        public final T value;
+        public final boolean stale;
+
+        Result(T value, boolean stale) {
+            this.value = value;
+            this.stale = stale;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.atao.tdeviceservice.util;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 请求链路追踪
+ *
+ * 开启时每个区段同时写入 android.os.Trace（systrace/Perfetto可见）和内存环形缓冲区，
+ * 缓冲区可导出为Chrome trace-event JSON。
+ * 关闭时begin()只读一个volatile字段并返回共享的空区段，不分配对象、不拼接字符串。
+ *
+ * 用法：try (Tracer.Span span = Tracer.begin("encode")) { ... }
+ */
+public final class Tracer {
+
+    private static final int CAPACITY = 4096;
+    private static final int MASK = CAPACITY - 1;
+    /** android.os.Trace的区段名上限 */
+    private static final int MAX_SECTION_NAME = 127;
+
+    private static volatile boolean enabled;
+    private static volatile long enabledAt;
+
+    private static final AtomicReferenceArray<Record> ring = new AtomicReferenceArray<>(CAPACITY);
+    private static final AtomicLong cursor = new AtomicLong();
+
+    private Tracer() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 开启或关闭追踪，开启时清空缓冲区
+     */
+    public static void setEnabled(boolean on) {
+        if (on && !enabled) {
+            clear();
+            enabledAt = SystemClock.elapsedRealtimeNanos();
+        }
+        enabled = on;
+    }
+
+    /**
+     * 开始一个区段
+     */
+    public static Span begin(String name) {
+        if (!enabled) {
+            return Span.NOOP;
+        }
+        return new Span(name, null);
+    }
+
+    /**
+     * 开始一个带详情的区段（如路径、包名），名称只在开启时拼接
+     */
+    public static Span begin(String name, String detail) {
+        if (!enabled) {
+            return Span.NOOP;
+        }
+        return new Span(name, detail);
+    }
+
+    public static void clear() {
+        for (int i = 0; i < CAPACITY; i++) {
+            ring.set(i, null);
+        }
+    }
+
+    /**
+     * 导出缓冲区中的区段为Chrome trace-event JSON（按开始时间排序由查看器完成）
+     */
+    public static JsonObject toChromeTrace() {
+        JsonArray events = new JsonArray();
+        int pid = Process.myPid();
+        long end = cursor.get();
+        for (long i = Math.max(0, end - CAPACITY); i < end; i++) {
+            Record record = ring.get((int) (i & MASK));
+            if (record == null) {
+                continue;
+            }
+            JsonObject event = new JsonObject();
+            event.addProperty("name", record.name);
+            event.addProperty("cat", "tdevice");
+            event.addProperty("ph", "X");
+            event.addProperty("ts", record.startNanos / 1000);
+            event.addProperty("dur", Math.max(1, record.durationNanos / 1000));
+            event.addProperty("pid", pid);
+            event.addProperty("tid", record.tid);
+            if (record.detail != null) {
+                JsonObject args = new JsonObject();
+                args.addProperty("detail", record.detail);
+                event.add("args", args);
+            }
+            events.add(event);
+        }
+        JsonObject trace = new JsonObject();
+        trace.add("traceEvents", events);
+        trace.addProperty("displayTimeUnit", "ms");
+        return trace;
+    }
+
+    /**
+     * 状态，供追踪接口返回
+     */
+    public static JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("enabled", enabled);
+        json.addProperty("capacity", CAPACITY);
+        json.addProperty("recorded", cursor.get());
+        if (enabled) {
+            json.addProperty("enabledForMs", (SystemClock.elapsedRealtimeNanos() - enabledAt) / 1_000_000);
+        }
+        return json;
+    }
+
+    private static void record(Record record) {
+        ring.set((int) (cursor.getAndIncrement() & MASK), record);
+    }
+
+    /**
+     * 追踪区段，必须在开始它的线程上关闭
+     */
+    public static class Span implements AutoCloseable {
+
+        static final Span NOOP = new Span();
+
+        private final String name;
+        private final String detail;
+        private final long startNanos;
+        private final int tid;
+
+        private Span() {
+            this.name = null;
+            this.detail = null;
+            this.startNanos = 0;
+            this.tid = 0;
+        }
+
+        private Span(String name, String detail) {
+            this.name = name;
+            this.detail = detail;
+            this.tid = Process.myTid();
+            String section = detail != null ? name + " " + detail : name;
+            Trace.beginSection(section.length() > MAX_SECTION_NAME
+                    ? section.substring(0, MAX_SECTION_NAME) : section);
+            this.startNanos = SystemClock.elapsedRealtimeNanos();
+        }
+
+        @Override
+        public void close() {
+            if (name == null) {
+                return;
+            }
+            long duration = SystemClock.elapsedRealtimeNanos() - startNanos;
+            Trace.endSection();
+            record(new Record(name, detail, startNanos, duration, tid));
+        }
+    }
+
+    private static final class Record {
+        final String name;
+        final String detail;
+        final long startNanos;
+        final long durationNanos;
+        final int tid;
+
+        Record(String name, String detail, long startNanos, long durationNanos, int tid) {
+            this.name = name;
+            this.detail = detail;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+            this.tid = tid;
+        }
+    }
+}
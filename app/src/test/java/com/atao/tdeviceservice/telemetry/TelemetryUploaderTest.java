@@ -0,0 +1,182 @@
+package com.atao.tdeviceservice.telemetry;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 暂存区上传测试：本地桩收集端按脚本返回状态码，时钟由测试推进
+ */
+public class TelemetryUploaderTest {
+
+    private static final long BACKOFF_MIN_MS = 1000;
+    private static final long BACKOFF_MAX_MS = 8000;
+
+    private HttpServer collector;
+    private String url;
+    // 桩收集端依次使用的响应，用完后返回200
+    private final ConcurrentLinkedQueue<int[]> responses = new ConcurrentLinkedQueue<>();
+    private final List<String> received = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicLong now = new AtomicLong(1_700_000_000_000L);
+    private File spoolDir;
+    private TelemetrySpool spool;
+    private TelemetryUploader uploader;
+
+    @Before
+    public void setUp() throws IOException {
+        collector = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        collector.createContext("/collect", exchange -> {
+            try (InputStream in = new GZIPInputStream(exchange.getRequestBody())) {
+                received.add(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+            int[] response = responses.poll();
+            int status = response != null ? response[0] : 200;
+            if (response != null && response[1] > 0) {
+                exchange.getResponseHeaders().set("Retry-After", String.valueOf(response[1]));
+            }
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+        });
+        collector.start();
+        url = "http://127.0.0.1:" + collector.getAddress().getPort() + "/collect";
+
+        spoolDir = Files.createTempDirectory("telemetry-spool").toFile();
+        spool = new TelemetrySpool(spoolDir, 1024 * 1024, 100);
+        uploader = new TelemetryUploader(spool, now::get, BACKOFF_MIN_MS, BACKOFF_MAX_MS);
+    }
+
+    @After
+    public void tearDown() {
+        collector.stop(0);
+        File[] files = spoolDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        spoolDir.delete();
+    }
+
+    @Test
+    public void unavailableCollectorKeepsBatchSpooledAndBacksOff() throws IOException {
+        spool.write(gzip("{\"batch\":1}"));
+        responses.add(new int[]{503, 0});
+
+        long delay = uploader.upload(url);
+
+        assertTrue("delay " + delay, delay >= BACKOFF_MIN_MS && delay <= BACKOFF_MIN_MS * 6 / 5);
+        assertEquals(1, spool.count());
+        assertEquals(1, received.size());
+        assertTrue(uploader.isBackingOff());
+
+        // 退避期内不再请求收集端
+        assertEquals(-1, uploader.upload(url));
+        assertEquals(1, received.size());
+    }
+
+    @Test
+    public void retryAfterExtendsBackoff() throws IOException {
+        spool.write(gzip("{\"batch\":1}"));
+        responses.add(new int[]{503, 30});
+
+        long delay = uploader.upload(url);
+
+        assertEquals(30_000, delay);
+        assertEquals(now.get() + 30_000, uploader.nextAttemptAt());
+        now.addAndGet(BACKOFF_MAX_MS);
+        assertTrue(uploader.isBackingOff());
+    }
+
+    @Test
+    public void backoffDoublesUpToMaximum() throws IOException {
+        spool.write(gzip("{\"batch\":1}"));
+        long expected = BACKOFF_MIN_MS;
+        for (int i = 0; i < 5; i++) {
+            responses.add(new int[]{503, 0});
+            long delay = uploader.upload(url);
+            assertTrue("attempt " + i + " delay " + delay, delay >= expected && delay <= expected * 6 / 5);
+            now.addAndGet(delay);
+            expected = Math.min(BACKOFF_MAX_MS, expected * 2);
+        }
+    }
+
+    @Test
+    public void spooledBatchesAreDeliveredInOrderAfterRecovery() throws IOException {
+        spool.write(gzip("{\"batch\":1}"));
+        spool.write(gzip("{\"batch\":2}"));
+        responses.add(new int[]{503, 0});
+
+        long delay = uploader.upload(url);
+        assertTrue(delay > 0);
+        spool.write(gzip("{\"batch\":3}"));
+        assertEquals(3, spool.count());
+
+        now.addAndGet(delay);
+        assertEquals(-1, uploader.upload(url));
+
+        assertEquals(0, spool.count());
+        assertFalse(uploader.isBackingOff());
+        // 第一次失败的批次1，之后按写入顺序重新发送
+        assertEquals(List.of("{\"batch\":1}", "{\"batch\":1}", "{\"batch\":2}", "{\"batch\":3}"), received);
+
+        // 成功后退避重新从最小值开始
+        spool.write(gzip("{\"batch\":4}"));
+        responses.add(new int[]{503, 0});
+        delay = uploader.upload(url);
+        assertTrue("delay " + delay, delay >= BACKOFF_MIN_MS && delay <= BACKOFF_MIN_MS * 6 / 5);
+    }
+
+    @Test
+    public void rejectedBatchIsDiscardedAndNextOneSent() throws IOException {
+        spool.write(gzip("{\"batch\":1}"));
+        spool.write(gzip("{\"batch\":2}"));
+        responses.add(new int[]{400, 0});
+
+        assertEquals(-1, uploader.upload(url));
+
+        assertEquals(0, spool.count());
+        assertEquals(2, received.size());
+        assertFalse(uploader.isBackingOff());
+    }
+
+    @Test
+    public void unreachableCollectorBacksOff() throws IOException {
+        spool.write(gzip("{\"batch\":1}"));
+        collector.stop(0);
+
+        long delay = uploader.upload(url);
+
+        assertTrue(delay >= BACKOFF_MIN_MS);
+        assertEquals(1, spool.count());
+    }
+
+    private static byte[] gzip(String json) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(json.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,36 @@
+package com.atao.tdeviceservice.gateway;
+
+import java.net.URI;
+
+/**
+ * 一台设备：名称（通常是adb序列号）和该设备ApiServer在主机上可访问的地址
+ */
+public final class Device {
+
+    public final String name;
+    public final URI baseUri;
+
+    public Device(String name, String host, int port) {
+        this.name = name;
+        this.baseUri = URI.create("http://" + host + ":" + port);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Device)) {
+            return false;
+        }
+        Device device = (Device) other;
+        return name.equals(device.name) && baseUri.equals(device.baseUri);
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode() * 31 + baseUri.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + baseUri + ")";
+    }
+}
@@ -0,0 +1,202 @@
+package com.atao.tdeviceservice.gateway;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * 设备发现
+ *
+ * 两个来源可以同时使用，名称相同时配置文件优先：
+ * 1. 配置文件，每行 "名称 主机:端口"，#开头为注释；
+ * 2. adb forward --list 中转发到设备 tcp:8080 或 localabstract:tdevice 的条目，名称为序列号。
+ * 设备列表按刷新间隔在后台线程重新读取，设备插拔后无需重启网关；
+ * 请求线程只在首次加载时等待，之后总是直接返回上一次的列表，不等adb。
+ */
+public class DeviceRegistry {
+
+    private static final Logger LOG = Logger.getLogger("DeviceRegistry");
+    private static final long DEFAULT_ADB_TIMEOUT_MS = 5000;
+
+    private final Path configFile;
+    private final String adbPath;
+    private final long refreshIntervalMs;
+    private final long adbTimeoutMs;
+
+    private final ExecutorService refresher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "DeviceRegistry");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean refreshQueued = new AtomicBoolean();
+
+    private volatile List<Device> devices = Collections.emptyList();
+    private volatile long refreshedAt;
+
+    /**
+     * @param configFile 配置文件，null表示不使用
+     * @param adbPath adb可执行文件，null表示不读取adb转发
+     */
+    public DeviceRegistry(Path configFile, String adbPath, long refreshIntervalMs) {
+        this(configFile, adbPath, refreshIntervalMs, DEFAULT_ADB_TIMEOUT_MS);
+    }
+
+    DeviceRegistry(Path configFile, String adbPath, long refreshIntervalMs, long adbTimeoutMs) {
+        this.configFile = configFile;
+        this.adbPath = adbPath;
+        this.refreshIntervalMs = refreshIntervalMs;
+        this.adbTimeoutMs = adbTimeoutMs;
+    }
+
+    /**
+     * 当前设备列表；超过刷新间隔时交给后台线程重新发现，本次仍返回上一次的列表
+     */
+    public List<Device> getDevices() {
+        if (refreshedAt == 0) {
+            // 尚未加载过，同步加载一次
+            refresh();
+        } else if (System.currentTimeMillis() - refreshedAt > refreshIntervalMs
+                && refreshQueued.compareAndSet(false, true)) {
+            try {
+                refresher.execute(() -> {
+                    try {
+                        refresh();
+                    } finally {
+                        refreshQueued.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // 已关闭
+                refreshQueued.set(false);
+            }
+        }
+        return devices;
+    }
+
+    /**
+     * 停止后台刷新
+     */
+    public void close() {
+        refresher.shutdownNow();
+    }
+
+    public synchronized void refresh() {
+        if (System.currentTimeMillis() - refreshedAt <= refreshIntervalMs && refreshedAt != 0) {
+            return;
+        }
+        Map<String, Device> found = new LinkedHashMap<>();
+        if (adbPath != null) {
+            for (Device device : readAdbForwards()) {
+                found.put(device.name, device);
+            }
+        }
+        if (configFile != null) {
+            for (Device device : readConfig()) {
+                found.put(device.name, device);
+            }
+        }
+        List<Device> list = Collections.unmodifiableList(new ArrayList<>(found.values()));
+        if (!list.equals(devices)) {
+            LOG.info("Devices: " + list.size() + " " + list);
+        }
+        devices = list;
+        refreshedAt = System.currentTimeMillis();
+    }
+
+    private List<Device> readConfig() {
+        List<Device> result = new ArrayList<>();
+        try {
+            for (String line : Files.readAllLines(configFile, StandardCharsets.UTF_8)) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("\\s+");
+                Device device = parts.length == 2 ? parseAddress(parts[0], parts[1]) : null;
+                if (device == null) {
+                    LOG.warning("Ignoring config line: " + line);
+                    continue;
+                }
+                result.add(device);
+            }
+        } catch (IOException e) {
+            LOG.warning("Failed to read device config " + configFile + ": " + e.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * 运行 adb forward --list，输出写入临时文件，进程结束后再读取；
+     * adb卡住（守护进程启动中、设备未授权等）时超时强制结束，不阻塞刷新
+     */
+    private List<Device> readAdbForwards() {
+        List<Device> result = new ArrayList<>();
+        File output = null;
+        try {
+            output = File.createTempFile("adb-forward", ".txt");
+            Process process = new ProcessBuilder(adbPath, "forward", "--list")
+                    .redirectErrorStream(true)
+                    .redirectOutput(output)
+                    .start();
+            if (!process.waitFor(adbTimeoutMs, TimeUnit.MILLISECONDS)) {
+                process.destroyForcibly();
+                LOG.warning("adb forward --list timed out after " + adbTimeoutMs + "ms");
+                return result;
+            }
+            for (String line : Files.readAllLines(output.toPath(), StandardCharsets.UTF_8)) {
+                Device device = parseForward(line);
+                if (device != null) {
+                    result.add(device);
+                }
+            }
+        } catch (IOException e) {
+            LOG.warning("Failed to run adb forward --list: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (output != null && !output.delete()) {
+                output.deleteOnExit();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 解析一行转发记录，格式："序列号 tcp:本地端口 远端"，只接受转发到ApiServer的条目
+     */
+    static Device parseForward(String line) {
+        String[] parts = line.trim().split("\\s+");
+        if (parts.length != 3 || !parts[1].startsWith("tcp:")) {
+            return null;
+        }
+        if (!"tcp:8080".equals(parts[2]) && !"localabstract:tdevice".equals(parts[2])) {
+            return null;
+        }
+        return parseAddress(parts[0], "127.0.0.1:" + parts[1].substring(4));
+    }
+
+    private static Device parseAddress(String name, String address) {
+        int colon = address.lastIndexOf(':');
+        if (colon <= 0) {
+            return null;
+        }
+        try {
+            return new Device(name, address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.atao.tdeviceservice.gateway;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 并行分发请求到多台设备并合并结果
+ *
+ * 所有设备共用一个HttpClient，它按主机维护HTTP/1.1长连接池，轮询时不会反复建连。
+ * 每台设备有独立的超时，慢设备或离线设备只影响自己的条目。
+ * 回调线程池由本类持有，网关停止时调用close()关闭。
+ */
+public class FanoutClient {
+
+    private final HttpClient client;
+    private final ExecutorService executor;
+    private final Duration timeout;
+
+    public FanoutClient(long timeoutMs, int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.timeout = Duration.ofMillis(timeoutMs);
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "Fanout-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .executor(executor)
+                .build();
+    }
+
+    /**
+     * 关闭回调线程池，未完成的请求不再等待
+     */
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 向所有设备发送同一个GET请求，返回合并后的JSON：
+     * {"elapsedMs":..., "devices":{"名称":{"ok":true,"status":200,"latencyMs":12,"body":{...}}, ...}}
+     */
+    public String fanout(List<Device> devices, String pathAndQuery) {
+        long start = System.nanoTime();
+        List<CompletableFuture<String>> results = new ArrayList<>(devices.size());
+        for (Device device : devices) {
+            results.add(request(device, pathAndQuery));
+        }
+
+        StringBuilder merged = new StringBuilder(256 + devices.size() * 256);
+        merged.append("{\"devices\":{");
+        for (int i = 0; i < devices.size(); i++) {
+            if (i > 0) {
+                merged.append(',');
+            }
+            merged.append(Json.quote(devices.get(i).name)).append(':').append(results.get(i).join());
+        }
+        merged.append("},\"deviceCount\":").append(devices.size())
+                .append(",\"elapsedMs\":").append(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+                .append(",\"timestamp\":").append(System.currentTimeMillis())
+                .append('}');
+        return merged.toString();
+    }
+
+    /**
+     * 单台设备的请求，结果总是正常完成（失败时返回带error的条目）
+     */
+    private CompletableFuture<String> request(Device device, String pathAndQuery) {
+        long start = System.nanoTime();
+        HttpRequest request = HttpRequest.newBuilder(device.baseUri.resolve(pathAndQuery))
+                .timeout(timeout)
+                .header("Accept", "application/json")
+                .GET()
+                .build();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                // 请求超时只覆盖到收到响应头，整体再加一道超时
+                .orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .handle((response, error) -> {
+                    long latencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    if (error != null) {
+                        return failure(error, latencyMs);
+                    }
+                    return "{\"ok\":" + (response.statusCode() == 200)
+                            + ",\"status\":" + response.statusCode()
+                            + ",\"latencyMs\":" + latencyMs
+                            + ",\"body\":" + Json.embed(response.body()) + "}";
+                });
+    }
+
+    private static String failure(Throwable error, long latencyMs) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        String message;
+        if (cause instanceof TimeoutException || cause instanceof HttpTimeoutException) {
+            message = "timeout";
+        } else {
+            message = cause.getClass().getSimpleName() + (cause.getMessage() != null ? ": " + cause.getMessage() : "");
+        }
+        return "{\"ok\":false,\"latencyMs\":" + latencyMs + ",\"error\":" + Json.quote(message) + "}";
+    }
+}
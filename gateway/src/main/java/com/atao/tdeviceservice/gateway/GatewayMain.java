@@ -0,0 +1,89 @@
+package com.atao.tdeviceservice.gateway;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * 网关入口
+ *
+ * 参数：
+ * --port 9090          监听端口
+ * --bind 127.0.0.1     监听地址
+ * --config 文件        设备配置文件
+ * --adb 路径           读取adb forward（未指定--config时默认使用 adb）
+ * --timeout-ms 2000    单台设备超时
+ * --cache-ttl-ms 1000  合并结果缓存时间，0为不缓存
+ * --refresh-ms 10000   设备列表刷新间隔
+ * --threads 16         请求处理和分发线程数
+ */
+public class GatewayMain {
+
+    public static void main(String[] args) throws IOException {
+        int port = 9090;
+        String bind = "127.0.0.1";
+        Path config = null;
+        String adb = null;
+        long timeoutMs = 2000;
+        long cacheTtlMs = 1000;
+        long refreshMs = 10000;
+        int threads = 16;
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (i + 1 >= args.length) {
+                usage("Missing value for " + arg);
+            }
+            String value = args[++i];
+            try {
+                switch (arg) {
+                    case "--port":
+                        port = Integer.parseInt(value);
+                        break;
+                    case "--bind":
+                        bind = value;
+                        break;
+                    case "--config":
+                        config = Paths.get(value);
+                        break;
+                    case "--adb":
+                        adb = value;
+                        break;
+                    case "--timeout-ms":
+                        timeoutMs = Long.parseLong(value);
+                        break;
+                    case "--cache-ttl-ms":
+                        cacheTtlMs = Long.parseLong(value);
+                        break;
+                    case "--refresh-ms":
+                        refreshMs = Long.parseLong(value);
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(value);
+                        break;
+                    default:
+                        usage("Unknown option " + arg);
+                }
+            } catch (NumberFormatException e) {
+                usage("Invalid number for " + arg + ": " + value);
+            }
+        }
+        if (config == null && adb == null) {
+            adb = "adb";
+        }
+
+        DeviceRegistry registry = new DeviceRegistry(config, adb, refreshMs);
+        registry.refresh();
+        GatewayServer server = new GatewayServer(bind, port, threads, registry,
+                new FanoutClient(timeoutMs, threads), new ResponseCache(cacheTtlMs));
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "GatewayShutdown"));
+        server.start();
+    }
+
+    private static void usage(String error) {
+        System.err.println(error);
+        System.err.println("Usage: gateway [--port 9090] [--bind 127.0.0.1] [--config devices.txt] [--adb adb]"
+                + " [--timeout-ms 2000] [--cache-ttl-ms 1000] [--refresh-ms 10000] [--threads 16]");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,138 @@
+package com.atao.tdeviceservice.gateway;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 网关HTTP服务
+ *
+ * GET /health                  网关状态
+ * GET /devices                 当前发现的设备
+ * GET /fanout/api/...?...      把 /api/...?... 并行发给所有设备，返回合并结果
+ *                              devices=名称1,名称2 只发给指定设备（该参数不转发）
+ */
+public class GatewayServer {
+
+    private static final Logger LOG = Logger.getLogger("GatewayServer");
+    private static final String FANOUT_PREFIX = "/fanout";
+
+    private final DeviceRegistry registry;
+    private final FanoutClient client;
+    private final ResponseCache cache;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public GatewayServer(String bindAddress, int port, int threads, DeviceRegistry registry,
+                         FanoutClient client, ResponseCache cache) throws IOException {
+        this.registry = registry;
+        this.client = client;
+        this.cache = cache;
+        this.server = HttpServer.create(new InetSocketAddress(bindAddress, port), 0);
+        this.executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext("/health", exchange -> send(exchange, 200,
+                "{\"status\":\"ok\",\"deviceCount\":" + registry.getDevices().size() + "}"));
+        server.createContext("/devices", this::handleDevices);
+        server.createContext(FANOUT_PREFIX + "/", this::handleFanout);
+    }
+
+    public void start() {
+        server.start();
+        LOG.info("Gateway listening on " + server.getAddress());
+    }
+
+    /**
+     * 实际监听端口（以端口0启动时由系统分配）
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+        client.close();
+        registry.close();
+    }
+
+    private void handleDevices(HttpExchange exchange) throws IOException {
+        StringBuilder json = new StringBuilder("{\"devices\":[");
+        List<Device> devices = registry.getDevices();
+        for (int i = 0; i < devices.size(); i++) {
+            Device device = devices.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"name\":").append(Json.quote(device.name))
+                    .append(",\"url\":").append(Json.quote(device.baseUri.toString())).append('}');
+        }
+        json.append("]}");
+        send(exchange, 200, json.toString());
+    }
+
+    private void handleFanout(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, "{\"error\":\"Only GET is supported\"}");
+                return;
+            }
+            String path = exchange.getRequestURI().getRawPath().substring(FANOUT_PREFIX.length());
+            if (!path.startsWith("/api/")) {
+                send(exchange, 404, "{\"error\":\"Fan-out path must start with /fanout/api/\"}");
+                return;
+            }
+
+            // 拆出devices参数，其余参数原样转发
+            Set<String> only = null;
+            StringBuilder forwarded = new StringBuilder();
+            String rawQuery = exchange.getRequestURI().getRawQuery();
+            if (rawQuery != null) {
+                for (String pair : rawQuery.split("&")) {
+                    if (pair.startsWith("devices=")) {
+                        only = new HashSet<>(Arrays.asList(
+                                java.net.URLDecoder.decode(pair.substring(8), StandardCharsets.UTF_8).split(",")));
+                    } else if (!pair.isEmpty()) {
+                        forwarded.append(forwarded.length() == 0 ? '?' : '&').append(pair);
+                    }
+                }
+            }
+            String pathAndQuery = path + forwarded;
+
+            List<Device> targets = new ArrayList<>();
+            for (Device device : registry.getDevices()) {
+                if (only == null || only.contains(device.name)) {
+                    targets.add(device);
+                }
+            }
+            String key = pathAndQuery + "|" + targets;
+            String body = cache.get(key, () -> client.fanout(targets, pathAndQuery));
+            send(exchange, 200, body);
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "Fan-out failed", e);
+            send(exchange, 500, "{\"error\":" + Json.quote(String.valueOf(e.getMessage())) + "}");
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
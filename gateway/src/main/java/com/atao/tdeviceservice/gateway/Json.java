@@ -0,0 +1,253 @@
+package com.atao.tdeviceservice.gateway;
+
+/**
+ * 生成JSON的最小工具：字符串转义，以及校验设备响应能否原样嵌入
+ */
+final class Json {
+
+    private Json() {
+    }
+
+    static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder builder = new StringBuilder(value.length() + 2);
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+    /**
+     * 设备返回的合法JSON对象或数组原样嵌入，其他内容（包括截断或格式错误的JSON）按字符串嵌入
+     */
+    static String embed(String body) {
+        String trimmed = body.trim();
+        if ((trimmed.startsWith("{") || trimmed.startsWith("[")) && isValid(trimmed)) {
+            return trimmed;
+        }
+        return quote(body);
+    }
+
+    /**
+     * 按JSON语法完整解析一遍（不构建对象），只判断是否合法
+     */
+    static boolean isValid(String text) {
+        Validator validator = new Validator(text);
+        try {
+            validator.value(0);
+            validator.skipWhitespace();
+            return validator.pos == text.length();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 递归下降校验器，出错时抛出IllegalArgumentException
+     */
+    private static final class Validator {
+        // 嵌套层数上限，防止异常输入导致栈溢出
+        private static final int MAX_DEPTH = 512;
+
+        private final String text;
+        int pos;
+
+        Validator(String text) {
+            this.text = text;
+        }
+
+        void value(int depth) {
+            if (depth > MAX_DEPTH) {
+                throw new IllegalArgumentException("Nesting too deep");
+            }
+            skipWhitespace();
+            char c = peek();
+            switch (c) {
+                case '{':
+                    object(depth);
+                    break;
+                case '[':
+                    array(depth);
+                    break;
+                case '"':
+                    string();
+                    break;
+                case 't':
+                    literal("true");
+                    break;
+                case 'f':
+                    literal("false");
+                    break;
+                case 'n':
+                    literal("null");
+                    break;
+                default:
+                    number();
+            }
+        }
+
+        private void object(int depth) {
+            pos++;
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+                return;
+            }
+            while (true) {
+                skipWhitespace();
+                if (peek() != '"') {
+                    throw new IllegalArgumentException("Expected name at " + pos);
+                }
+                string();
+                skipWhitespace();
+                expect(':');
+                value(depth + 1);
+                skipWhitespace();
+                if (peek() == ',') {
+                    pos++;
+                } else {
+                    expect('}');
+                    return;
+                }
+            }
+        }
+
+        private void array(int depth) {
+            pos++;
+            skipWhitespace();
+            if (peek() == ']') {
+                pos++;
+                return;
+            }
+            while (true) {
+                value(depth + 1);
+                skipWhitespace();
+                if (peek() == ',') {
+                    pos++;
+                } else {
+                    expect(']');
+                    return;
+                }
+            }
+        }
+
+        private void string() {
+            pos++;
+            while (true) {
+                char c = next();
+                if (c == '"') {
+                    return;
+                }
+                if (c < 0x20) {
+                    throw new IllegalArgumentException("Control character in string at " + pos);
+                }
+                if (c == '\\') {
+                    char escaped = next();
+                    if (escaped == 'u') {
+                        for (int i = 0; i < 4; i++) {
+                            if (Character.digit(next(), 16) < 0) {
+                                throw new IllegalArgumentException("Invalid unicode escape at " + pos);
+                            }
+                        }
+                    } else if ("\"\\/bfnrt".indexOf(escaped) < 0) {
+                        throw new IllegalArgumentException("Invalid escape at " + pos);
+                    }
+                }
+            }
+        }
+
+        private void number() {
+            if (peek() == '-') {
+                pos++;
+            }
+            if (peek() == '0') {
+                pos++;
+            } else {
+                digits();
+            }
+            if (pos < text.length() && text.charAt(pos) == '.') {
+                pos++;
+                digits();
+            }
+            if (pos < text.length() && (text.charAt(pos) == 'e' || text.charAt(pos) == 'E')) {
+                pos++;
+                if (peek() == '+' || peek() == '-') {
+                    pos++;
+                }
+                digits();
+            }
+        }
+
+        private void digits() {
+            int start = pos;
+            while (pos < text.length() && text.charAt(pos) >= '0' && text.charAt(pos) <= '9') {
+                pos++;
+            }
+            if (pos == start) {
+                throw new IllegalArgumentException("Expected digit at " + pos);
+            }
+        }
+
+        private void literal(String word) {
+            if (!text.startsWith(word, pos)) {
+                throw new IllegalArgumentException("Expected " + word + " at " + pos);
+            }
+            pos += word.length();
+        }
+
+        private void expect(char c) {
+            if (next() != c) {
+                throw new IllegalArgumentException("Expected '" + c + "' at " + (pos - 1));
+            }
+        }
+
+        void skipWhitespace() {
+            while (pos < text.length()) {
+                char c = text.charAt(pos);
+                if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                    return;
+                }
+                pos++;
+            }
+        }
+
+        private char peek() {
+            if (pos >= text.length()) {
+                throw new IllegalArgumentException("Unexpected end of input");
+            }
+            return text.charAt(pos);
+        }
+
+        private char next() {
+            char c = peek();
+            pos++;
+            return c;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.atao.tdeviceservice.gateway;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 合并结果的短期缓存
+ *
+ * 有效期内的相同请求直接返回缓存；正在计算中的相同请求等待同一次计算，
+ * 多个脚本同时轮询时设备只被请求一次。
+ */
+public class ResponseCache {
+
+    private static final int PRUNE_THRESHOLD = 1000;
+
+    private final long ttlMs;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public ResponseCache(long ttlMs) {
+        this.ttlMs = ttlMs;
+    }
+
+    public String get(String key, Supplier<String> loader) {
+        if (ttlMs <= 0) {
+            return loader.get();
+        }
+        while (true) {
+            Entry current = entries.get(key);
+            if (current != null && (!current.future.isDone() || System.currentTimeMillis() < current.expiresAt)) {
+                try {
+                    return current.future.join();
+                } catch (CompletionException e) {
+                    // 领头的请求失败，重新计算
+                    continue;
+                }
+            }
+            Entry fresh = new Entry();
+            boolean claimed = current == null
+                    ? entries.putIfAbsent(key, fresh) == null
+                    : entries.replace(key, current, fresh);
+            if (!claimed) {
+                continue;
+            }
+            try {
+                String value = loader.get();
+                fresh.expiresAt = System.currentTimeMillis() + ttlMs;
+                fresh.future.complete(value);
+                prune();
+                return value;
+            } catch (RuntimeException e) {
+                entries.remove(key, fresh);
+                fresh.future.completeExceptionally(e);
+                throw e;
+            }
+        }
+    }
+
+    private void prune() {
+        if (entries.size() < PRUNE_THRESHOLD) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(entry -> entry.future.isDone() && now >= entry.expiresAt);
+    }
+
+    private static final class Entry {
+        final CompletableFuture<String> future = new CompletableFuture<>();
+        volatile long expiresAt;
+    }
+}
@@ -0,0 +1,107 @@
+package com.atao.tdeviceservice.gateway;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+
+public class DeviceRegistryTest {
+
+    @Test
+    public void parsesForwardsToApiServer() {
+        Device tcp = DeviceRegistry.parseForward("emulator-5554 tcp:18080 tcp:8080");
+        assertEquals("emulator-5554", tcp.name);
+        assertEquals("http://127.0.0.1:18080", tcp.baseUri.toString());
+
+        Device local = DeviceRegistry.parseForward("R58M12345 tcp:18081 localabstract:tdevice");
+        assertEquals("http://127.0.0.1:18081", local.baseUri.toString());
+
+        assertNull(DeviceRegistry.parseForward("R58M12345 tcp:5037 tcp:5037"));
+        assertNull(DeviceRegistry.parseForward("* daemon not running; starting now at tcp:5037"));
+    }
+
+    @Test
+    public void hungAdbTimesOutAndKeepsConfigDevices() throws IOException {
+        assumeFalse(System.getProperty("os.name").toLowerCase().contains("win"));
+        Path adb = Files.createTempFile("fake-adb", ".sh");
+        Path config = Files.createTempFile("gateway-devices", ".txt");
+        try {
+            // 模拟卡住的adb：输出一行后不退出
+            Files.write(adb, "#!/bin/sh\necho 'serial tcp:18080 tcp:8080'\nexec sleep 30\n"
+                    .getBytes(StandardCharsets.UTF_8));
+            assertTrue(adb.toFile().setExecutable(true));
+            Files.write(config, "bench 127.0.0.1:9000\n".getBytes(StandardCharsets.UTF_8));
+            DeviceRegistry registry = new DeviceRegistry(config, adb.toString(), 60_000, 300);
+
+            long start = System.nanoTime();
+            List<Device> devices = registry.getDevices();
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertTrue("Refresh blocked for " + elapsedMs + "ms", elapsedMs < 5000);
+            assertEquals(1, devices.size());
+            assertEquals("bench", devices.get(0).name);
+        } finally {
+            Files.deleteIfExists(adb);
+            Files.deleteIfExists(config);
+        }
+    }
+
+    @Test
+    public void staleListIsServedWhileAdbRefreshesInBackground() throws Exception {
+        assumeFalse(System.getProperty("os.name").toLowerCase().contains("win"));
+        Path adb = Files.createTempFile("fake-adb", ".sh");
+        DeviceRegistry registry = null;
+        try {
+            Files.write(adb, "#!/bin/sh\necho 'emulator-5554 tcp:18080 tcp:8080'\n".getBytes(StandardCharsets.UTF_8));
+            assertTrue(adb.toFile().setExecutable(true));
+            registry = new DeviceRegistry(null, adb.toString(), 0, 3000);
+            assertEquals(1, registry.getDevices().size());
+
+            // 之后的adb卡住，请求线程不等待，继续返回上一次的列表
+            Files.write(adb, "#!/bin/sh\nexec sleep 30\n".getBytes(StandardCharsets.UTF_8));
+            Thread.sleep(5);
+            long start = System.nanoTime();
+            List<Device> devices = registry.getDevices();
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertTrue("getDevices blocked for " + elapsedMs + "ms", elapsedMs < 1000);
+            assertEquals(1, devices.size());
+            assertEquals("emulator-5554", devices.get(0).name);
+        } finally {
+            if (registry != null) {
+                registry.close();
+            }
+            Files.deleteIfExists(adb);
+        }
+    }
+
+    @Test
+    public void readsAdbForwardsWhenAdbExits() throws IOException {
+        assumeFalse(System.getProperty("os.name").toLowerCase().contains("win"));
+        File adb = File.createTempFile("fake-adb", ".sh");
+        try {
+            Files.write(adb.toPath(), ("#!/bin/sh\n"
+                    + "echo 'emulator-5554 tcp:18080 tcp:8080'\n"
+                    + "echo 'emulator-5556 tcp:5555 tcp:5555'\n").getBytes(StandardCharsets.UTF_8));
+            assertTrue(adb.setExecutable(true));
+            DeviceRegistry registry = new DeviceRegistry(null, adb.getPath(), 60_000, 5000);
+
+            List<Device> devices = registry.getDevices();
+
+            assertEquals(1, devices.size());
+            assertEquals("emulator-5554", devices.get(0).name);
+        } finally {
+            Files.deleteIfExists(adb.toPath());
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.atao.tdeviceservice.gateway;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 网关对多个本地桩服务的分发测试：快速设备、慢设备（超过单台超时）和不可达设备
+ */
+public class GatewayServerTest {
+
+    private static final long DEVICE_TIMEOUT_MS = 500;
+    private static final long SLOW_DELAY_MS = 2000;
+
+    private static HttpServer fastStub;
+    private static HttpServer slowStub;
+    private static int unreachablePort;
+    private static Path config;
+    private static final ConcurrentHashMap<String, AtomicInteger> fastHits = new ConcurrentHashMap<>();
+    private static final List<String> fastQueries = new ArrayList<>();
+    // 大于0时快速设备按该延迟响应，用于观察并发请求合并
+    private static volatile long fastDelayMs;
+
+    private GatewayServer gateway;
+
+    @BeforeClass
+    public static void startStubs() throws IOException {
+        fastStub = stub(exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            fastHits.computeIfAbsent(path, key -> new AtomicInteger()).incrementAndGet();
+            synchronized (fastQueries) {
+                fastQueries.add(String.valueOf(exchange.getRequestURI().getRawQuery()));
+            }
+            sleep(fastDelayMs);
+            respond(exchange, "{\"success\":true,\"data\":85.5}");
+        });
+        slowStub = stub(exchange -> {
+            sleep(SLOW_DELAY_MS);
+            respond(exchange, "{\"success\":true,\"data\":\"late\"}");
+        });
+        try (ServerSocket socket = new ServerSocket(0)) {
+            unreachablePort = socket.getLocalPort();
+        }
+        config = Files.createTempFile("gateway-devices", ".txt");
+        Files.write(config, ("# test devices\n"
+                + "fast 127.0.0.1:" + fastStub.getAddress().getPort() + "\n"
+                + "slow 127.0.0.1:" + slowStub.getAddress().getPort() + "\n"
+                + "down 127.0.0.1:" + unreachablePort + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    @AfterClass
+    public static void stopStubs() throws IOException {
+        fastStub.stop(0);
+        slowStub.stop(0);
+        Files.deleteIfExists(config);
+    }
+
+    @Before
+    public void startGateway() throws IOException {
+        fastDelayMs = 0;
+        DeviceRegistry registry = new DeviceRegistry(config, null, 60_000);
+        gateway = new GatewayServer("127.0.0.1", 0, 8, registry,
+                new FanoutClient(DEVICE_TIMEOUT_MS, 8), new ResponseCache(1000));
+        gateway.start();
+    }
+
+    @After
+    public void stopGateway() {
+        gateway.stop();
+    }
+
+    @Test
+    public void slowAndUnreachableDevicesOnlyAffectTheirOwnEntries() throws IOException {
+        long start = System.nanoTime();
+        String body = get("/fanout/api/battery/level");
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(body, body.contains("\"fast\":{\"ok\":true,\"status\":200"));
+        assertTrue(body, body.contains("\"body\":{\"success\":true,\"data\":85.5}"));
+        assertTrue(body, body.matches(".*\"slow\":\\{\"ok\":false,\"latencyMs\":\\d+,\"error\":\"timeout\"}.*"));
+        assertTrue(body, body.matches(".*\"down\":\\{\"ok\":false,\"latencyMs\":\\d+,\"error\":\"[^\"]+\"}.*"));
+        assertTrue(body, body.contains("\"deviceCount\":3"));
+        assertTrue("Fan-out waited for the slow device: " + elapsedMs + "ms", elapsedMs < SLOW_DELAY_MS);
+    }
+
+    @Test
+    public void devicesParameterSelectsTargetsAndIsNotForwarded() throws IOException {
+        String body = get("/fanout/api/apps/version?package=com.example&devices=fast");
+
+        assertTrue(body, body.contains("\"fast\":{\"ok\":true"));
+        assertFalse(body, body.contains("\"slow\""));
+        assertFalse(body, body.contains("\"down\""));
+        assertTrue(body, body.contains("\"deviceCount\":1"));
+        synchronized (fastQueries) {
+            assertEquals("package=com.example", fastQueries.get(fastQueries.size() - 1));
+        }
+    }
+
+    @Test
+    public void repeatedRequestWithinTtlIsServedFromCache() throws IOException {
+        String first = get("/fanout/api/battery/health?devices=fast");
+        String second = get("/fanout/api/battery/health?devices=fast");
+
+        assertEquals(first, second);
+        assertEquals(1, fastHits.get("/api/battery/health").get());
+    }
+
+    @Test
+    public void concurrentIdenticalRequestsAreCoalesced() throws Exception {
+        fastDelayMs = 200;
+        int clients = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        try {
+            CountDownLatch ready = new CountDownLatch(1);
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                results.add(pool.submit(() -> {
+                    ready.await();
+                    return get("/fanout/api/battery/temperature?devices=fast");
+                }));
+            }
+            ready.countDown();
+            for (Future<String> result : results) {
+                assertTrue(result.get(5, TimeUnit.SECONDS).contains("\"fast\":{\"ok\":true"));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, fastHits.get("/api/battery/temperature").get());
+    }
+
+    @Test
+    public void devicesEndpointListsConfiguredDevices() throws IOException {
+        String body = get("/devices");
+
+        assertTrue(body, body.contains("{\"name\":\"fast\",\"url\":\"http://127.0.0.1:"
+                + fastStub.getAddress().getPort() + "\"}"));
+        assertTrue(body, body.contains("\"name\":\"slow\""));
+        assertTrue(body, body.contains("\"name\":\"down\""));
+    }
+
+    private String get(String pathAndQuery) throws IOException {
+        URL url = new URL("http://127.0.0.1:" + gateway.getPort() + pathAndQuery);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setReadTimeout(5000);
+        try (InputStream in = connection.getInputStream()) {
+            assertEquals(200, connection.getResponseCode());
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private interface StubHandler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    private static HttpServer stub(StubHandler handler) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "Stub");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.createContext("/", handler::handle);
+        server.start();
+        return server;
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        } catch (IOException e) {
+            // 网关已超时断开
+        }
+    }
+
+    private static void sleep(long ms) {
+        if (ms <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.atao.tdeviceservice.gateway;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JsonTest {
+
+    @Test
+    public void validJsonIsEmbeddedAsIs() {
+        String body = "{\"success\":true,\"data\":{\"level\":87.5,\"tags\":[\"a\",\"\\u00e9\"],\"x\":null,\"n\":-1.2e3}}";
+        assertEquals(body, Json.embed(body));
+        assertEquals("[1,2,3]", Json.embed(" [1,2,3]\n"));
+    }
+
+    @Test
+    public void malformedJsonIsEmbeddedAsString() {
+        // 只看首尾定界符会误判的情况
+        assertEquals(Json.quote("{\"a\":1}{\"b\":2}"), Json.embed("{\"a\":1}{\"b\":2}"));
+        assertEquals(Json.quote("{not json}"), Json.embed("{not json}"));
+        assertEquals(Json.quote("[1,]"), Json.embed("[1,]"));
+        assertEquals(Json.quote("{\"a\":"), Json.embed("{\"a\":"));
+        assertEquals(Json.quote("<html>error</html>"), Json.embed("<html>error</html>"));
+    }
+
+    @Test
+    public void validatorRejectsInvalidTokens() {
+        assertTrue(Json.isValid("{\"a\":[true,false,null,0,-0.5,1E+2]}"));
+        assertFalse(Json.isValid("{\"a\":01}"));
+        assertFalse(Json.isValid("{\"a\":tru}"));
+        assertFalse(Json.isValid("{\"a\":\"\\x\"}"));
+        assertFalse(Json.isValid("{'a':1}"));
+        assertFalse(Json.isValid("[" .repeat(1000) + "]".repeat(1000)));
+    }
+}